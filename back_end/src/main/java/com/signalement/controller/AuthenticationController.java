@@ -3,8 +3,8 @@ package com.signalement.controller;
 import com.signalement.dto.*;
 import com.signalement.entity.Utilisateur;
 import com.signalement.service.AuthenticationService;
+import com.signalement.service.ReferenceDataService;
 import com.signalement.service.SessionService;
-import com.signalement.repository.TypeUtilisateurRepository;
 import com.signalement.entity.TypeUtilisateur;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -29,7 +29,7 @@ public class AuthenticationController {
 
     private final AuthenticationService authenticationService;
     private final SessionService sessionService;
-    private final TypeUtilisateurRepository typeUtilisateurRepository;
+    private final ReferenceDataService referenceDataService;
 
     /**
      * Tâche 11: API REST - Inscription (email/pwd)
@@ -201,7 +201,7 @@ public class AuthenticationController {
     )
     @GetMapping("/types")
     public ResponseEntity<java.util.List<java.util.Map<String, Object>>> getTypes() {
-        java.util.List<TypeUtilisateur> types = typeUtilisateurRepository.findAll();
+        java.util.List<TypeUtilisateur> types = referenceDataService.getTypesUtilisateur();
         java.util.List<java.util.Map<String, Object>> out = new java.util.ArrayList<>();
         for (TypeUtilisateur t : types) {
             java.util.Map<String, Object> m = new java.util.HashMap<>();
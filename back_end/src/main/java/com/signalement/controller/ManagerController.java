@@ -14,7 +14,6 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/manager")
@@ -52,54 +51,20 @@ public class ManagerController {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Access restricted to managers"));
             }
 
-            // If no filters, use pageable query
-            if ((search == null || search.isEmpty()) && (etat == null || etat.isEmpty()) && (type == null || type.isEmpty())) {
-                Page<Utilisateur> p = utilisateurRepository.findAll(PageRequest.of(Math.max(0, page - 1), Math.max(1, limit)));
-                List<Map<String, Object>> items = p.getContent().stream().map(this::mapUser).collect(Collectors.toList());
-                Map<String, Object> data = new HashMap<>();
-                data.put("items", items);
-                data.put("total", p.getTotalElements());
-                return ResponseEntity.ok(Map.of("data", data));
-            }
-
-            // Otherwise load all and filter in-memory (simpler implementation)
-            List<Utilisateur> all = utilisateurRepository.findAll();
-            Stream<Utilisateur> stream = all.stream();
-
-            if (search != null && !search.isEmpty()) {
-                String s = search.toLowerCase();
-                stream = stream.filter(u ->
-                        (u.getNom() != null && u.getNom().toLowerCase().contains(s)) ||
-                        (u.getPrenom() != null && u.getPrenom().toLowerCase().contains(s)) ||
-                        (u.getEmail() != null && u.getEmail().toLowerCase().contains(s))
-                );
-            }
-
-            if (etat != null && !etat.isEmpty()) {
-                if (etat.equalsIgnoreCase("blocked")) {
-                    stream = stream.filter(u -> Boolean.TRUE.equals(u.getIsBlocked()));
-                } else if (etat.equalsIgnoreCase("active")) {
-                    stream = stream.filter(u -> !Boolean.TRUE.equals(u.getIsBlocked()));
-                }
-            }
-
-            if (type != null && !type.isEmpty()) {
-                String t = type.toLowerCase();
-                stream = stream.filter(u -> u.getTypeUtilisateur() != null && u.getTypeUtilisateur().getLibelle() != null && u.getTypeUtilisateur().getLibelle().toLowerCase().contains(t));
-            }
-
-            List<Utilisateur> filtered = stream.collect(Collectors.toList());
-            int total = filtered.size();
-            int fromIndex = Math.max(0, (page - 1) * limit);
-            int toIndex = Math.min(total, fromIndex + limit);
-            List<Map<String, Object>> items = Collections.emptyList();
-            if (fromIndex < toIndex) {
-                items = filtered.subList(fromIndex, toIndex).stream().map(this::mapUser).collect(Collectors.toList());
+            // Filtres, pagination et colonnes de la liste en une requête (projection, aucune entité chargée)
+            Boolean bloque = null;
+            if (etat != null && etat.equalsIgnoreCase("blocked")) {
+                bloque = true;
+            } else if (etat != null && etat.equalsIgnoreCase("active")) {
+                bloque = false;
             }
+            Page<UtilisateurRepository.UtilisateurResume> p = utilisateurRepository.findResumes(
+                    motif(search), bloque, motif(type), PageRequest.of(Math.max(0, page - 1), Math.max(1, limit)));
+            List<Map<String, Object>> items = p.getContent().stream().map(this::mapUser).collect(Collectors.toList());
 
             Map<String, Object> data = new HashMap<>();
             data.put("items", items);
-            data.put("total", total);
+            data.put("total", p.getTotalElements());
             return ResponseEntity.ok(Map.of("data", data));
 
         } catch (Exception e) {
@@ -107,14 +72,29 @@ public class ManagerController {
         }
     }
 
-    private Map<String, Object> mapUser(Utilisateur u) {
+    /**
+     * Motif LIKE "contient" en minuscules, null si le filtre est vide.
+     * \, % et _ sont échappés : le filtre est recherché tel quel (ESCAPE '\' dans la requête)
+     */
+    private String motif(String filtre) {
+        if (filtre == null || filtre.isEmpty()) {
+            return null;
+        }
+        String litteral = filtre.toLowerCase()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + litteral + "%";
+    }
+
+    private Map<String, Object> mapUser(UtilisateurRepository.UtilisateurResume u) {
         Map<String, Object> m = new HashMap<>();
         m.put("idUtilisateur", u.getIdUtilisateur());
         m.put("nom", u.getNom());
         m.put("prenom", u.getPrenom());
         m.put("email", u.getEmail());
         m.put("isBlocked", u.getIsBlocked());
-        m.put("typeUtilisateur", u.getTypeUtilisateur() != null ? u.getTypeUtilisateur().getLibelle() : null);
+        m.put("typeUtilisateur", u.getTypeUtilisateur());
         return m;
     }
 }
@@ -3,7 +3,6 @@ package com.signalement.controller;
 import com.signalement.dto.*;
 import com.signalement.entity.EntrepriseConcerner;
 import com.signalement.entity.Signalement;
-import com.signalement.entity.Session;
 import com.signalement.entity.Utilisateur;
 import com.signalement.service.SessionService;
 import com.signalement.service.SignalementService;
@@ -44,14 +43,9 @@ public class ManagerSignalementController {
         }
 
         String actualToken = token.substring(7);
-        Session session = sessionService.getSessionByToken(actualToken)
+        Utilisateur user = sessionService.getUtilisateurByToken(actualToken)
                 .orElseThrow(() -> new RuntimeException("Session invalide"));
 
-        Utilisateur user = session.getUtilisateur();
-        if (user == null) {
-            throw new RuntimeException("Utilisateur introuvable");
-        }
-
         if (user.getTypeUtilisateur() == null || user.getTypeUtilisateur().getIdTypeUtilisateur() != 2) {
             throw new RuntimeException("Accès réservé aux Managers");
         }
@@ -82,25 +76,17 @@ public class ManagerSignalementController {
             if (page < 1) page = 1;
             if (limit < 1 || limit > 100) limit = 20;
 
-            // Récupérer tous les signalements avec filtres
-            List<SignalementDTO> allSignalements = signalementService.getAllSignalementsDtoWithFilters(etat, type);
-
-            // Calculer pagination
-            int total = allSignalements.size();
-            int startIndex = (page - 1) * limit;
-            int endIndex = Math.min(startIndex + limit, total);
-
-            List<SignalementDTO> paginatedItems = startIndex < total
-                    ? allSignalements.subList(startIndex, endIndex)
-                    : java.util.Collections.emptyList();
+            // Filtrer et paginer en base (seule la page demandée est chargée)
+            org.springframework.data.domain.Page<SignalementDTO> result =
+                    signalementService.getSignalementsDtoPage(etat, type, page, limit);
 
             // Créer réponse avec métadonnées de pagination
             Map<String, Object> response = new java.util.HashMap<>();
-            response.put("items", paginatedItems);
-            response.put("total", total);
+            response.put("items", result.getContent());
+            response.put("total", result.getTotalElements());
             response.put("page", page);
             response.put("limit", limit);
-            response.put("totalPages", (int) Math.ceil((double) total / limit));
+            response.put("totalPages", result.getTotalPages());
 
             return ResponseEntity.ok(new com.signalement.dto.ApiResponse(true, "Liste récupérée", response));
         } catch (RuntimeException e) {
@@ -12,13 +12,13 @@ import com.signalement.entity.EtatSignalement;
 import com.signalement.entity.Signalement;
 import com.signalement.entity.TypeTravail;
 import com.signalement.entity.Utilisateur;
-import com.signalement.repository.EtatSignalementRepository;
-import com.signalement.repository.TypeTravailRepository;
+import com.signalement.service.ReferenceDataService;
 import com.signalement.service.SessionService;
+import com.signalement.service.SignalementClusterService;
 import com.signalement.service.SignalementService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
-import com.signalement.service.StatisticsService;
+import com.signalement.service.StatisticsSnapshotService;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -27,9 +27,11 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -42,9 +44,9 @@ public class SignalementController {
 
     private final SessionService sessionService;
     private final SignalementService signalementService;
-    private final StatisticsService statisticsService;
-    private final EtatSignalementRepository etatSignalementRepository;
-    private final TypeTravailRepository typeTravailRepository;
+    private final SignalementClusterService signalementClusterService;
+    private final StatisticsSnapshotService statisticsSnapshotService;
+    private final ReferenceDataService referenceDataService;
 
     @Operation(
         summary = "Créer un signalement",
@@ -134,11 +136,13 @@ public class SignalementController {
 
     @Operation(
         summary = "Récupérer les signalements pour la page visiteur (Tâches 47 & 48)",
-        description = "Retourne une liste paginée de signalements avec leurs détails pour l'affichage sur carte et tableau récapitulatif. Support des filtres et pagination."
+        description = "Retourne une liste paginée de signalements avec leurs détails pour l'affichage sur carte et tableau récapitulatif. Support des filtres et pagination. "
+            + "Chaque réponse contient des curseurs 'next'/'prev' : les passer dans ?cursor= pour parcourir la liste de façon stable (keyset) au lieu de ?page=."
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Liste paginée retournée avec succès",
-            content = @Content(mediaType = "application/json"))
+            content = @Content(mediaType = "application/json")),
+        @ApiResponse(responseCode = "400", description = "Curseur invalide")
     })
     @GetMapping("/signalements/visiteur")
     public ResponseEntity<java.util.Map<String, Object>> getSignalementsForVisitor(
@@ -149,57 +153,268 @@ public class SignalementController {
             @Parameter(description = "ID de l'état pour filtrer")
             @RequestParam(required = false) Integer status,
             @Parameter(description = "ID du type de travail pour filtrer")
-            @RequestParam(required = false) Integer type) {
+            @RequestParam(required = false) Integer type,
+            @Parameter(description = "Curseur 'next' ou 'prev' d'une réponse précédente (remplace page)")
+            @RequestParam(required = false) String cursor) {
         
         // Validation
         if (page < 1) page = 1;
         if (limit < 1 || limit > 100) limit = 20;
         
-        // Récupérer tous les signalements avec filtres
-        List<SignalementDTO> allSignalements = signalementService.getAllSignalementsDtoWithFilters(status, type);
-        
-        // Calculer pagination
-        int total = allSignalements.size();
-        int startIndex = (page - 1) * limit;
-        int endIndex = Math.min(startIndex + limit, total);
+        // Pagination par curseur (keyset)
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                com.signalement.dto.SignalementCursorPageDTO result = 
+                    signalementService.getSignalementsDtoByCursor(status, type, cursor, limit);
+                java.util.Map<String, Object> response = new java.util.HashMap<>();
+                response.put("items", result.getItems());
+                response.put("limit", limit);
+                response.put("next", result.getNext());
+                response.put("prev", result.getPrev());
+                return ResponseEntity.ok(response);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(java.util.Map.of("error", e.getMessage()));
+            }
+        }
         
-        List<SignalementDTO> paginatedItems = startIndex < total 
-            ? allSignalements.subList(startIndex, endIndex)
-            : java.util.Collections.emptyList();
+        // Filtrer et paginer en base (seule la page demandée est chargée)
+        org.springframework.data.domain.Page<SignalementDTO> result = 
+            signalementService.getSignalementsDtoPage(status, type, page, limit);
         
         // Créer réponse avec métadonnées de pagination
         java.util.Map<String, Object> response = new java.util.HashMap<>();
-        response.put("items", paginatedItems);
-        response.put("total", total);
+        response.put("items", result.getContent());
+        response.put("total", result.getTotalElements());
         response.put("page", page);
         response.put("limit", limit);
-        response.put("totalPages", (int) Math.ceil((double) total / limit));
+        response.put("totalPages", result.getTotalPages());
+        
+        // Curseurs pour continuer en keyset à partir de cette page
+        List<SignalementDTO> items = result.getContent();
+        response.put("next", result.hasNext() && !items.isEmpty()
+            ? signalementService.encodeCursor(items.get(items.size() - 1), true) : null);
+        response.put("prev", result.hasPrevious() && !items.isEmpty()
+            ? signalementService.encodeCursor(items.get(0), false) : null);
         
         return ResponseEntity.ok(response);
     }
 
+    @Operation(
+        summary = "Signalements dans une emprise (public)",
+        description = "Retourne les signalements situés dans l'emprise (minLon, minLat, maxLon, maxLat), " +
+                      "filtrables par état et type, paginés (plus récents d'abord)."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Liste paginée retournée avec succès"),
+        @ApiResponse(responseCode = "400", description = "Emprise invalide")
+    })
+    @GetMapping("/signalements/bbox")
+    public ResponseEntity<java.util.Map<String, Object>> getSignalementsInBbox(
+            @Parameter(description = "Longitude ouest de l'emprise") @RequestParam double minLon,
+            @Parameter(description = "Latitude sud de l'emprise") @RequestParam double minLat,
+            @Parameter(description = "Longitude est de l'emprise") @RequestParam double maxLon,
+            @Parameter(description = "Latitude nord de l'emprise") @RequestParam double maxLat,
+            @Parameter(description = "ID de l'état pour filtrer")
+            @RequestParam(required = false) Integer status,
+            @Parameter(description = "ID du type de travail pour filtrer")
+            @RequestParam(required = false) Integer type,
+            @Parameter(description = "Numéro de page (commence à 1)")
+            @RequestParam(defaultValue = "1") int page,
+            @Parameter(description = "Nombre d'éléments par page")
+            @RequestParam(defaultValue = "20") int limit) {
+        if (page < 1) page = 1;
+        if (limit < 1 || limit > 100) limit = 20;
+        try {
+            return ResponseEntity.ok(pageResponse(signalementService.getSignalementsDtoInBbox(
+                minLon, minLat, maxLon, maxLat, status, type, page, limit), page, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(java.util.Map.of("error", e.getMessage()));
+        }
+    }
+
+    @Operation(
+        summary = "Signalements autour d'un point (public)",
+        description = "Retourne les signalements à moins de `radius` mètres du point, du plus proche au plus éloigné, " +
+                      "filtrables par état et type, paginés."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Liste paginée retournée avec succès"),
+        @ApiResponse(responseCode = "400", description = "Coordonnées ou rayon invalides")
+    })
+    @GetMapping("/signalements/nearby")
+    public ResponseEntity<java.util.Map<String, Object>> getSignalementsNearby(
+            @Parameter(description = "Latitude du point") @RequestParam double lat,
+            @Parameter(description = "Longitude du point") @RequestParam double lon,
+            @Parameter(description = "Rayon de recherche en mètres") @RequestParam double radius,
+            @Parameter(description = "ID de l'état pour filtrer")
+            @RequestParam(required = false) Integer status,
+            @Parameter(description = "ID du type de travail pour filtrer")
+            @RequestParam(required = false) Integer type,
+            @Parameter(description = "Numéro de page (commence à 1)")
+            @RequestParam(defaultValue = "1") int page,
+            @Parameter(description = "Nombre d'éléments par page")
+            @RequestParam(defaultValue = "20") int limit) {
+        if (page < 1) page = 1;
+        if (limit < 1 || limit > 100) limit = 20;
+        try {
+            return ResponseEntity.ok(pageResponse(signalementService.getSignalementsDtoNearby(
+                lat, lon, radius, status, type, page, limit), page, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(java.util.Map.of("error", e.getMessage()));
+        }
+    }
+
+    @Operation(
+        summary = "Signalements les plus proches d'un point (public)",
+        description = "Retourne les k signalements les plus proches du point, du plus proche au plus éloigné, filtrables par état et type."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Liste retournée avec succès"),
+        @ApiResponse(responseCode = "400", description = "Coordonnées invalides")
+    })
+    @GetMapping("/signalements/nearest")
+    public ResponseEntity<java.util.Map<String, Object>> getSignalementsNearest(
+            @Parameter(description = "Latitude du point") @RequestParam double lat,
+            @Parameter(description = "Longitude du point") @RequestParam double lon,
+            @Parameter(description = "Nombre de signalements (1-100)") @RequestParam(defaultValue = "10") int k,
+            @Parameter(description = "ID de l'état pour filtrer")
+            @RequestParam(required = false) Integer status,
+            @Parameter(description = "ID du type de travail pour filtrer")
+            @RequestParam(required = false) Integer type) {
+        if (k < 1 || k > 100) k = 10;
+        try {
+            java.util.Map<String, Object> response = new java.util.HashMap<>();
+            response.put("items", signalementService.getSignalementsDtoNearest(lat, lon, k, status, type));
+            response.put("limit", k);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(java.util.Map.of("error", e.getMessage()));
+        }
+    }
+
+    private java.util.Map<String, Object> pageResponse(org.springframework.data.domain.Page<SignalementDTO> result,
+                                                       int page, int limit) {
+        java.util.Map<String, Object> response = new java.util.HashMap<>();
+        response.put("items", result.getContent());
+        response.put("total", result.getTotalElements());
+        response.put("page", page);
+        response.put("limit", limit);
+        response.put("totalPages", result.getTotalPages());
+        return response;
+    }
+
+    @Operation(
+        summary = "État de tous les signalements à une date (public)",
+        description = "Retourne l'état et l'avancement à la date demandée de chaque signalement créé avant cette date, " +
+                      "en une seule requête, pour rejouer l'évolution de la carte. Sans date, utilise la date actuelle."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "États retournés avec succès"),
+        @ApiResponse(responseCode = "400", description = "Format de date invalide")
+    })
+    @GetMapping("/signalements/progress")
+    public ResponseEntity<java.util.Map<String, Object>> getSignalementsProgress(
+            @Parameter(description = "Date au format ISO-8601 (ex: 2026-02-01T10:30:00)")
+            @RequestParam(required = false) String date,
+            @Parameter(description = "ID de l'état (à cette date) pour filtrer")
+            @RequestParam(required = false) Integer status,
+            @Parameter(description = "ID du type de travail pour filtrer")
+            @RequestParam(required = false) Integer type) {
+        LocalDateTime dateRef = LocalDateTime.now();
+        if (date != null && !date.isEmpty()) {
+            try {
+                dateRef = LocalDateTime.parse(date);
+            } catch (Exception e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(java.util.Map.of("error", "Format de date invalide. Utilisez le format ISO-8601 (ex: 2026-02-01T10:30:00)"));
+            }
+        }
+        List<com.signalement.dto.SignalementEtatDateDTO> items =
+            signalementService.getSignalementsEtatsALaDate(dateRef, status, type);
+        java.util.Map<String, Object> response = new java.util.HashMap<>();
+        response.put("date", dateRef);
+        response.put("items", items);
+        response.put("total", items.size());
+        return ResponseEntity.ok(response);
+    }
+
+    @Operation(
+        summary = "Signalements regroupés pour la carte (public)",
+        description = "Retourne les signalements de l'emprise affichée regroupés selon le zoom : " +
+                      "un point par groupe avec le nombre de signalements par état courant. " +
+                      "idSignalement est renseigné pour un groupe d'un seul signalement."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Groupes retournés avec succès"),
+        @ApiResponse(responseCode = "400", description = "Emprise invalide")
+    })
+    @GetMapping("/signalements/clusters")
+    public ResponseEntity<com.signalement.dto.ApiResponse> getSignalementClusters(
+            @Parameter(description = "Longitude ouest de l'emprise") @RequestParam double minLon,
+            @Parameter(description = "Latitude sud de l'emprise") @RequestParam double minLat,
+            @Parameter(description = "Longitude est de l'emprise") @RequestParam double maxLon,
+            @Parameter(description = "Latitude nord de l'emprise") @RequestParam double maxLat,
+            @Parameter(description = "Niveau de zoom de la carte (0-22)") @RequestParam int zoom,
+            @Parameter(description = "ID de l'état pour filtrer")
+            @RequestParam(required = false) Integer status,
+            @Parameter(description = "ID du type de travail pour filtrer")
+            @RequestParam(required = false) Integer type) {
+        try {
+            List<com.signalement.dto.SignalementClusterDTO> clusters = signalementClusterService.getClusters(
+                minLon, minLat, maxLon, maxLat, zoom, status, type);
+            return ResponseEntity.ok(new com.signalement.dto.ApiResponse(true, "Groupes récupérés", clusters));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new com.signalement.dto.ApiResponse(false, e.getMessage()));
+        }
+    }
+
     @Operation(
         summary = "Récupérer les états de signalement",
-        description = "Retourne la liste de tous les états possibles pour les signalements."
+        description = "Retourne la liste de tous les états possibles pour les signalements. " +
+                      "Réponse 304 si l'ETag envoyé dans If-None-Match correspond toujours à la liste."
     )
     @ApiResponses(value = {
-        @ApiResponse(responseCode = "200", description = "Liste des états retournée avec succès")
+        @ApiResponse(responseCode = "200", description = "Liste des états retournée avec succès"),
+        @ApiResponse(responseCode = "304", description = "Liste inchangée")
     })
     @GetMapping("/signalements/etats")
-    public ResponseEntity<List<EtatSignalement>> getEtats() {
-        return ResponseEntity.ok(etatSignalementRepository.findAll());
+    public ResponseEntity<List<EtatSignalement>> getEtats(WebRequest webRequest) {
+        return referenceResponse(referenceDataService.getEtatsVersion(), webRequest);
     }
 
     @Operation(
         summary = "Récupérer les types de travail",
-        description = "Retourne la liste de tous les types de travail possibles pour les signalements."
+        description = "Retourne la liste de tous les types de travail possibles pour les signalements. " +
+                      "Réponse 304 si l'ETag envoyé dans If-None-Match correspond toujours à la liste."
     )
     @ApiResponses(value = {
-        @ApiResponse(responseCode = "200", description = "Liste des types retournée avec succès")
+        @ApiResponse(responseCode = "200", description = "Liste des types retournée avec succès"),
+        @ApiResponse(responseCode = "304", description = "Liste inchangée")
     })
     @GetMapping("/signalements/types")
-    public ResponseEntity<List<TypeTravail>> getTypes() {
-        return ResponseEntity.ok(typeTravailRepository.findAll());
+    public ResponseEntity<List<TypeTravail>> getTypes(WebRequest webRequest) {
+        return referenceResponse(referenceDataService.getTypesTravailVersion(), webRequest);
+    }
+
+    /**
+     * Réponse d'une table de référence : 304 si le client a déjà la version courante,
+     * sinon la liste avec son ETag (revalidée par le navigateur à chaque chargement).
+     * Liste et ETag viennent du même instantané : un rechargement concurrent ne peut pas les désaccorder.
+     */
+    private <T> ResponseEntity<List<T>> referenceResponse(ReferenceDataService.Version<T> version, WebRequest webRequest) {
+        String etag = version.etag();
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok()
+            .eTag(etag)
+            .cacheControl(CacheControl.noCache())
+            .body(version.liste());
     }
     
     @Operation(
@@ -211,7 +426,7 @@ public class SignalementController {
     })
     @GetMapping("/signalements/summary-public")
     public ResponseEntity<com.signalement.dto.StatisticsDTO> getPublicSummary() {
-        com.signalement.dto.StatisticsDTO stats = statisticsService.getSummaryStatistics();
+        com.signalement.dto.StatisticsDTO stats = statisticsSnapshotService.getSummaryStatistics();
         return ResponseEntity.ok(stats);
     }
 
@@ -222,7 +437,7 @@ public class SignalementController {
     @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Liste retournée")})
     @GetMapping("/signalements/stats-by-type-public")
     public ResponseEntity<List<com.signalement.dto.StatisticsDTO.TypeTravailStatDTO>> getPublicStatsByType() {
-        List<com.signalement.dto.StatisticsDTO.TypeTravailStatDTO> stats = statisticsService.getStatisticsByWorkType();
+        List<com.signalement.dto.StatisticsDTO.TypeTravailStatDTO> stats = statisticsSnapshotService.getStatisticsByWorkType();
         return ResponseEntity.ok(stats);
     }
 
@@ -233,10 +448,32 @@ public class SignalementController {
     @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Liste retournée")})
     @GetMapping("/signalements/stats-by-state-public")
     public ResponseEntity<List<com.signalement.dto.StatisticsDTO.EtatStatDTO>> getPublicStatsByState() {
-        List<com.signalement.dto.StatisticsDTO.EtatStatDTO> stats = statisticsService.getStatisticsByState();
+        List<com.signalement.dto.StatisticsDTO.EtatStatDTO> stats = statisticsSnapshotService.getStatisticsByState();
         return ResponseEntity.ok(stats);
     }
 
+    @Operation(
+        summary = "Récupérer les détails de plusieurs signalements (public)",
+        description = "Retourne les détails (historique d'états et assignations) des signalements demandés, " +
+                      "dans l'ordre des ids (ids inconnus ignorés, 200 ids au plus). " +
+                      "Permet de précharger les popups de la carte en une seule requête."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Détails retournés avec succès"),
+        @ApiResponse(responseCode = "400", description = "Trop d'ids demandés")
+    })
+    @GetMapping("/signalements/details")
+    public ResponseEntity<com.signalement.dto.ApiResponse> getSignalementsDetails(
+            @Parameter(description = "Ids des signalements, séparés par des virgules") @RequestParam List<Integer> ids) {
+        try {
+            List<com.signalement.dto.SignalementDetailsDTO> details = signalementService.getSignalementsDetails(ids);
+            return ResponseEntity.ok(new com.signalement.dto.ApiResponse(true, "Détails récupérés", details));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new com.signalement.dto.ApiResponse(false, e.getMessage()));
+        }
+    }
+
     @Operation(
         summary = "Récupérer les détails d'un signalement (public)",
         description = "Retourne les informations détaillées d'un signalement, son historique d'états et ses assignations"
@@ -2,8 +2,8 @@ package com.signalement.controller;
 
 import com.signalement.dto.ApiResponse;
 import com.signalement.dto.StatisticsDTO;
-import com.signalement.entity.Session;
 import com.signalement.entity.TypeUtilisateur;
+import com.signalement.entity.Utilisateur;
 import com.signalement.service.SessionService;
 import com.signalement.service.StatisticsService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -38,14 +38,10 @@ public class StatisticsController {
         }
 
         String actualToken = token.substring(7);
-        Session session = sessionService.getSessionByToken(actualToken)
+        Utilisateur utilisateur = sessionService.getUtilisateurByToken(actualToken)
                 .orElseThrow(() -> new RuntimeException("Session invalide"));
 
-        if (session.getUtilisateur() == null) {
-            throw new RuntimeException("Session invalide");
-        }
-
-        TypeUtilisateur typeUtilisateur = session.getUtilisateur().getTypeUtilisateur();
+        TypeUtilisateur typeUtilisateur = utilisateur.getTypeUtilisateur();
         if (typeUtilisateur == null || typeUtilisateur.getIdTypeUtilisateur() != 2) {
             throw new RuntimeException("Accès refusé : réservé aux managers");
         }
@@ -1,8 +1,8 @@
 package com.signalement.controller;
 
 import com.signalement.dto.ApiResponse;
-import com.signalement.dto.SyncResultDTO;
-import com.signalement.service.FirebaseSyncService;
+import com.signalement.dto.SyncJobDTO;
+import com.signalement.service.SyncJobService;
 import com.signalement.service.SessionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -16,24 +16,27 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.function.Supplier;
+
 @RestController
 @RequestMapping("/api/sync")
 @RequiredArgsConstructor
 @Tag(name = "Synchronisation", description = "API de synchronisation avec Firebase")
 public class SynchronisationController {
 
-    private final FirebaseSyncService syncService;
+    private final SyncJobService syncJobService;
     private final SessionService sessionService;
 
     @Operation(
         summary = "Synchroniser depuis Firebase (Tâche 31)",
-        description = "Récupère les données modifiées depuis Firebase et les synchronise avec PostgreSQL. Réservé aux managers."
+        description = "Lance en arrière-plan la récupération des données modifiées dans Firebase et leur synchronisation avec PostgreSQL. " +
+                      "Retourne immédiatement le job (suivi via GET /api/sync/jobs/{id}). Réservé aux managers."
     )
     @ApiResponses(value = {
         @io.swagger.v3.oas.annotations.responses.ApiResponse(
-            responseCode = "200", 
-            description = "Synchronisation réussie",
-            content = @Content(mediaType = "application/json", schema = @Schema(implementation = SyncResultDTO.class))
+            responseCode = "202", 
+            description = "Synchronisation lancée (ou déjà en cours)",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = SyncJobDTO.class))
         ),
         @io.swagger.v3.oas.annotations.responses.ApiResponse(
             responseCode = "401", 
@@ -47,45 +50,18 @@ public class SynchronisationController {
     @PostMapping("/from-firebase")
     public ResponseEntity<ApiResponse> syncFromFirebase(
             @Parameter(hidden = true) HttpServletRequest httpRequest) {
-        
-        String auth = httpRequest.getHeader("Authorization");
-        if (auth == null || !auth.startsWith("Bearer ")) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                .body(new ApiResponse(false, "Authentification requise"));
-        }
-
-        String token = auth.substring(7).trim();
-        return sessionService.getUtilisateurByToken(token)
-            .map(manager -> {
-                // Vérifier que c'est un manager
-                if (manager.getTypeUtilisateur().getIdTypeUtilisateur() != 2) {
-                    return ResponseEntity.status(HttpStatus.FORBIDDEN)
-                        .body(new ApiResponse(false, "Accès refusé - Réservé aux managers"));
-                }
-
-                // Lancer la synchronisation
-                SyncResultDTO result = syncService.syncFromFirebase();
-                
-                if (result.isSuccess()) {
-                    return ResponseEntity.ok()
-                        .body(new ApiResponse(true, result.getMessage(), result));
-                } else {
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body(new ApiResponse(false, "Erreur lors de la synchronisation: " + result.getError()));
-                }
-            })
-            .orElseGet(() -> ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                .body(new ApiResponse(false, "Token invalide")));
+        return pourManager(httpRequest, () -> lancer(SyncJobService.TypeSync.FROM_FIREBASE));
     }
 
     @Operation(
         summary = "Synchroniser vers Firebase (Tâche 32)",
-        description = "Envoie les données depuis PostgreSQL vers Firebase (FULL SYNC). Réservé aux managers."
+        description = "Lance en arrière-plan l'envoi vers Firebase des données modifiées dans PostgreSQL depuis le dernier envoi, " +
+                      "et la propagation des suppressions. Retourne immédiatement le job. Réservé aux managers."
     )
     @ApiResponses(value = {
         @io.swagger.v3.oas.annotations.responses.ApiResponse(
-            responseCode = "200", 
-            description = "Synchronisation réussie"
+            responseCode = "202", 
+            description = "Synchronisation lancée (ou déjà en cours)"
         ),
         @io.swagger.v3.oas.annotations.responses.ApiResponse(
             responseCode = "401", 
@@ -99,45 +75,48 @@ public class SynchronisationController {
     @PostMapping("/to-firebase")
     public ResponseEntity<ApiResponse> syncToFirebase(
             @Parameter(hidden = true) HttpServletRequest httpRequest) {
-        
-        String auth = httpRequest.getHeader("Authorization");
-        if (auth == null || !auth.startsWith("Bearer ")) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                .body(new ApiResponse(false, "Authentification requise"));
-        }
-
-        String token = auth.substring(7).trim();
-        return sessionService.getUtilisateurByToken(token)
-            .map(manager -> {
-                // Vérifier que c'est un manager
-                if (manager.getTypeUtilisateur().getIdTypeUtilisateur() != 2) {
-                    return ResponseEntity.status(HttpStatus.FORBIDDEN)
-                        .body(new ApiResponse(false, "Accès refusé - Réservé aux managers"));
-                }
-
-                // Lancer la synchronisation
-                SyncResultDTO result = syncService.syncToFirebase();
-                
-                if (result.isSuccess()) {
-                    return ResponseEntity.ok()
-                        .body(new ApiResponse(true, result.getMessage(), result));
-                } else {
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body(new ApiResponse(false, "Erreur lors du FULL SYNC: " + result.getError()));
-                }
-            })
-            .orElseGet(() -> ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                .body(new ApiResponse(false, "Token invalide")));
+        return pourManager(httpRequest, () -> lancer(SyncJobService.TypeSync.TO_FIREBASE));
     }
 
     @Operation(
         summary = "Synchronisation bidirectionnelle complète",
-        description = "Effectue une synchronisation complète: Firebase -> PostgreSQL puis PostgreSQL -> Firebase"
+        description = "Lance en arrière-plan une synchronisation complète: Firebase -> PostgreSQL puis PostgreSQL -> Firebase. " +
+                      "Retourne immédiatement le job."
     )
     @PostMapping("/full")
     public ResponseEntity<ApiResponse> fullSync(
             @Parameter(hidden = true) HttpServletRequest httpRequest) {
-        
+        return pourManager(httpRequest, () -> lancer(SyncJobService.TypeSync.FULL));
+    }
+
+    @Operation(
+        summary = "Statut d'une synchronisation",
+        description = "Avancement d'un job de synchronisation : statut, tables terminées, lignes traitées par table et résultats"
+    )
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<ApiResponse> getJob(
+            @PathVariable String id,
+            @Parameter(hidden = true) HttpServletRequest httpRequest) {
+        return pourManager(httpRequest, () -> syncJobService.getJob(id)
+            .map(job -> ResponseEntity.ok(new ApiResponse(true, "Statut de la synchronisation", job)))
+            .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(new ApiResponse(false, "Job de synchronisation introuvable"))));
+    }
+
+    private ResponseEntity<ApiResponse> lancer(SyncJobService.TypeSync type) {
+        SyncJobService.Soumission soumission = syncJobService.soumettre(type);
+        String message = soumission.nouveau()
+            ? "Synchronisation lancée"
+            : "Une synchronisation est déjà en cours";
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+            .body(new ApiResponse(true, message, soumission.job()));
+    }
+
+    /**
+     * Exécuter l'action si le token appartient à un manager, sinon retourner 401 / 403
+     */
+    private ResponseEntity<ApiResponse> pourManager(HttpServletRequest httpRequest,
+                                                    Supplier<ResponseEntity<ApiResponse>> action) {
         String auth = httpRequest.getHeader("Authorization");
         if (auth == null || !auth.startsWith("Bearer ")) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
@@ -147,28 +126,12 @@ public class SynchronisationController {
         String token = auth.substring(7).trim();
         return sessionService.getUtilisateurByToken(token)
             .map(manager -> {
+                // Vérifier que c'est un manager
                 if (manager.getTypeUtilisateur().getIdTypeUtilisateur() != 2) {
                     return ResponseEntity.status(HttpStatus.FORBIDDEN)
                         .body(new ApiResponse(false, "Accès refusé - Réservé aux managers"));
                 }
-
-                // 1. Sync depuis Firebase
-                SyncResultDTO resultFrom = syncService.syncFromFirebase();
-                if (!resultFrom.isSuccess()) {
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body(new ApiResponse(false, "Erreur lors de la sync depuis Firebase: " + resultFrom.getError()));
-                }
-
-                // 2. Sync vers Firebase
-                SyncResultDTO resultTo = syncService.syncToFirebase();
-                if (!resultTo.isSuccess()) {
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body(new ApiResponse(false, "Erreur lors de la sync vers Firebase: " + resultTo.getError()));
-                }
-
-                return ResponseEntity.ok()
-                    .body(new ApiResponse(true, "Synchronisation bidirectionnelle réussie", 
-                        java.util.Map.of("from_firebase", resultFrom, "to_firebase", resultTo)));
+                return action.get();
             })
             .orElseGet(() -> ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                 .body(new ApiResponse(false, "Token invalide")));
@@ -0,0 +1,60 @@
+package com.signalement.controller;
+
+import com.signalement.service.TuileSignalementService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+@RestController
+@RequestMapping("/api/tiles")
+@RequiredArgsConstructor
+@Tag(name = "Tuiles", description = "Tuiles vectorielles des signalements pour la carte")
+public class TuileController {
+
+    private static final MediaType MVT = MediaType.parseMediaType("application/vnd.mapbox-vector-tile");
+
+    private final TuileSignalementService tuileSignalementService;
+
+    @Operation(
+        summary = "Tuile vectorielle des signalements (public)",
+        description = "Tuile Mapbox Vector Tile z/x/y, couche 'signalements' : id, titre, état courant et type de travail. " +
+                      "Réponse 304 si l'ETag envoyé dans If-None-Match correspond toujours à la tuile."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Tuile retournée"),
+        @ApiResponse(responseCode = "304", description = "Tuile inchangée"),
+        @ApiResponse(responseCode = "400", description = "Coordonnées de tuile invalides")
+    })
+    @GetMapping("/signalements/{z}/{x}/{y}.pbf")
+    public ResponseEntity<byte[]> getTuileSignalements(
+            @Parameter(description = "Niveau de zoom (0-22)") @PathVariable int z,
+            @Parameter(description = "Colonne de la tuile") @PathVariable int x,
+            @Parameter(description = "Ligne de la tuile") @PathVariable int y,
+            WebRequest webRequest) {
+        TuileSignalementService.Tuile tuile;
+        try {
+            tuile = tuileSignalementService.getTuile(z, x, y);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        if (webRequest.checkNotModified(tuile.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(tuile.etag()).build();
+        }
+        // Le navigateur revalide la tuile à chaque affichage (réponse 304 si inchangée)
+        return ResponseEntity.ok()
+            .contentType(MVT)
+            .eTag(tuile.etag())
+            .cacheControl(CacheControl.noCache())
+            .body(tuile.contenu());
+    }
+}
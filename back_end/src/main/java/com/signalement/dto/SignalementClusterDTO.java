@@ -0,0 +1,26 @@
+package com.signalement.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Groupe de signalements proches affiché comme un seul point sur la carte visiteur
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SignalementClusterDTO {
+    // Barycentre des signalements du groupe
+    private Double latitude;
+    private Double longitude;
+    private Long total;
+    // Nombre de signalements par libellé de l'état courant
+    private Map<String, Long> parEtat;
+    // Renseigné seulement si le groupe ne contient qu'un signalement (ouverture directe des détails)
+    private Integer idSignalement;
+}
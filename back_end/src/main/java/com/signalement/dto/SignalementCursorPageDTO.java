@@ -0,0 +1,19 @@
+package com.signalement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Page de signalements obtenue par curseur (keyset sur date_creation, id_signalement)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SignalementCursorPageDTO {
+    private List<SignalementDTO> items;
+    private String next; // Curseur vers les signalements plus anciens (null = fin)
+    private String prev; // Curseur vers les signalements plus récents (null = début)
+}
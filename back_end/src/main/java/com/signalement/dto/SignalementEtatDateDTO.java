@@ -0,0 +1,25 @@
+package com.signalement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO pour retourner l'état et l'avancement d'un signalement à une date donnée (relecture de la carte)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SignalementEtatDateDTO {
+    private Integer idSignalement;
+    private BigDecimal latitude;
+    private BigDecimal longitude;
+    private Integer idTypeTravail;
+    private Integer etatId;
+    private String etatLibelle;
+    private Integer pourcentageAvancement;  // 0, 50, ou 100
+}
@@ -8,6 +8,7 @@ import java.util.List;
 /**
  * DTO pour la réponse du changement de statut d'un signalement
  * Inclut le signalement mis à jour et la liste des devices notifiés
+ * (notifications mises en file, envoyées par FCM après le commit)
  */
 @Data
 @NoArgsConstructor
@@ -0,0 +1,24 @@
+package com.signalement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncJobDTO {
+    private String id;
+    private String type; // FROM_FIREBASE, TO_FIREBASE, FULL
+    private String statut; // EN_ATTENTE, EN_COURS, TERMINE, ECHEC
+    private LocalDateTime dateDebut;
+    private LocalDateTime dateFin;
+    private int tablesTerminees;
+    private int tablesTotal;
+    private Map<String, Map<String, Integer>> progression; // Sens (from_firebase, to_firebase) -> Table -> Nombre de lignes traitées
+    private SyncResultDTO fromFirebase;
+    private SyncResultDTO toFirebase;
+    private String error;
+}
@@ -15,4 +15,6 @@ public class SyncResultDTO {
     private String message;
     private Map<String, Integer> stats; // Collection -> Nombre d'items synchronisés
     private String error;
+    private Map<String, Double> throughput; // Collection -> Documents écrits par seconde (PostgreSQL -> Firebase)
+    private Map<String, Long> durations; // Table -> Durée de synchronisation (ms)
 }
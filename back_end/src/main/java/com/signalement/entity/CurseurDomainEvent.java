@@ -0,0 +1,25 @@
+package com.signalement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Position d'un consommateur d'événements métier : dernier domain_event traité.
+ * Chaque consommateur avance à son rythme ; un consommateur lent ou en erreur ne bloque pas les autres.
+ */
+@Entity
+@Table(name = "curseur_domain_event")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CurseurDomainEvent {
+
+    @Id
+    @Column(name = "consommateur", length = 50)
+    private String consommateur;
+
+    @Column(name = "dernier_id", nullable = false)
+    private Long dernierId;
+}
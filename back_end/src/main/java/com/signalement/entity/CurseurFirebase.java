@@ -0,0 +1,26 @@
+package com.signalement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Filigrane du mode temps réel (listeners Firestore) : dernier last_update appliqué par collection.
+ * Au redémarrage, les listeners reprennent à partir de ce filigrane.
+ */
+@Entity
+@Table(name = "curseur_firebase")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CurseurFirebase {
+
+    @Id
+    @Column(name = "collection", length = 50)
+    private String collection;
+
+    @Column(name = "last_update", nullable = false)
+    private LocalDateTime lastUpdate;
+}
@@ -0,0 +1,52 @@
+package com.signalement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Événement métier (outbox) écrit dans la transaction de la modification qui le produit.
+ * Relayé après le commit aux consommateurs (notifications, statistiques, envoi Firebase)
+ * par DomainEventRelay ; un événement d'une transaction annulée n'existe pas.
+ */
+@Entity
+@Table(name = "domain_event")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DomainEvent {
+
+    public static final String SIGNALEMENT_CREE = "SIGNALEMENT_CREE";
+    public static final String ETAT_CHANGE = "ETAT_CHANGE";
+    public static final String ASSIGNATION_STATUT_CHANGE = "ASSIGNATION_STATUT_CHANGE";
+    public static final String SIGNALEMENT_MODIFIE = "SIGNALEMENT_MODIFIE";
+    public static final String SIGNALEMENT_SUPPRIME = "SIGNALEMENT_SUPPRIME";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id_domain_event")
+    private Long idDomainEvent;
+
+    @Column(name = "type", nullable = false, length = 50)
+    private String type;
+
+    @Column(name = "id_signalement", nullable = false)
+    private Integer idSignalement;
+
+    /**
+     * État (ETAT_CHANGE) ou assignation entreprise_concerner (ASSIGNATION_STATUT_CHANGE) concerné
+     */
+    @Column(name = "id_reference")
+    private Integer idReference;
+
+    /**
+     * Libellé du nouvel état ou du nouveau statut d'assignation
+     */
+    @Column(name = "libelle", length = 100)
+    private String libelle;
+
+    @Column(name = "date_evenement", nullable = false)
+    private LocalDateTime dateEvenement;
+}
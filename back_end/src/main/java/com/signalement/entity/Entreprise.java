@@ -8,6 +8,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "entreprise")
+@EntityListeners(FirebaseTombstoneListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -10,6 +10,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "entreprise_concerner")
+@EntityListeners(FirebaseTombstoneListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,43 @@
+package com.signalement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Projection de l'état courant d'un signalement (une ligne par signalement).
+ * Maintenue à chaque ajout dans historique_etat_signalement et reconstruite
+ * périodiquement depuis l'historique par EtatCourantSignalementService.
+ */
+@Entity
+@Table(name = "etat_courant_signalement")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EtatCourantSignalement {
+
+    @Id
+    @Column(name = "id_signalement")
+    private Integer idSignalement;
+
+    @Column(name = "id_etat_signalement", nullable = false)
+    private Integer idEtatSignalement;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "id_etat_signalement", insertable = false, updatable = false)
+    private EtatSignalement etatSignalement;
+
+    @Column(name = "date_changement_etat", nullable = false)
+    private LocalDateTime dateChangement;
+
+    @Column(name = "last_update", nullable = false)
+    private LocalDateTime lastUpdate;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        lastUpdate = LocalDateTime.now();
+    }
+}
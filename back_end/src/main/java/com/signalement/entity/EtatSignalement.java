@@ -9,6 +9,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "etat_signalement")
+@EntityListeners(FirebaseTombstoneListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
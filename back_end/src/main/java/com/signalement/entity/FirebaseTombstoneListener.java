@@ -0,0 +1,59 @@
+package com.signalement.entity;
+
+import jakarta.persistence.PostRemove;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Enregistre une pierre tombale (table suppression_firebase) à chaque suppression d'une ligne
+ * synchronisée avec Firebase, dans la même transaction que la suppression.
+ * L'envoi différentiel PostgreSQL -> Firebase supprime ensuite les documents correspondants.
+ * Les suppressions en cascade faites par la base (ON DELETE CASCADE) ne passent pas par ce listener.
+ */
+@Component
+@RequiredArgsConstructor
+public class FirebaseTombstoneListener {
+
+    private record Cible(String collection, Function<Object, Object> id) {
+    }
+
+    private static final Map<Class<?>, Cible> CIBLES = Map.ofEntries(
+            Map.entry(Signalement.class, new Cible("signalements", e -> ((Signalement) e).getIdSignalement())),
+            Map.entry(Utilisateur.class, new Cible("utilisateurs", e -> ((Utilisateur) e).getIdUtilisateur())),
+            Map.entry(EtatSignalement.class, new Cible("etat_signalement", e -> ((EtatSignalement) e).getIdEtatSignalement())),
+            Map.entry(TypeTravail.class, new Cible("type_travail", e -> ((TypeTravail) e).getIdTypeTravail())),
+            Map.entry(TypeUtilisateur.class, new Cible("type_utilisateur", e -> ((TypeUtilisateur) e).getIdTypeUtilisateur())),
+            Map.entry(Entreprise.class, new Cible("entreprises", e -> ((Entreprise) e).getIdEntreprise())),
+            Map.entry(StatutAssignation.class, new Cible("statut_assignation", e -> ((StatutAssignation) e).getIdStatutAssignation())),
+            Map.entry(EntrepriseConcerner.class, new Cible("entreprise_concerner", e -> ((EntrepriseConcerner) e).getIdEntrepriseConcerner())),
+            Map.entry(HistoriqueEtatSignalement.class, new Cible("historique_etat_signalement", e -> ((HistoriqueEtatSignalement) e).getIdHistorique())),
+            Map.entry(HistoriqueStatutAssignation.class, new Cible("historique_statut_assignation", e -> ((HistoriqueStatutAssignation) e).getIdHistorique())),
+            Map.entry(Session.class, new Cible("sessions", e -> ((Session) e).getIdSession())),
+            Map.entry(TentativeConnexion.class, new Cible("tentative_connexion", e -> ((TentativeConnexion) e).getIdTentative())),
+            Map.entry(PhotoSignalement.class, new Cible("photo_signalement", e -> ((PhotoSignalement) e).getIdPhotoSignalement())),
+            Map.entry(UtilisateurFcmTokens.class, new Cible("utilisateur_fcm_tokens", e -> ((UtilisateurFcmTokens) e).getIdUtilisateurFcmTokens()))
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostRemove
+    public void enregistrerSuppression(Object entity) {
+        Cible cible = CIBLES.get(Hibernate.getClass(entity));
+        if (cible == null) {
+            return;
+        }
+        Object id = cible.id().apply(entity);
+        if (id == null) {
+            return;
+        }
+        // JdbcTemplate participe à la transaction JPA en cours (l'EntityManager ne doit pas être utilisé dans un callback)
+        jdbcTemplate.update(
+                "INSERT INTO suppression_firebase (collection, document_id, date_suppression) VALUES (?, ?, NOW())",
+                cible.collection(), String.valueOf(id));
+    }
+}
@@ -8,6 +8,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "historique_etat_signalement")
+@EntityListeners(FirebaseTombstoneListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
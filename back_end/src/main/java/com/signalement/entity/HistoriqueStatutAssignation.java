@@ -8,6 +8,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "historique_statut_assignation")
+@EntityListeners(FirebaseTombstoneListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
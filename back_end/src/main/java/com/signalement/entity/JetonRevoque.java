@@ -0,0 +1,29 @@
+package com.signalement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Jeton de session signé révoqué à la déconnexion (session.mode=signed).
+ * Partagé entre les instances et conservé au redémarrage ; supprimé une fois le jeton expiré.
+ */
+@Entity
+@Table(name = "jeton_revoque")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JetonRevoque {
+
+    @Id
+    @Column(name = "signature", length = 64)
+    private String signature;
+
+    @Column(name = "date_expiration", nullable = false)
+    private LocalDateTime dateExpiration;
+
+    @Column(name = "date_revocation", nullable = false)
+    private LocalDateTime dateRevocation;
+}
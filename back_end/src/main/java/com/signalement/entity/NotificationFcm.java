@@ -0,0 +1,56 @@
+package com.signalement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import java.time.LocalDateTime;
+
+/**
+ * Notification FCM en attente d'envoi (une ligne par device destinataire).
+ * Écrite dans la transaction du changement d'état, envoyée ensuite par NotificationDispatcher ;
+ * la ligne est supprimée une fois envoyée, ou passe en ECHEC après le dernier essai.
+ */
+@Entity
+@Table(name = "notification_fcm")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationFcm {
+
+    public static final String EN_ATTENTE = "EN_ATTENTE";
+    public static final String ECHEC = "ECHEC";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id_notification_fcm")
+    private Long idNotificationFcm;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "id_utilisateur_fcm_tokens", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private UtilisateurFcmTokens utilisateurFcmTokens;
+
+    @Column(name = "titre", nullable = false, length = 255)
+    private String titre;
+
+    @Column(name = "corps", nullable = false, length = 500)
+    private String corps;
+
+    @Column(name = "statut", nullable = false, length = 20)
+    private String statut;
+
+    @Column(name = "tentatives", nullable = false)
+    private Integer tentatives;
+
+    @Column(name = "prochaine_tentative", nullable = false)
+    private LocalDateTime prochaineTentative;
+
+    @Column(name = "date_creation", nullable = false)
+    private LocalDateTime dateCreation;
+
+    @Column(name = "derniere_erreur", length = 500)
+    private String derniereErreur;
+}
@@ -12,6 +12,7 @@ import java.util.List;
 
 @Entity
 @Table(name = "signalement")
+@EntityListeners(FirebaseTombstoneListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,33 @@
+package com.signalement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Pierre tombale : document Firebase à supprimer lors du prochain envoi PostgreSQL -> Firebase.
+ * Écrite par FirebaseTombstoneListener à chaque suppression d'une ligne synchronisée.
+ */
+@Entity
+@Table(name = "suppression_firebase")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuppressionFirebase {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id_suppression_firebase")
+    private Long idSuppressionFirebase;
+
+    @Column(name = "collection", nullable = false, length = 50)
+    private String collection;
+
+    @Column(name = "document_id", nullable = false, length = 50)
+    private String documentId;
+
+    @Column(name = "date_suppression", nullable = false)
+    private LocalDateTime dateSuppression;
+}
@@ -11,6 +11,7 @@ import java.util.List;
 
 @Entity
 @Table(name = "utilisateur")
+@EntityListeners(FirebaseTombstoneListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
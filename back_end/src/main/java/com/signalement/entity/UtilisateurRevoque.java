@@ -0,0 +1,27 @@
+package com.signalement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Révocation des jetons de session signés d'un utilisateur (blocage, session.mode=signed) :
+ * tout jeton émis avant date_revocation est refusé. Une ligne par utilisateur, date du dernier blocage.
+ * Partagée entre les instances ; supprimée quand tous les jetons concernés ont expiré.
+ */
+@Entity
+@Table(name = "utilisateur_revoque")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UtilisateurRevoque {
+
+    @Id
+    @Column(name = "id_utilisateur")
+    private Integer idUtilisateur;
+
+    @Column(name = "date_revocation", nullable = false)
+    private LocalDateTime dateRevocation;
+}
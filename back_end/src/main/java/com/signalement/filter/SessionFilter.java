@@ -1,5 +1,6 @@
 package com.signalement.filter;
 
+import com.signalement.entity.Utilisateur;
 import com.signalement.service.SessionService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -13,6 +14,7 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Optional;
 
 @Component
 @RequiredArgsConstructor
@@ -53,18 +55,28 @@ public class SessionFilter extends OncePerRequestFilter {
             filterChain.doFilter(request, response);
             return;
         }
-        // GET /api/signalements/etats, /types and public stats endpoints should be public
+        // GET /api/signalements/etats, /types, public stats, map clusters, spatial search and map playback endpoints should be public
         if ("GET".equalsIgnoreCase(method) && (
             path.startsWith("/api/signalements/etats") 
             || path.startsWith("/api/signalements/types")
             || path.startsWith("/api/signalements/summary-public")
             || path.startsWith("/api/signalements/stats-by-type-public")
             || path.startsWith("/api/signalements/stats-by-state-public")
+            || path.startsWith("/api/signalements/clusters")
+            || path.startsWith("/api/signalements/bbox")
+            || path.startsWith("/api/signalements/nearby")
+            || path.startsWith("/api/signalements/nearest")
+            || path.equals("/api/signalements/progress")
         )) {
             filterChain.doFilter(request, response);
             return;
         }
-        // Allow public details endpoint for visitor popups: /api/signalements/{id}/details
+        // Vector tiles of the visitor map are public: /api/tiles/signalements/{z}/{x}/{y}.pbf
+        if ("GET".equalsIgnoreCase(method) && path.startsWith("/api/tiles/")) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        // Allow public details endpoints for visitor popups: /api/signalements/{id}/details and /api/signalements/details?ids=...
         if ("GET".equalsIgnoreCase(method) && path.startsWith("/api/signalements/") && path.endsWith("/details")) {
             filterChain.doFilter(request, response);
             return;
@@ -85,11 +97,26 @@ public class SessionFilter extends OncePerRequestFilter {
         // Le token peut être avec ou sans "Bearer "
         String token = header.startsWith("Bearer ") ? header.substring(7) : header;
         
-        if (!sessionService.isSessionValid(token)) {
+        // Jeton signé : validation sans accès à la base, l'utilisateur n'est chargé que si un contrôleur le demande
+        if (sessionService.isSignedTokenMode()) {
+            if (!sessionService.isSessionValid(token)) {
+                response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Session invalid or expired");
+                return;
+            }
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Optional<Utilisateur> utilisateur = sessionService.getUtilisateurByToken(token);
+        if (utilisateur.isEmpty()) {
             response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Session invalid or expired");
             return;
         }
 
+        // Garder l'utilisateur résolu pour la suite de la requête (évite une seconde recherche du token)
+        request.setAttribute(SessionService.TOKEN_ATTRIBUTE, token);
+        request.setAttribute(SessionService.UTILISATEUR_ATTRIBUTE, utilisateur.get());
+
         // Continue the chain if session is valid
         filterChain.doFilter(request, response);
     }
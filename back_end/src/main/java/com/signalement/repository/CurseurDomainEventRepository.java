@@ -0,0 +1,23 @@
+package com.signalement.repository;
+
+import com.signalement.entity.CurseurDomainEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface CurseurDomainEventRepository extends JpaRepository<CurseurDomainEvent, String> {
+
+    /**
+     * Avancer la position d'un consommateur (jamais de retour en arrière)
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO curseur_domain_event (consommateur, dernier_id) VALUES (:consommateur, :dernierId) " +
+           "ON CONFLICT (consommateur) DO UPDATE SET dernier_id = EXCLUDED.dernier_id " +
+           "WHERE EXCLUDED.dernier_id > curseur_domain_event.dernier_id", nativeQuery = true)
+    int avancer(@Param("consommateur") String consommateur, @Param("dernierId") Long dernierId);
+}
@@ -0,0 +1,24 @@
+package com.signalement.repository;
+
+import com.signalement.entity.CurseurFirebase;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+
+@Repository
+public interface CurseurFirebaseRepository extends JpaRepository<CurseurFirebase, String> {
+
+    /**
+     * Avancer le filigrane d'une collection (jamais de retour en arrière)
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO curseur_firebase (collection, last_update) VALUES (:collection, :lastUpdate) " +
+           "ON CONFLICT (collection) DO UPDATE SET last_update = EXCLUDED.last_update " +
+           "WHERE EXCLUDED.last_update > curseur_firebase.last_update", nativeQuery = true)
+    int avancer(@Param("collection") String collection, @Param("lastUpdate") LocalDateTime lastUpdate);
+}
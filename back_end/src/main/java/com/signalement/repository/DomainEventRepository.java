@@ -0,0 +1,37 @@
+package com.signalement.repository;
+
+import com.signalement.entity.DomainEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DomainEventRepository extends JpaRepository<DomainEvent, Long> {
+
+    /**
+     * Événements suivant la position d'un consommateur, dans l'ordre des ids
+     */
+    @Query("SELECT e FROM DomainEvent e WHERE e.idDomainEvent > :apresId ORDER BY e.idDomainEvent")
+    List<DomainEvent> findSuivants(@Param("apresId") Long apresId, Pageable pageable);
+
+    /**
+     * Événements d'ids donnés (trous passés, transactions validées en retard)
+     */
+    @Query("SELECT e FROM DomainEvent e WHERE e.idDomainEvent IN :ids ORDER BY e.idDomainEvent")
+    List<DomainEvent> findByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Supprimer les événements traités par tous les consommateurs
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DomainEvent e WHERE e.idDomainEvent <= :id")
+    int deleteUpTo(@Param("id") Long id);
+}
@@ -3,7 +3,11 @@ package com.signalement.repository;
 import com.signalement.entity.EntrepriseConcerner;
 import com.signalement.entity.Signalement;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,8 +16,65 @@ public interface EntrepriseConcernerRepository extends JpaRepository<EntrepriseC
     List<EntrepriseConcerner> findBySignalement(Signalement signalement);
     
     List<EntrepriseConcerner> findBySignalement_IdSignalement(Integer signalementId);
+
+    /**
+     * Assignations d'un signalement avec entreprise, statut et signalement chargés (une requête)
+     */
+    @Query("SELECT ec FROM EntrepriseConcerner ec JOIN FETCH ec.signalement " +
+           "LEFT JOIN FETCH ec.entreprise LEFT JOIN FETCH ec.statutAssignation " +
+           "WHERE ec.signalement.idSignalement = :id ORDER BY ec.idEntrepriseConcerner")
+    List<EntrepriseConcerner> findDetailsBySignalement(@Param("id") Integer signalementId);
+
+    /**
+     * Assignations de plusieurs signalements en une requête (entreprise, statut et signalement chargés)
+     */
+    @Query("SELECT ec FROM EntrepriseConcerner ec JOIN FETCH ec.signalement " +
+           "LEFT JOIN FETCH ec.entreprise LEFT JOIN FETCH ec.statutAssignation " +
+           "WHERE ec.signalement.idSignalement IN :ids ORDER BY ec.idEntrepriseConcerner")
+    List<EntrepriseConcerner> findDetailsBySignalements(@Param("ids") Collection<Integer> signalementIds);
     
     Optional<EntrepriseConcerner> findBySignalement_IdSignalementAndEntreprise_IdEntreprise(
         Integer signalementId, 
         Integer entrepriseId);
+
+    interface AssignationStats {
+        Long getTotal();
+        Long getEnCours();
+        Long getTerminees();
+    }
+
+    interface EntrepriseStats {
+        Integer getIdEntreprise();
+        String getNomEntreprise();
+        Long getTachesAssignees();
+        Long getTachesTerminees();
+    }
+
+    /**
+     * Compteurs d'assignations selon l'état courant du signalement associé
+     */
+    @Query("SELECT COUNT(ec) AS total, " +
+           "COALESCE(SUM(CASE WHEN LOWER(e.libelle) = 'en cours' THEN 1 ELSE 0 END), 0) AS enCours, " +
+           "COALESCE(SUM(CASE WHEN LOWER(e.libelle) = 'terminé' THEN 1 ELSE 0 END), 0) AS terminees " +
+           "FROM EntrepriseConcerner ec " +
+           "LEFT JOIN EtatCourantSignalement cur ON cur.idSignalement = ec.signalement.idSignalement " +
+           "LEFT JOIN cur.etatSignalement e")
+    AssignationStats getAssignationStats();
+
+    /**
+     * Tâches assignées / terminées par entreprise (entreprises sans assignation exclues)
+     */
+    @Query("SELECT en.idEntreprise AS idEntreprise, en.nomDuCompagnie AS nomEntreprise, " +
+           "COUNT(ec) AS tachesAssignees, " +
+           "SUM(CASE WHEN LOWER(e.libelle) = 'terminé' THEN 1 ELSE 0 END) AS tachesTerminees " +
+           "FROM EntrepriseConcerner ec JOIN ec.entreprise en " +
+           "LEFT JOIN EtatCourantSignalement cur ON cur.idSignalement = ec.signalement.idSignalement " +
+           "LEFT JOIN cur.etatSignalement e " +
+           "GROUP BY en.idEntreprise, en.nomDuCompagnie")
+    List<EntrepriseStats> getEntrepriseStats();
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<EntrepriseConcerner> findByLastUpdateAfter(LocalDateTime date);
 }
@@ -3,9 +3,16 @@ package com.signalement.repository;
 import com.signalement.entity.Entreprise;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface EntrepriseRepository extends JpaRepository<Entreprise, Integer> {
     Optional<Entreprise> findByEmail(String email);
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<Entreprise> findByLastUpdateAfter(LocalDateTime date);
 }
@@ -0,0 +1,90 @@
+package com.signalement.repository;
+
+import com.signalement.entity.EtatCourantSignalement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface EtatCourantSignalementRepository extends JpaRepository<EtatCourantSignalement, Integer> {
+
+    /**
+     * Récupérer l'état courant d'un signalement (état chargé avec)
+     */
+    @Query("SELECT ec FROM EtatCourantSignalement ec JOIN FETCH ec.etatSignalement WHERE ec.idSignalement = :id")
+    Optional<EtatCourantSignalement> findWithEtatByIdSignalement(@Param("id") Integer id);
+
+    /**
+     * Récupérer l'état courant de plusieurs signalements en une seule requête (état chargé avec)
+     */
+    @Query("SELECT ec FROM EtatCourantSignalement ec JOIN FETCH ec.etatSignalement WHERE ec.idSignalement IN :ids")
+    List<EtatCourantSignalement> findAllWithEtatByIdSignalementIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Enregistrer un changement d'état en une instruction (insertion ou mise à jour atomique).
+     * Un changement plus ancien que l'état courant ne le remplace pas, même si sa transaction valide après.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO etat_courant_signalement (id_signalement, id_etat_signalement, date_changement_etat, last_update) " +
+                   "VALUES (:idSignalement, :idEtat, :dateChangement, NOW()) " +
+                   "ON CONFLICT (id_signalement) DO UPDATE SET " +
+                   "id_etat_signalement = EXCLUDED.id_etat_signalement, " +
+                   "date_changement_etat = EXCLUDED.date_changement_etat, " +
+                   "last_update = EXCLUDED.last_update " +
+                   "WHERE EXCLUDED.date_changement_etat >= etat_courant_signalement.date_changement_etat",
+           nativeQuery = true)
+    int enregistrer(@Param("idSignalement") Integer idSignalement,
+                    @Param("idEtat") Integer idEtat,
+                    @Param("dateChangement") LocalDateTime dateChangement);
+
+    /**
+     * Recalculer la projection de quelques signalements depuis leur historique (après un import groupé)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO etat_courant_signalement (id_signalement, id_etat_signalement, date_changement_etat, last_update) " +
+                   "SELECT DISTINCT ON (h.id_signalement) h.id_signalement, h.id_etat_signalement, h.date_changement_etat, NOW() " +
+                   "FROM historique_etat_signalement h " +
+                   "WHERE h.date_changement_etat IS NOT NULL AND h.id_signalement IN (:ids) " +
+                   "ORDER BY h.id_signalement, h.date_changement_etat DESC, h.id_historique DESC " +
+                   "ON CONFLICT (id_signalement) DO UPDATE SET " +
+                   "id_etat_signalement = EXCLUDED.id_etat_signalement, " +
+                   "date_changement_etat = EXCLUDED.date_changement_etat, " +
+                   "last_update = EXCLUDED.last_update " +
+                   "WHERE etat_courant_signalement.id_etat_signalement <> EXCLUDED.id_etat_signalement " +
+                   "OR etat_courant_signalement.date_changement_etat <> EXCLUDED.date_changement_etat",
+           nativeQuery = true)
+    int upsertFromHistorique(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Reconstruire la projection depuis historique_etat_signalement (dernier changement par signalement)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO etat_courant_signalement (id_signalement, id_etat_signalement, date_changement_etat, last_update) " +
+                   "SELECT DISTINCT ON (h.id_signalement) h.id_signalement, h.id_etat_signalement, h.date_changement_etat, NOW() " +
+                   "FROM historique_etat_signalement h " +
+                   "WHERE h.date_changement_etat IS NOT NULL " +
+                   "ORDER BY h.id_signalement, h.date_changement_etat DESC, h.id_historique DESC " +
+                   "ON CONFLICT (id_signalement) DO UPDATE SET " +
+                   "id_etat_signalement = EXCLUDED.id_etat_signalement, " +
+                   "date_changement_etat = EXCLUDED.date_changement_etat, " +
+                   "last_update = EXCLUDED.last_update " +
+                   "WHERE etat_courant_signalement.id_etat_signalement <> EXCLUDED.id_etat_signalement " +
+                   "OR etat_courant_signalement.date_changement_etat <> EXCLUDED.date_changement_etat",
+           nativeQuery = true)
+    int upsertFromHistorique();
+
+    /**
+     * Supprimer les lignes de projection qui n'ont plus d'historique
+     */
+    @Modifying
+    @Query(value = "DELETE FROM etat_courant_signalement ec " +
+                   "WHERE NOT EXISTS (SELECT 1 FROM historique_etat_signalement h WHERE h.id_signalement = ec.id_signalement)",
+           nativeQuery = true)
+    int deleteOrphans();
+}
@@ -6,6 +6,9 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,10 +23,74 @@ public interface HistoriqueEtatSignalementRepository extends JpaRepository<Histo
      * Find all historique entries by signalement ID
      */
     List<HistoriqueEtatSignalement> findBySignalement_IdSignalementOrderByDateChangementDesc(Integer signalementId);
+
+    /**
+     * Historique d'un signalement avec les états chargés (une requête), du plus récent au plus ancien.
+     * Même ordre que la projection etat_courant_signalement : la première ligne est l'état courant.
+     */
+    @Query("SELECT h FROM HistoriqueEtatSignalement h JOIN FETCH h.etatSignalement " +
+           "WHERE h.signalement.idSignalement = :id " +
+           "ORDER BY h.dateChangement DESC, h.idHistorique DESC")
+    List<HistoriqueEtatSignalement> findTimelineBySignalement(@Param("id") Integer signalementId);
+
+    /**
+     * Historiques de plusieurs signalements en une requête (même ordre par signalement que findTimelineBySignalement)
+     */
+    @Query("SELECT h FROM HistoriqueEtatSignalement h JOIN FETCH h.etatSignalement " +
+           "WHERE h.signalement.idSignalement IN :ids " +
+           "ORDER BY h.signalement.idSignalement, h.dateChangement DESC, h.idHistorique DESC")
+    List<HistoriqueEtatSignalement> findTimelineBySignalements(@Param("ids") Collection<Integer> signalementIds);
     
     /**
      * Récupérer l'état le plus récent d'un signalement
      */
     @Query("SELECT h FROM HistoriqueEtatSignalement h WHERE h.signalement = :signalement ORDER BY h.dateChangement DESC LIMIT 1")
     Optional<HistoriqueEtatSignalement> findLatestBySignalement(@Param("signalement") Signalement signalement);
+
+    /**
+     * État d'un signalement à une date : dernier changement antérieur ou égal à la date
+     * (index (id_signalement, date_changement_etat DESC, id_historique DESC))
+     */
+    @Query(value = "SELECT h.id_etat_signalement FROM historique_etat_signalement h " +
+                   "WHERE h.id_signalement = :id AND h.date_changement_etat <= :at " +
+                   "ORDER BY h.date_changement_etat DESC, h.id_historique DESC " +
+                   "LIMIT 1",
+           nativeQuery = true)
+    Optional<Integer> findIdEtatAt(@Param("id") Integer signalementId, @Param("at") LocalDateTime at);
+
+    interface EtatALaDate {
+        Integer getIdSignalement();
+        BigDecimal getLatitude();
+        BigDecimal getLongitude();
+        Integer getIdTypeTravail();
+        Integer getIdEtat();
+    }
+
+    /**
+     * État de tous les signalements créés avant une date, en une requête :
+     * DISTINCT ON garde le dernier changement antérieur ou égal à la date pour chaque signalement
+     * (parcours de l'index (id_signalement, date_changement_etat DESC, id_historique DESC)).
+     * Sans changement à cette date, l'état est "En attente" (id 1), comme pour un signalement seul.
+     */
+    @Query(value = "SELECT s.id_signalement AS \"idSignalement\", s.latitude AS \"latitude\", s.longitude AS \"longitude\", " +
+                   "s.id_type_travail AS \"idTypeTravail\", COALESCE(h.id_etat_signalement, 1) AS \"idEtat\" " +
+                   "FROM signalement s " +
+                   "LEFT JOIN (SELECT DISTINCT ON (id_signalement) id_signalement, id_etat_signalement " +
+                   "           FROM historique_etat_signalement " +
+                   "           WHERE date_changement_etat <= :at " +
+                   "           ORDER BY id_signalement, date_changement_etat DESC, id_historique DESC) h " +
+                   "ON h.id_signalement = s.id_signalement " +
+                   "WHERE s.date_creation <= :at " +
+                   "AND (CAST(:etatId AS INTEGER) IS NULL OR COALESCE(h.id_etat_signalement, 1) = :etatId) " +
+                   "AND (CAST(:typeTravailId AS INTEGER) IS NULL OR s.id_type_travail = :typeTravailId) " +
+                   "ORDER BY s.id_signalement",
+           nativeQuery = true)
+    List<EtatALaDate> findEtatsAt(@Param("at") LocalDateTime at,
+                                  @Param("etatId") Integer etatId,
+                                  @Param("typeTravailId") Integer typeTravailId);
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<HistoriqueEtatSignalement> findByLastUpdateAfter(LocalDateTime date);
 }
@@ -3,7 +3,14 @@ package com.signalement.repository;
 import com.signalement.entity.HistoriqueStatutAssignation;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
 
 @Repository
 public interface HistoriqueStatutAssignationRepository extends JpaRepository<HistoriqueStatutAssignation, Integer> {
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<HistoriqueStatutAssignation> findByLastUpdateAfter(LocalDateTime date);
 }
@@ -0,0 +1,23 @@
+package com.signalement.repository;
+
+import com.signalement.entity.JetonRevoque;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface JetonRevoqueRepository extends JpaRepository<JetonRevoque, String> {
+
+    /**
+     * Révocations enregistrées après une date (rechargement périodique par chaque instance)
+     */
+    List<JetonRevoque> findByDateRevocationAfter(LocalDateTime date);
+
+    /**
+     * Révocations encore utiles (jeton non expiré), chargées au démarrage
+     */
+    List<JetonRevoque> findByDateExpirationAfter(LocalDateTime date);
+
+    long deleteByDateExpirationBefore(LocalDateTime date);
+}
@@ -0,0 +1,23 @@
+package com.signalement.repository;
+
+import com.signalement.entity.NotificationFcm;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface NotificationFcmRepository extends JpaRepository<NotificationFcm, Long> {
+
+    /**
+     * Notifications à envoyer (en attente et dont la date du prochain essai est passée), avec leur token
+     */
+    @Query("SELECT n FROM NotificationFcm n JOIN FETCH n.utilisateurFcmTokens " +
+           "WHERE n.statut = 'EN_ATTENTE' AND n.prochaineTentative <= :maintenant " +
+           "ORDER BY n.idNotificationFcm")
+    List<NotificationFcm> findAEnvoyer(@Param("maintenant") LocalDateTime maintenant, Pageable pageable);
+}
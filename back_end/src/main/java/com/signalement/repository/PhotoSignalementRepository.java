@@ -4,6 +4,7 @@ import com.signalement.entity.PhotoSignalement;
 import com.signalement.entity.Signalement;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -22,4 +23,9 @@ public interface PhotoSignalementRepository extends JpaRepository<PhotoSignaleme
      * Vérifier si une URL de photo existe
      */
     boolean existsByUrlPhoto(String urlPhoto);
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<PhotoSignalement> findByLastUpdateAfter(LocalDateTime date);
 }
@@ -3,16 +3,31 @@ package com.signalement.repository;
 import com.signalement.entity.Session;
 import com.signalement.entity.Utilisateur;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface SessionRepository extends JpaRepository<Session, Integer> {
     Optional<Session> findByToken(String token);
+
+    /**
+     * Récupérer une session avec son utilisateur et le type d'utilisateur (pour le cache de sessions)
+     */
+    @Query("SELECT s FROM Session s JOIN FETCH s.utilisateur u LEFT JOIN FETCH u.typeUtilisateur WHERE s.token = :token")
+    Optional<Session> findWithUtilisateurByToken(@Param("token") String token);
+
     Optional<Session> findByUtilisateur(Utilisateur utilisateur);
 
     long deleteByUtilisateur(Utilisateur utilisateur);
 
     long deleteByDateFinBefore(LocalDateTime dateTime);
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<Session> findByLastUpdateAfter(LocalDateTime date);
 }
@@ -2,22 +2,312 @@ package com.signalement.repository;
 
 import com.signalement.entity.Signalement;
 import com.signalement.entity.Utilisateur;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface SignalementRepository extends JpaRepository<Signalement, Integer> {
     List<Signalement> findByUtilisateur(Utilisateur utilisateur);
     
-    // etatActuel removed - use HistoriqueEtatSignalementRepository.findCurrentSignalementsByEtat() instead
+    // etatActuel removed - l'état courant est lu depuis la projection etat_courant_signalement
+
+    // ===== Listes : projection des colonnes de SignalementDTO (aucune entité chargée dans le contexte de persistance) =====
+
+    /**
+     * Colonnes d'un SignalementDTO : signalement, état courant et type de travail joints dans la même requête
+     */
+    interface SignalementResume {
+        Integer getIdSignalement();
+        String getTitre();
+        String getDescription();
+        BigDecimal getLatitude();
+        BigDecimal getLongitude();
+        BigDecimal getSurfaceMetreCarree();
+        LocalDateTime getDateCreation();
+        Integer getEtatActuelId();
+        String getEtatLibelle();
+        Integer getIdTypeTravail();
+        String getTypeTravauxLibelle();
+        Integer getIdUtilisateur();
+    }
+
+    String RESUME_JPQL = "SELECT s.idSignalement AS idSignalement, s.titre AS titre, s.description AS description, " +
+            "s.latitude AS latitude, s.longitude AS longitude, s.surfaceMetreCarree AS surfaceMetreCarree, " +
+            "s.dateCreation AS dateCreation, ec.idEtatSignalement AS etatActuelId, e.libelle AS etatLibelle, " +
+            "t.idTypeTravail AS idTypeTravail, t.libelle AS typeTravauxLibelle, s.utilisateur.idUtilisateur AS idUtilisateur " +
+            "FROM Signalement s LEFT JOIN s.typeTravail t " +
+            "LEFT JOIN EtatCourantSignalement ec ON ec.idSignalement = s.idSignalement " +
+            "LEFT JOIN ec.etatSignalement e ";
+
+    String RESUME_SQL = "SELECT s.id_signalement AS \"idSignalement\", s.titre AS \"titre\", s.description AS \"description\", " +
+            "s.latitude AS \"latitude\", s.longitude AS \"longitude\", s.surface_metre_carree AS \"surfaceMetreCarree\", " +
+            "s.date_creation AS \"dateCreation\", ec.id_etat_signalement AS \"etatActuelId\", e.libelle AS \"etatLibelle\", " +
+            "t.id_type_travail AS \"idTypeTravail\", t.libelle AS \"typeTravauxLibelle\", s.id_utilisateur AS \"idUtilisateur\" " +
+            "FROM signalement s " +
+            "LEFT JOIN type_travail t ON t.id_type_travail = s.id_type_travail " +
+            "LEFT JOIN etat_courant_signalement ec ON ec.id_signalement = s.id_signalement " +
+            "LEFT JOIN etat_signalement e ON e.id_etat_signalement = ec.id_etat_signalement ";
+
+    /**
+     * Signalements d'un utilisateur (projection)
+     */
+    @Query(RESUME_JPQL + "WHERE s.utilisateur.idUtilisateur = :idUtilisateur")
+    List<SignalementResume> findResumesByUtilisateur(@Param("idUtilisateur") Integer idUtilisateur);
+
+    /**
+     * Filtrer les signalements par état courant et/ou type de travail (null = pas de filtre)
+     */
+    @Query("SELECT s FROM Signalement s LEFT JOIN EtatCourantSignalement ec ON ec.idSignalement = s.idSignalement " +
+           "WHERE (:etatId IS NULL OR ec.idEtatSignalement = :etatId) " +
+           "AND (:typeTravailId IS NULL OR s.typeTravail.idTypeTravail = :typeTravailId)")
+    List<Signalement> findByEtatCourantAndTypeTravail(@Param("etatId") Integer etatId,
+                                                      @Param("typeTravailId") Integer typeTravailId);
+
+    /**
+     * Même filtre que findByEtatCourantAndTypeTravail (projection)
+     */
+    @Query(RESUME_JPQL +
+           "WHERE (:etatId IS NULL OR ec.idEtatSignalement = :etatId) " +
+           "AND (:typeTravailId IS NULL OR t.idTypeTravail = :typeTravailId)")
+    List<SignalementResume> findResumesByEtatCourantAndTypeTravail(@Param("etatId") Integer etatId,
+                                                                   @Param("typeTravailId") Integer typeTravailId);
+
+    /**
+     * Même filtre, plus récents d'abord, paginé en SQL (LIMIT/OFFSET + COUNT séparé) (projection)
+     */
+    @Query(value = RESUME_JPQL +
+                   "WHERE (:etatId IS NULL OR ec.idEtatSignalement = :etatId) " +
+                   "AND (:typeTravailId IS NULL OR t.idTypeTravail = :typeTravailId) " +
+                   "ORDER BY s.dateCreation DESC, s.idSignalement DESC",
+           countQuery = "SELECT COUNT(s) FROM Signalement s LEFT JOIN EtatCourantSignalement ec ON ec.idSignalement = s.idSignalement " +
+                        "WHERE (:etatId IS NULL OR ec.idEtatSignalement = :etatId) " +
+                        "AND (:typeTravailId IS NULL OR s.typeTravail.idTypeTravail = :typeTravailId)")
+    Page<SignalementResume> findPageByEtatCourantAndTypeTravail(@Param("etatId") Integer etatId,
+                                                                @Param("typeTravailId") Integer typeTravailId,
+                                                                Pageable pageable);
+
+    /**
+     * Keyset : signalements strictement plus anciens que (dateCreation, id), du plus récent au plus ancien.
+     * La comparaison de ligne utilise l'index (date_creation DESC, id_signalement DESC).
+     */
+    @Query(value = RESUME_SQL +
+                   "WHERE (CAST(:etatId AS INTEGER) IS NULL OR ec.id_etat_signalement = :etatId) " +
+                   "AND (CAST(:typeTravailId AS INTEGER) IS NULL OR s.id_type_travail = :typeTravailId) " +
+                   "AND (s.date_creation, s.id_signalement) < (:dateCreation, :idSignalement) " +
+                   "ORDER BY s.date_creation DESC, s.id_signalement DESC " +
+                   "LIMIT :limit",
+           nativeQuery = true)
+    List<SignalementResume> findOlderThan(@Param("etatId") Integer etatId,
+                                          @Param("typeTravailId") Integer typeTravailId,
+                                          @Param("dateCreation") LocalDateTime dateCreation,
+                                          @Param("idSignalement") Integer idSignalement,
+                                          @Param("limit") int limit);
+
+    /**
+     * Keyset : signalements strictement plus récents que (dateCreation, id), du plus ancien au plus récent.
+     */
+    @Query(value = RESUME_SQL +
+                   "WHERE (CAST(:etatId AS INTEGER) IS NULL OR ec.id_etat_signalement = :etatId) " +
+                   "AND (CAST(:typeTravailId AS INTEGER) IS NULL OR s.id_type_travail = :typeTravailId) " +
+                   "AND (s.date_creation, s.id_signalement) > (:dateCreation, :idSignalement) " +
+                   "ORDER BY s.date_creation ASC, s.id_signalement ASC " +
+                   "LIMIT :limit",
+           nativeQuery = true)
+    List<SignalementResume> findNewerThan(@Param("etatId") Integer etatId,
+                                          @Param("typeTravailId") Integer typeTravailId,
+                                          @Param("dateCreation") LocalDateTime dateCreation,
+                                          @Param("idSignalement") Integer idSignalement,
+                                          @Param("limit") int limit);
     
-    // Requête spatiale exemple (à adapter selon besoin)
-    @Query(value = "SELECT * FROM signalement WHERE ST_DWithin(geom, ST_SetSRID(ST_MakePoint(:longitude, :latitude), 4326)::geography, :distance)", 
+    // ===== Agrégats pour les statistiques (une requête quel que soit le volume) =====
+
+    interface EtatCount {
+        Integer getIdEtat();
+        String getLibelle();
+        Long getTotal();
+    }
+
+    interface TypeTravailStats {
+        Integer getIdTypeTravail();
+        String getLibelle();
+        Long getTotal();
+        Long getEnAttente();
+        Long getEnCours();
+        Long getTermine();
+    }
+
+    /**
+     * Nombre de signalements par état courant
+     */
+    @Query("SELECT e.idEtatSignalement AS idEtat, e.libelle AS libelle, COUNT(ec) AS total " +
+           "FROM EtatCourantSignalement ec JOIN ec.etatSignalement e " +
+           "GROUP BY e.idEtatSignalement, e.libelle")
+    List<EtatCount> countByEtatCourant();
+
+    /**
+     * Nombre de signalements par type de travail, ventilé par état courant
+     */
+    @Query("SELECT t.idTypeTravail AS idTypeTravail, t.libelle AS libelle, COUNT(s) AS total, " +
+           "SUM(CASE WHEN LOWER(e.libelle) = 'en attente' THEN 1 ELSE 0 END) AS enAttente, " +
+           "SUM(CASE WHEN LOWER(e.libelle) = 'en cours' THEN 1 ELSE 0 END) AS enCours, " +
+           "SUM(CASE WHEN LOWER(e.libelle) = 'terminé' THEN 1 ELSE 0 END) AS termine " +
+           "FROM Signalement s JOIN s.typeTravail t " +
+           "LEFT JOIN EtatCourantSignalement ec ON ec.idSignalement = s.idSignalement " +
+           "LEFT JOIN ec.etatSignalement e " +
+           "GROUP BY t.idTypeTravail, t.libelle")
+    List<TypeTravailStats> statsByTypeTravail();
+
+    /**
+     * Délai moyen (en jours entiers) entre la création et la dernière résolution,
+     * pour les signalements actuellement résolus. NULL s'il n'y en a aucun.
+     */
+    @Query(value = "SELECT AVG(TRUNC(EXTRACT(EPOCH FROM (r.date_resolution - s.date_creation)) / 86400)) " +
+                   "FROM (SELECT h.id_signalement, MAX(h.date_changement_etat) AS date_resolution " +
+                   "      FROM historique_etat_signalement h " +
+                   "      JOIN etat_signalement e ON e.id_etat_signalement = h.id_etat_signalement " +
+                   "      WHERE LOWER(e.libelle) IN ('résolu', 'terminé') " +
+                   "      GROUP BY h.id_signalement) r " +
+                   "JOIN signalement s ON s.id_signalement = r.id_signalement " +
+                   "JOIN etat_courant_signalement ec ON ec.id_signalement = s.id_signalement " +
+                   "JOIN etat_signalement ce ON ce.id_etat_signalement = ec.id_etat_signalement " +
+                   "WHERE LOWER(ce.libelle) IN ('résolu', 'terminé')",
+           nativeQuery = true)
+    Double averageProcessingTimeInDays();
+    
+    // ===== Regroupement pour la carte visiteur =====
+
+    interface ClusterCellule {
+        Double getCelluleX();
+        Double getCelluleY();
+        String getEtat();
+        Long getTotal();
+        Double getSommeLongitude();
+        Double getSommeLatitude();
+        Integer getIdSignalement();
+    }
+
+    /**
+     * Signalements de l'emprise regroupés par cellule de grille (ST_SnapToGrid, taille en degrés)
+     * et par état courant : une ligne par (cellule, état), agrégée par cellule dans le service.
+     * Le filtre d'emprise (&&) est fait en geometry (plan lon/lat, index GiST sur geom::geometry) :
+     * en geography, l'enveloppe suit les géodésiques et une emprise large (zoom faible) ne correspond à rien.
+     */
+    @Query(value = "SELECT ST_X(g.cellule) AS \"celluleX\", ST_Y(g.cellule) AS \"celluleY\", " +
+                   "e.libelle AS \"etat\", COUNT(*) AS \"total\", " +
+                   "SUM(ST_X(g.point)) AS \"sommeLongitude\", SUM(ST_Y(g.point)) AS \"sommeLatitude\", " +
+                   "MIN(s.id_signalement) AS \"idSignalement\" " +
+                   "FROM signalement s " +
+                   "CROSS JOIN LATERAL (SELECT s.geom::geometry AS point, " +
+                   "                    ST_SnapToGrid(s.geom::geometry, :taille) AS cellule) g " +
+                   "LEFT JOIN etat_courant_signalement ec ON ec.id_signalement = s.id_signalement " +
+                   "LEFT JOIN etat_signalement e ON e.id_etat_signalement = ec.id_etat_signalement " +
+                   "WHERE s.geom::geometry && ST_MakeEnvelope(:minLon, :minLat, :maxLon, :maxLat, 4326) " +
+                   "AND (CAST(:etatId AS INTEGER) IS NULL OR ec.id_etat_signalement = :etatId) " +
+                   "AND (CAST(:typeTravailId AS INTEGER) IS NULL OR s.id_type_travail = :typeTravailId) " +
+                   "GROUP BY 1, 2, 3",
+           nativeQuery = true)
+    List<ClusterCellule> clusterByGrid(@Param("minLon") double minLon,
+                                       @Param("minLat") double minLat,
+                                       @Param("maxLon") double maxLon,
+                                       @Param("maxLat") double maxLat,
+                                       @Param("taille") double taille,
+                                       @Param("etatId") Integer etatId,
+                                       @Param("typeTravailId") Integer typeTravailId);
+
+    /**
+     * Tuile vectorielle (Mapbox Vector Tile) z/x/y des signalements, couche "signalements",
+     * avec l'état courant et le type de travail en attributs. Tuile vide si aucun signalement.
+     * Emprise de la tuile comparée en geometry (index GiST sur geom::geometry), valable aux zooms 0 et 1.
+     */
+    @Query(value = "WITH emprise AS (SELECT ST_TileEnvelope(:z, :x, :y) AS env), " +
+                   "points AS (" +
+                   "  SELECT ST_AsMVTGeom(ST_Transform(s.geom::geometry, 3857), emprise.env, 4096, 64, true) AS geom, " +
+                   "         s.id_signalement AS id, s.titre AS titre, " +
+                   "         ec.id_etat_signalement AS id_etat, e.libelle AS etat, " +
+                   "         s.id_type_travail AS id_type_travail, t.libelle AS type_travail " +
+                   "  FROM signalement s CROSS JOIN emprise " +
+                   "  LEFT JOIN etat_courant_signalement ec ON ec.id_signalement = s.id_signalement " +
+                   "  LEFT JOIN etat_signalement e ON e.id_etat_signalement = ec.id_etat_signalement " +
+                   "  LEFT JOIN type_travail t ON t.id_type_travail = s.id_type_travail " +
+                   "  WHERE s.geom::geometry && ST_Transform(emprise.env, 4326)" +
+                   ") " +
+                   "SELECT COALESCE(ST_AsMVT(points.*, 'signalements', 4096, 'geom', 'id'), ''::bytea) FROM points",
            nativeQuery = true)
-    List<Signalement> findSignalementsNearby(@Param("latitude") Double latitude, 
-                                             @Param("longitude") Double longitude, 
-                                             @Param("distance") Double distance);
+    byte[] tuileMvt(@Param("z") int z, @Param("x") int x, @Param("y") int y);
+
+    // ===== Recherche spatiale (index GiST sur geom) =====
+
+    /**
+     * Signalements dans une emprise (longitudes/latitudes WGS84), filtrés par état courant / type de travail,
+     * plus récents d'abord. Le test && est fait en geometry (index GiST sur geom::geometry) :
+     * une emprise de 180° ou plus reste valable, contrairement à une enveloppe geography.
+     */
+    @Query(value = RESUME_SQL +
+                   "WHERE s.geom::geometry && ST_MakeEnvelope(:minLon, :minLat, :maxLon, :maxLat, 4326) " +
+                   "AND (CAST(:etatId AS INTEGER) IS NULL OR ec.id_etat_signalement = :etatId) " +
+                   "AND (CAST(:typeTravailId AS INTEGER) IS NULL OR s.id_type_travail = :typeTravailId) " +
+                   "ORDER BY s.date_creation DESC, s.id_signalement DESC",
+           countQuery = "SELECT COUNT(*) FROM signalement s " +
+                        "LEFT JOIN etat_courant_signalement ec ON ec.id_signalement = s.id_signalement " +
+                        "WHERE s.geom::geometry && ST_MakeEnvelope(:minLon, :minLat, :maxLon, :maxLat, 4326) " +
+                        "AND (CAST(:etatId AS INTEGER) IS NULL OR ec.id_etat_signalement = :etatId) " +
+                        "AND (CAST(:typeTravailId AS INTEGER) IS NULL OR s.id_type_travail = :typeTravailId)",
+           nativeQuery = true)
+    Page<SignalementResume> findPageInBbox(@Param("minLon") double minLon,
+                                           @Param("minLat") double minLat,
+                                           @Param("maxLon") double maxLon,
+                                           @Param("maxLat") double maxLat,
+                                           @Param("etatId") Integer etatId,
+                                           @Param("typeTravailId") Integer typeTravailId,
+                                           Pageable pageable);
+
+    /**
+     * Signalements à moins de `distance` mètres d'un point, du plus proche au plus éloigné.
+     * ST_DWithin et l'opérateur <-> utilisent l'index GiST de geom.
+     */
+    @Query(value = RESUME_SQL +
+                   "WHERE ST_DWithin(s.geom, ST_SetSRID(ST_MakePoint(:longitude, :latitude), 4326)::geography, :distance) " +
+                   "AND (CAST(:etatId AS INTEGER) IS NULL OR ec.id_etat_signalement = :etatId) " +
+                   "AND (CAST(:typeTravailId AS INTEGER) IS NULL OR s.id_type_travail = :typeTravailId) " +
+                   "ORDER BY s.geom <-> ST_SetSRID(ST_MakePoint(:longitude, :latitude), 4326)::geography, s.id_signalement",
+           countQuery = "SELECT COUNT(*) FROM signalement s " +
+                        "LEFT JOIN etat_courant_signalement ec ON ec.id_signalement = s.id_signalement " +
+                        "WHERE ST_DWithin(s.geom, ST_SetSRID(ST_MakePoint(:longitude, :latitude), 4326)::geography, :distance) " +
+                        "AND (CAST(:etatId AS INTEGER) IS NULL OR ec.id_etat_signalement = :etatId) " +
+                        "AND (CAST(:typeTravailId AS INTEGER) IS NULL OR s.id_type_travail = :typeTravailId)",
+           nativeQuery = true)
+    Page<SignalementResume> findPageNearby(@Param("latitude") double latitude,
+                                           @Param("longitude") double longitude,
+                                           @Param("distance") double distance,
+                                           @Param("etatId") Integer etatId,
+                                           @Param("typeTravailId") Integer typeTravailId,
+                                           Pageable pageable);
+
+    /**
+     * Les `limit` signalements les plus proches d'un point (k plus proches voisins par l'opérateur <->)
+     */
+    @Query(value = RESUME_SQL +
+                   "WHERE s.geom IS NOT NULL " +
+                   "AND (CAST(:etatId AS INTEGER) IS NULL OR ec.id_etat_signalement = :etatId) " +
+                   "AND (CAST(:typeTravailId AS INTEGER) IS NULL OR s.id_type_travail = :typeTravailId) " +
+                   "ORDER BY s.geom <-> ST_SetSRID(ST_MakePoint(:longitude, :latitude), 4326)::geography " +
+                   "LIMIT :limit",
+           nativeQuery = true)
+    List<SignalementResume> findNearest(@Param("latitude") double latitude,
+                                        @Param("longitude") double longitude,
+                                        @Param("etatId") Integer etatId,
+                                        @Param("typeTravailId") Integer typeTravailId,
+                                        @Param("limit") int limit);
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<Signalement> findByLastUpdateAfter(LocalDateTime date);
 }
@@ -3,9 +3,16 @@ package com.signalement.repository;
 import com.signalement.entity.StatutAssignation;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface StatutAssignationRepository extends JpaRepository<StatutAssignation, Integer> {
     Optional<StatutAssignation> findByLibelle(String libelle);
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<StatutAssignation> findByLastUpdateAfter(LocalDateTime date);
 }
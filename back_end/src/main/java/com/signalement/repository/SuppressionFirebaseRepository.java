@@ -0,0 +1,15 @@
+package com.signalement.repository;
+
+import com.signalement.entity.SuppressionFirebase;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+@Repository
+public interface SuppressionFirebaseRepository extends JpaRepository<SuppressionFirebase, Long> {
+
+    /**
+     * Suppressions en attente d'envoi vers Firebase, dans l'ordre où elles ont eu lieu
+     */
+    List<SuppressionFirebase> findAllByOrderByIdSuppressionFirebaseAsc();
+}
@@ -16,6 +16,12 @@ public interface SynchronisationFirebaseRepository extends JpaRepository<Synchro
      */
     @Query("SELECT MAX(s.dateSynchronisation) FROM SynchronisationFirebase s WHERE s.success = true AND s.remarque LIKE '%Firebase%PostgreSQL%'")
     Optional<LocalDateTime> findLastSuccessfulSyncFromFirebaseDate();
+
+    /**
+     * Récupérer la date du dernier envoi réussi vers Firebase (filigrane de l'envoi différentiel)
+     */
+    @Query("SELECT MAX(s.dateSynchronisation) FROM SynchronisationFirebase s WHERE s.success = true AND s.remarque LIKE '%PostgreSQL->Firebase%'")
+    Optional<LocalDateTime> findLastSuccessfulSyncToFirebaseDate();
     
     /**
      * Récupérer les 10 dernières synchronisations
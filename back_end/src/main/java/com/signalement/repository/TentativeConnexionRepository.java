@@ -10,4 +10,9 @@ import java.util.List;
 @Repository
 public interface TentativeConnexionRepository extends JpaRepository<TentativeConnexion, Integer> {
     List<TentativeConnexion> findByUtilisateurAndDateTentativeAfter(Utilisateur utilisateur, LocalDateTime date);
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<TentativeConnexion> findByLastUpdateAfter(LocalDateTime date);
 }
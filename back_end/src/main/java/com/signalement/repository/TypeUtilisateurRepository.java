@@ -3,9 +3,16 @@ package com.signalement.repository;
 import com.signalement.entity.TypeUtilisateur;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface TypeUtilisateurRepository extends JpaRepository<TypeUtilisateur, Integer> {
     Optional<TypeUtilisateur> findByLibelle(String libelle);
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<TypeUtilisateur> findByLastUpdateAfter(LocalDateTime date);
 }
@@ -2,8 +2,14 @@ package com.signalement.repository;
 
 import com.signalement.entity.UtilisateurFcmTokens;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -31,4 +37,18 @@ public interface UtilisateurFcmTokensRepository extends JpaRepository<Utilisateu
     void deleteByFcmToken(String fcmToken);
 
     List<UtilisateurFcmTokens> findByUtilisateur_IdUtilisateurAndEnableTrue(Integer idUtilisateur);
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<UtilisateurFcmTokens> findByLastUpdateAfter(LocalDateTime date);
+
+    /**
+     * Désactiver les tokens signalés comme invalides par FCM (last_update modifié pour l'envoi vers Firebase)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE UtilisateurFcmTokens t SET t.enable = false, t.lastUpdate = :maintenant " +
+           "WHERE t.idUtilisateurFcmTokens IN :ids AND t.enable = true")
+    int desactiver(@Param("ids") Collection<Integer> ids, @Param("maintenant") LocalDateTime maintenant);
 }
@@ -1,8 +1,14 @@
 package com.signalement.repository;
 
 import com.signalement.entity.Utilisateur;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +17,72 @@ public interface UtilisateurRepository extends JpaRepository<Utilisateur, Intege
     boolean existsByEmail(String email);
     boolean existsByFirebaseUid(String firebaseUid);
     Utilisateur findByFirebaseUid(String firebaseUid);
+
+    /**
+     * Récupérer un utilisateur avec son type (utilisateur d'un jeton de session signé)
+     */
+    @Query("SELECT u FROM Utilisateur u LEFT JOIN FETCH u.typeUtilisateur WHERE u.idUtilisateur = :id")
+    Optional<Utilisateur> findWithTypeById(@Param("id") Integer id);
+
+    /**
+     * Ids des utilisateurs bloqués
+     */
+    @Query("SELECT u.idUtilisateur FROM Utilisateur u WHERE u.isBlocked = true")
+    List<Integer> findBlockedIds();
+
+    /**
+     * Colonnes de la liste des utilisateurs (manager) : utilisateur et libellé de son type, sans entité chargée
+     */
+    interface UtilisateurResume {
+        Integer getIdUtilisateur();
+        String getNom();
+        String getPrenom();
+        String getEmail();
+        Boolean getIsBlocked();
+        String getTypeUtilisateur();
+    }
+
+    /**
+     * Page d'utilisateurs filtrée en SQL (null = pas de filtre)
+     * @param recherche motif LIKE en minuscules (échappement \) appliqué au nom, au prénom et à l'email
+     * @param bloque true = bloqués, false = actifs
+     * @param type motif LIKE en minuscules (échappement \) appliqué au libellé du type
+     */
+    @Query(value = "SELECT u.idUtilisateur AS idUtilisateur, u.nom AS nom, u.prenom AS prenom, u.email AS email, " +
+                   "u.isBlocked AS isBlocked, t.libelle AS typeUtilisateur " +
+                   "FROM Utilisateur u LEFT JOIN u.typeUtilisateur t " +
+                   "WHERE (:recherche IS NULL OR LOWER(u.nom) LIKE :recherche ESCAPE '\\' OR LOWER(u.prenom) LIKE :recherche ESCAPE '\\' OR LOWER(u.email) LIKE :recherche ESCAPE '\\') " +
+                   "AND (:bloque IS NULL OR COALESCE(u.isBlocked, false) = :bloque) " +
+                   "AND (:type IS NULL OR LOWER(t.libelle) LIKE :type ESCAPE '\\') " +
+                   "ORDER BY u.idUtilisateur",
+           countQuery = "SELECT COUNT(u) FROM Utilisateur u LEFT JOIN u.typeUtilisateur t " +
+                        "WHERE (:recherche IS NULL OR LOWER(u.nom) LIKE :recherche ESCAPE '\\' OR LOWER(u.prenom) LIKE :recherche ESCAPE '\\' OR LOWER(u.email) LIKE :recherche ESCAPE '\\') " +
+                        "AND (:bloque IS NULL OR COALESCE(u.isBlocked, false) = :bloque) " +
+                        "AND (:type IS NULL OR LOWER(t.libelle) LIKE :type ESCAPE '\\')")
+    Page<UtilisateurResume> findResumes(@Param("recherche") String recherche,
+                                        @Param("bloque") Boolean bloque,
+                                        @Param("type") String type,
+                                        Pageable pageable);
+
+    interface UtilisateurStats {
+        Long getTotal();
+        Long getCitoyens();
+        Long getManagers();
+        Long getBloques();
+    }
+
+    /**
+     * Compteurs utilisateurs pour les statistiques (citoyen = type 1, manager = type 2)
+     */
+    @Query("SELECT COUNT(u) AS total, " +
+           "COALESCE(SUM(CASE WHEN u.typeUtilisateur.idTypeUtilisateur = 1 THEN 1 ELSE 0 END), 0) AS citoyens, " +
+           "COALESCE(SUM(CASE WHEN u.typeUtilisateur.idTypeUtilisateur = 2 THEN 1 ELSE 0 END), 0) AS managers, " +
+           "COALESCE(SUM(CASE WHEN u.isBlocked = true THEN 1 ELSE 0 END), 0) AS bloques " +
+           "FROM Utilisateur u")
+    UtilisateurStats getUtilisateurStats();
+
+    /**
+     * Lignes modifiées après une date (envoi différentiel vers Firebase)
+     */
+    List<Utilisateur> findByLastUpdateAfter(LocalDateTime date);
 }
@@ -0,0 +1,18 @@
+package com.signalement.repository;
+
+import com.signalement.entity.UtilisateurRevoque;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UtilisateurRevoqueRepository extends JpaRepository<UtilisateurRevoque, Integer> {
+
+    /**
+     * Révocations d'utilisateurs encore utiles (jetons émis avant la révocation pas tous expirés)
+     */
+    List<UtilisateurRevoque> findByDateRevocationAfter(LocalDateTime date);
+
+    long deleteByDateRevocationBefore(LocalDateTime date);
+}
@@ -6,7 +6,6 @@ import com.signalement.entity.TentativeConnexion;
 import com.signalement.entity.TypeUtilisateur;
 import com.signalement.entity.Utilisateur;
 import com.signalement.repository.TentativeConnexionRepository;
-import com.signalement.repository.TypeUtilisateurRepository;
 import com.signalement.repository.UtilisateurRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -25,7 +24,7 @@ import com.google.firebase.auth.FirebaseToken;
 public class AuthenticationService {
 
     private final UtilisateurRepository utilisateurRepository;
-    private final TypeUtilisateurRepository typeUtilisateurRepository;
+    private final ReferenceDataService referenceDataService;
     private final TentativeConnexionRepository tentativeConnexionRepository;
     private final SessionService sessionService;
 
@@ -52,7 +51,7 @@ public class AuthenticationService {
             }
 
             // Vérifier si le type d'utilisateur existe
-            TypeUtilisateur typeUtilisateur = typeUtilisateurRepository.findById(request.getIdTypeUtilisateur())
+            TypeUtilisateur typeUtilisateur = referenceDataService.getTypeUtilisateur(request.getIdTypeUtilisateur())
                     .orElseThrow(() -> new IllegalArgumentException("Type d'utilisateur invalide"));
 
             // Créer le nouvel utilisateur
@@ -98,8 +97,8 @@ public class AuthenticationService {
             String typeLibelle = (String) body.getOrDefault("typeUtilisateur", "CITOYEN");
 
             // Trouver le type utilisateur par libelle, ou fallback à l'ID 1
-            TypeUtilisateur typeUtilisateur = typeUtilisateurRepository.findByLibelle(typeLibelle)
-                    .orElseGet(() -> typeUtilisateurRepository.findById(1).orElse(null));
+            TypeUtilisateur typeUtilisateur = referenceDataService.getTypeUtilisateurByLibelle(typeLibelle)
+                    .orElseGet(() -> referenceDataService.getTypeUtilisateur(1).orElse(null));
             if (typeUtilisateur == null) {
                 return new ApiResponse(false, "Type d'utilisateur invalide");
             }
@@ -327,6 +326,7 @@ public class AuthenticationService {
             }
 
             utilisateurRepository.save(utilisateur);
+            sessionService.evictUtilisateur(idUtilisateur);
             return new ApiResponse(true, "Informations mises à jour avec succès");
 
         } catch (Exception e) {
@@ -0,0 +1,24 @@
+package com.signalement.service;
+
+import com.signalement.entity.DomainEvent;
+
+import java.util.List;
+
+/**
+ * Consommateur des événements métier relayés par DomainEventRelay.
+ * Chaque consommateur a sa propre position (curseur_domain_event) et reçoit les événements par lots,
+ * dans l'ordre, au moins une fois.
+ */
+public interface DomainEventConsumer {
+
+    /**
+     * Nom du consommateur, clé de sa position dans curseur_domain_event
+     */
+    String nom();
+
+    /**
+     * Traiter un lot d'événements, hors transaction
+     * @return false pour recevoir à nouveau le lot plus tard (la position n'avance pas)
+     */
+    boolean traiter(List<DomainEvent> evenements);
+}
@@ -0,0 +1,43 @@
+package com.signalement.service;
+
+import com.signalement.entity.DomainEvent;
+import com.signalement.repository.DomainEventRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+
+/**
+ * Écriture des événements métier dans la table domain_event (outbox),
+ * dans la transaction de la modification : l'événement est validé ou annulé avec elle.
+ */
+@Service
+@RequiredArgsConstructor
+public class DomainEventPublisher {
+
+    private final DomainEventRepository domainEventRepository;
+    private final DomainEventRelay domainEventRelay;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publier(String type, Integer idSignalement, Integer idReference, String libelle) {
+        DomainEvent evenement = new DomainEvent();
+        evenement.setType(type);
+        evenement.setIdSignalement(idSignalement);
+        evenement.setIdReference(idReference);
+        evenement.setLibelle(libelle);
+        evenement.setDateEvenement(LocalDateTime.now());
+        domainEventRepository.save(evenement);
+
+        // Relayer dès le commit, sans attendre le prochain passage du poller
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                domainEventRelay.reveiller();
+            }
+        });
+    }
+}
@@ -0,0 +1,221 @@
+package com.signalement.service;
+
+import com.signalement.entity.CurseurDomainEvent;
+import com.signalement.entity.DomainEvent;
+import com.signalement.repository.CurseurDomainEventRepository;
+import com.signalement.repository.DomainEventRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Relais des événements métier (domain_event) vers les consommateurs en mémoire.
+ * - Déclenché après chaque commit qui publie un événement, et périodiquement (domain.events.poll.millis)
+ * - Chaque consommateur est servi par sa propre tâche, par lots de domain.events.batch-size événements,
+ *   à partir de sa position enregistrée dans curseur_domain_event
+ * - Un trou dans les ids peut être une transaction pas encore validée : la lecture s'arrête au trou
+ *   tant qu'il est plus récent que domain.events.gap.timeout.millis. Au-delà, le trou est passé (journalisé)
+ *   et ses ids sont relus à chaque passage pendant domain.events.gap.abandon.millis : un événement
+ *   validé en retard est alors remis au consommateur, hors ordre
+ * - Les événements traités par tous les consommateurs sont purgés périodiquement
+ */
+@Service
+@Slf4j
+public class DomainEventRelay {
+
+    private final DomainEventRepository domainEventRepository;
+    private final CurseurDomainEventRepository curseurRepository;
+    // Résolus à la première utilisation : certains consommateurs dépendent des services qui publient
+    private final ObjectProvider<DomainEventConsumer> consommateursProvider;
+    private final Map<String, AtomicBoolean> enCours = new ConcurrentHashMap<>();
+    // Consommateur -> ids des trous passés encore suivis -> date où le trou a été passé
+    private final Map<String, Map<Long, LocalDateTime>> trous = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private volatile List<DomainEventConsumer> consommateurs;
+
+    private final int tailleLot;
+    private final long delaiTrouMillis;
+    private final long delaiAbandonMillis;
+
+    public DomainEventRelay(DomainEventRepository domainEventRepository,
+                            CurseurDomainEventRepository curseurRepository,
+                            ObjectProvider<DomainEventConsumer> consommateursProvider,
+                            @Value("${domain.events.threads:3}") int threads,
+                            @Value("${domain.events.batch-size:200}") int tailleLot,
+                            @Value("${domain.events.gap.timeout.millis:5000}") long delaiTrouMillis,
+                            @Value("${domain.events.gap.abandon.millis:600000}") long delaiAbandonMillis) {
+        this.domainEventRepository = domainEventRepository;
+        this.curseurRepository = curseurRepository;
+        this.consommateursProvider = consommateursProvider;
+        this.tailleLot = Math.max(1, tailleLot);
+        this.delaiTrouMillis = delaiTrouMillis;
+        this.delaiAbandonMillis = delaiAbandonMillis;
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "domain-event-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Demander le relais des nouveaux événements à chaque consommateur (sans attendre)
+     */
+    public void reveiller() {
+        for (DomainEventConsumer consommateur : consommateurs()) {
+            AtomicBoolean actif = enCours.computeIfAbsent(consommateur.nom(), nom -> new AtomicBoolean());
+            if (actif.compareAndSet(false, true)) {
+                executor.execute(() -> {
+                    try {
+                        relayer(consommateur);
+                    } finally {
+                        actif.set(false);
+                    }
+                });
+            }
+        }
+    }
+
+    // Runs every `domain.events.poll.millis` milliseconds (default 1000 = 1s)
+    @Scheduled(fixedDelayString = "${domain.events.poll.millis:1000}")
+    public void relayerPeriodiquement() {
+        reveiller();
+    }
+
+    // Runs every `domain.events.purge.rate.millis` milliseconds (default 3600000 = 1h)
+    @Scheduled(fixedRateString = "${domain.events.purge.rate.millis:3600000}")
+    public void purger() {
+        long minimum = Long.MAX_VALUE;
+        for (DomainEventConsumer consommateur : consommateurs()) {
+            minimum = Math.min(minimum, position(consommateur));
+            // Garder les ids des trous encore suivis : un événement validé en retard doit pouvoir être relu
+            for (Long id : trous.getOrDefault(consommateur.nom(), Map.of()).keySet()) {
+                minimum = Math.min(minimum, id - 1);
+            }
+        }
+        if (minimum > 0 && minimum != Long.MAX_VALUE) {
+            int supprimes = domainEventRepository.deleteUpTo(minimum);
+            if (supprimes > 0) {
+                log.info("Purge des événements métier: {} supprimé(s)", supprimes);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void arreter() {
+        executor.shutdownNow();
+    }
+
+    private void relayer(DomainEventConsumer consommateur) {
+        try {
+            rattraperTrous(consommateur);
+            long position = position(consommateur);
+            while (true) {
+                List<DomainEvent> lot = sansTrouRecent(consommateur, position, domainEventRepository.findSuivants(
+                        position, PageRequest.of(0, tailleLot)));
+                if (lot.isEmpty() || !consommateur.traiter(lot)) {
+                    return;
+                }
+                position = lot.get(lot.size() - 1).getIdDomainEvent();
+                curseurRepository.avancer(consommateur.nom(), position);
+                log.debug("Consommateur {}: {} événement(s) traité(s), position {}", consommateur.nom(), lot.size(), position);
+            }
+        } catch (RuntimeException e) {
+            // Position non avancée : le lot sera présenté à nouveau au prochain passage
+            log.error("Erreur du consommateur d'événements {}: {}", consommateur.nom(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Garder les événements jusqu'au premier trou récent dans les ids (dès l'id 1 pour une première lecture).
+     * Un trou plus ancien que le délai est passé et ses ids sont suivis (trous).
+     */
+    private List<DomainEvent> sansTrouRecent(DomainEventConsumer consommateur, long position, List<DomainEvent> evenements) {
+        LocalDateTime limite = LocalDateTime.now().minus(Duration.ofMillis(delaiTrouMillis));
+        List<DomainEvent> lot = new ArrayList<>(evenements.size());
+        long attendu = position + 1;
+        for (DomainEvent evenement : evenements) {
+            long id = evenement.getIdDomainEvent();
+            if (id != attendu) {
+                if (evenement.getDateEvenement().isAfter(limite)) {
+                    break;
+                }
+                passerTrou(consommateur, attendu, id - 1);
+            }
+            lot.add(evenement);
+            attendu = id + 1;
+        }
+        return lot;
+    }
+
+    /**
+     * Journaliser un trou passé et suivre ses ids (au plus domain.events.batch-size, les plus récents :
+     * un trou plus large vient d'une purge ou d'un démarrage, pas de transactions en cours)
+     */
+    private void passerTrou(DomainEventConsumer consommateur, long debut, long fin) {
+        Map<Long, LocalDateTime> suivis = trous.computeIfAbsent(consommateur.nom(), nom -> new ConcurrentHashMap<>());
+        LocalDateTime maintenant = LocalDateTime.now();
+        long premierSuivi = Math.max(debut, fin - tailleLot + 1);
+        for (long id = premierSuivi; id <= fin; id++) {
+            suivis.putIfAbsent(id, maintenant);
+        }
+        log.warn("Consommateur {}: trou passé dans les événements (ids {} à {}), ids {} à {} suivis pendant {} ms",
+                consommateur.nom(), debut, fin, premierSuivi, fin, delaiAbandonMillis);
+    }
+
+    /**
+     * Remettre au consommateur les événements des trous passés dont la transaction a été validée depuis,
+     * et abandonner le suivi des trous plus anciens que domain.events.gap.abandon.millis
+     */
+    private void rattraperTrous(DomainEventConsumer consommateur) {
+        Map<Long, LocalDateTime> suivis = trous.get(consommateur.nom());
+        if (suivis == null || suivis.isEmpty()) {
+            return;
+        }
+        LocalDateTime abandon = LocalDateTime.now().minus(Duration.ofMillis(delaiAbandonMillis));
+        int avant = suivis.size();
+        suivis.values().removeIf(date -> date.isBefore(abandon));
+        if (suivis.size() < avant) {
+            log.warn("Consommateur {}: {} id(s) de trou jamais validé(s), suivi abandonné", consommateur.nom(), avant - suivis.size());
+        }
+        if (suivis.isEmpty()) {
+            return;
+        }
+        List<DomainEvent> retardataires = domainEventRepository.findByIds(new ArrayList<>(suivis.keySet()));
+        if (!retardataires.isEmpty() && consommateur.traiter(retardataires)) {
+            retardataires.forEach(evenement -> suivis.remove(evenement.getIdDomainEvent()));
+            log.info("Consommateur {}: {} événement(s) validé(s) en retard traité(s) hors ordre",
+                    consommateur.nom(), retardataires.size());
+        }
+    }
+
+    private long position(DomainEventConsumer consommateur) {
+        return curseurRepository.findById(consommateur.nom())
+                .map(CurseurDomainEvent::getDernierId)
+                .orElse(0L);
+    }
+
+    private List<DomainEventConsumer> consommateurs() {
+        List<DomainEventConsumer> liste = consommateurs;
+        if (liste == null) {
+            liste = consommateursProvider.orderedStream().toList();
+            consommateurs = liste;
+        }
+        return liste;
+    }
+}
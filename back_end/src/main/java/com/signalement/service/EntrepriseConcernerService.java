@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.*;
 import com.signalement.repository.*;
@@ -27,15 +26,35 @@ public class EntrepriseConcernerService {
     private final EntrepriseRepository entrepriseRepository;
     private final StatutAssignationRepository statutAssignationRepository;
     private final FirebaseConversionService firebaseConversionService;
-    private final Firestore firestore;
+    private final FirebaseIdentityResolver identityResolver;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
 
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<EntrepriseConcerner> UPSERT =
+            FirebaseUpsertWriter.<EntrepriseConcerner>table("entreprise_concerner")
+            .id("id_entreprise_concerner", EntrepriseConcerner::getIdEntrepriseConcerner)
+            .colonneFacultative("date_creation", EntrepriseConcerner::getDateCreation, "CURRENT_DATE")
+            .colonneFacultative("montant", EntrepriseConcerner::getMontant)
+            .colonneFacultative("date_debut", EntrepriseConcerner::getDateDebut)
+            .colonneFacultative("date_fin", EntrepriseConcerner::getDateFin)
+            .colonne("id_signalement", ec -> ec.getSignalement().getIdSignalement())
+            .colonne("id_entreprise", ec -> ec.getEntreprise().getIdEntreprise())
+            .colonne("id_statut_assignation", ec -> ec.getStatutAssignation() != null ? ec.getStatutAssignation().getIdStatutAssignation() : null)
+            .lastUpdate("last_update", EntrepriseConcerner::getLastUpdate);
+
+    /**
+     * Appliquer des documents Firebase, lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
+     */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("entreprise_concerner");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        // Références chargées en bloc pour vérifier les clés étrangères ; le Last-Write-Wins est décidé par l'upsert
+        Map<Integer, Signalement> signalements = identityResolver.prefetch(documents, "id_signalement", signalementRepository, Signalement::getIdSignalement);
+        Map<Integer, Entreprise> entreprises = identityResolver.prefetch(documents, "id_entreprise", entrepriseRepository, Entreprise::getIdEntreprise);
+        Map<Integer, StatutAssignation> statuts = identityResolver.prefetch(documents, "id_statut_assignation", statutAssignationRepository, StatutAssignation::getIdStatutAssignation);
 
-        int synced = 0;
+        FirebaseUpsertWriter.Lot<EntrepriseConcerner> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -45,63 +64,65 @@ public class EntrepriseConcernerService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = entrepriseConcernerRepository.findById(id);
+                EntrepriseConcerner ec = new EntrepriseConcerner();
+                ec.setIdEntrepriseConcerner(id);
+                
+                // Champs absents du document : valeurs en base conservées à la mise à jour
+                Long dateCreationMs = firebaseConversionService.getLongValue(doc, "date_creation");
+                ec.setDateCreation(dateCreationMs != null
+                    ? LocalDateTime.ofInstant(Instant.ofEpochMilli(dateCreationMs), ZoneId.systemDefault()).toLocalDate()
+                    : null);
+                
+                Double montant = doc.getDouble("montant");
+                if (montant != null) {
+                    ec.setMontant(java.math.BigDecimal.valueOf(montant));
+                }
+                
+                Long dateDebutMs = firebaseConversionService.getLongValue(doc, "date_debut");
+                if (dateDebutMs != null) {
+                    ec.setDateDebut(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(dateDebutMs), ZoneId.systemDefault()).toLocalDate());
+                }
+                
+                Long dateFinMs = firebaseConversionService.getLongValue(doc, "date_fin");
+                if (dateFinMs != null) {
+                    ec.setDateFin(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(dateFinMs), ZoneId.systemDefault()).toLocalDate());
+                }
+                
+                Integer signalementId = firebaseConversionService.getLongAsInteger(doc, "id_signalement");
+                Signalement signalement = signalements.get(signalementId);
+                
+                Integer entrepriseId = firebaseConversionService.getLongAsInteger(doc, "id_entreprise");
+                Entreprise entreprise = entreprises.get(entrepriseId);
+                
+                Long statutId = firebaseConversionService.getLongValue(doc, "id_statut_assignation");
+                StatutAssignation statut = null;
+                if (statutId != null) {
+                    statut = statuts.get(statutId.intValue());
+                }
                 
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    EntrepriseConcerner ec = existing.orElse(new EntrepriseConcerner());
-                    ec.setIdEntrepriseConcerner(id);
-                    
-                    Long dateCreationMs = firebaseConversionService.getLongValue(doc, "date_creation");
-                    if (dateCreationMs != null) {
-                        ec.setDateCreation(LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(dateCreationMs), ZoneId.systemDefault()).toLocalDate());
-                    }
-                    
-                    Double montant = doc.getDouble("montant");
-                    if (montant != null) {
-                        ec.setMontant(java.math.BigDecimal.valueOf(montant));
-                    }
-                    
-                    Long dateDebutMs = firebaseConversionService.getLongValue(doc, "date_debut");
-                    if (dateDebutMs != null) {
-                        ec.setDateDebut(LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(dateDebutMs), ZoneId.systemDefault()).toLocalDate());
-                    }
-                    
-                    Long dateFinMs = firebaseConversionService.getLongValue(doc, "date_fin");
-                    if (dateFinMs != null) {
-                        ec.setDateFin(LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(dateFinMs), ZoneId.systemDefault()).toLocalDate());
-                    }
-                    
-                    Integer signalementId = firebaseConversionService.getLongAsInteger(doc, "id_signalement");
-                    Signalement signalement = signalementRepository.findById(signalementId).orElse(null);
-                    
-                    Integer entrepriseId = firebaseConversionService.getLongAsInteger(doc, "id_entreprise");
-                    Entreprise entreprise = entrepriseRepository.findById(entrepriseId).orElse(null);
-                    
-                    Long statutId = firebaseConversionService.getLongValue(doc, "id_statut_assignation");
-                    StatutAssignation statut = null;
-                    if (statutId != null) {
-                        statut = statutAssignationRepository.findById(statutId.intValue()).orElse(null);
-                    }
-                    
-                    if (signalement != null && entreprise != null) {
-                        ec.setSignalement(signalement);
-                        ec.setEntreprise(entreprise);
-                        ec.setStatutAssignation(statut);
-                        entrepriseConcernerRepository.save(ec);
-                        synced++;
-                    }
+                if (signalement != null && entreprise != null) {
+                    ec.setSignalement(signalement);
+                    ec.setEntreprise(entreprise);
+                    ec.setStatutAssignation(statut);
+                    ec.setLastUpdate(firebaseLastUpdate);
+                    lot.ajouter(ec);
+                } else {
+                    lot.ignorer(doc);
                 }
             }
         }
-        return synced;
+        return lot.resultat();
     }
 
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<EntrepriseConcerner> entreprisesConcerner = entrepriseConcernerRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<EntrepriseConcerner> entreprisesConcerner = lastPushDate == null
+            ? entrepriseConcernerRepository.findAll()
+            : entrepriseConcernerRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("entreprise_concerner");
         for (EntrepriseConcerner ec : entreprisesConcerner) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", ec.getIdEntrepriseConcerner());
@@ -130,11 +151,10 @@ public class EntrepriseConcernerService {
                 data.put("id_statut_assignation", ec.getStatutAssignation().getIdStatutAssignation());
             }
             
-            firestore.collection("entreprise_concerner")
-                .document(String.valueOf(ec.getIdEntrepriseConcerner()))
-                .set(data).get();
+            lot.set(String.valueOf(ec.getIdEntrepriseConcerner()), data);
         }
-        log.info("{} entreprises concernées recréées", entreprisesConcerner.size());
+        lot.terminer();
+        log.info("{} entreprises concernées envoyées vers Firebase", entreprisesConcerner.size());
         return entreprisesConcerner.size();
     }
 }
@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.Entreprise;
 import com.signalement.repository.EntrepriseRepository;
@@ -25,7 +24,8 @@ public class EntrepriseService {
 
     private final EntrepriseRepository entrepriseRepository;
     private final FirebaseConversionService firebaseConversionService;
-    private final Firestore firestore;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
 
     @Transactional(readOnly = true)
     public List<Entreprise> getAllEntreprises() {
@@ -47,15 +47,23 @@ public class EntrepriseService {
         entrepriseRepository.deleteById(id);
     }
 
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<Entreprise> UPSERT =
+            FirebaseUpsertWriter.<Entreprise>table("entreprise")
+            .id("id_entreprise", Entreprise::getIdEntreprise)
+            .colonne("nom_du_compagnie", Entreprise::getNomDuCompagnie)
+            .colonne("email", Entreprise::getEmail)
+            .lastUpdate("last_update", Entreprise::getLastUpdate);
+
     // ======== FIREBASE SYNC METHODS (Tâches 31 & 32) ========
     
+    /**
+     * Appliquer des documents Firebase, lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
+     */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("entreprises");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-        int synced = 0;
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        FirebaseUpsertWriter.Lot<Entreprise> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -65,24 +73,24 @@ public class EntrepriseService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = entrepriseRepository.findById(id);
-                
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    Entreprise entreprise = existing.orElse(new Entreprise());
-                    entreprise.setIdEntreprise(id);
-                    entreprise.setNomDuCompagnie(doc.getString("nom"));
-                    entreprise.setEmail(doc.getString("email"));
-                    entrepriseRepository.save(entreprise);
-                    synced++;
-                }
+                Entreprise entreprise = new Entreprise();
+                entreprise.setIdEntreprise(id);
+                entreprise.setNomDuCompagnie(doc.getString("nom"));
+                entreprise.setEmail(doc.getString("email"));
+                entreprise.setLastUpdate(firebaseLastUpdate);
+                lot.ajouter(entreprise);
             }
         }
-        return synced;
+        return lot.resultat();
     }
 
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<Entreprise> entreprises = entrepriseRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<Entreprise> entreprises = lastPushDate == null
+            ? entrepriseRepository.findAll()
+            : entrepriseRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("entreprises");
         for (Entreprise entreprise : entreprises) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", entreprise.getIdEntreprise());
@@ -90,11 +98,10 @@ public class EntrepriseService {
             data.put("email", entreprise.getEmail());
             data.put("last_update", entreprise.getLastUpdate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
             
-            firestore.collection("entreprises")
-                .document(String.valueOf(entreprise.getIdEntreprise()))
-                .set(data).get();
+            lot.set(String.valueOf(entreprise.getIdEntreprise()), data);
         }
-        log.info("{} entreprises recréées", entreprises.size());
+        lot.terminer();
+        log.info("{} entreprises envoyées vers Firebase", entreprises.size());
         return entreprises.size();
     }
 }
@@ -0,0 +1,82 @@
+package com.signalement.service;
+
+import com.signalement.entity.EtatCourantSignalement;
+import com.signalement.entity.EtatSignalement;
+import com.signalement.repository.EtatCourantSignalementRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Gestion de la projection "état courant" des signalements.
+ * Évite de relire tout l'historique pour connaître l'état actuel d'un signalement.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EtatCourantSignalementService {
+
+    private final EtatCourantSignalementRepository etatCourantRepository;
+
+    /**
+     * Enregistrer un changement d'état dans la projection.
+     * Doit être appelé dans la même transaction que l'insertion dans l'historique.
+     * Un changement antidaté (plus ancien que l'état courant) ne remplace pas l'état courant :
+     * la comparaison est faite par l'upsert, sans lecture préalable (pas de conflit entre deux premières insertions).
+     */
+    @Transactional
+    public void enregistrerChangement(Integer signalementId, EtatSignalement etat, LocalDateTime dateChangement) {
+        etatCourantRepository.enregistrer(signalementId, etat.getIdEtatSignalement(), dateChangement);
+    }
+
+    /**
+     * Recalculer la projection des signalements dont l'historique a été importé en bloc (une requête)
+     */
+    @Transactional
+    public void recalculer(Collection<Integer> signalementIds) {
+        if (signalementIds.isEmpty()) {
+            return;
+        }
+        etatCourantRepository.upsertFromHistorique(signalementIds);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<EtatSignalement> getEtatCourant(Integer signalementId) {
+        return etatCourantRepository.findWithEtatByIdSignalement(signalementId)
+                .map(EtatCourantSignalement::getEtatSignalement);
+    }
+
+    /**
+     * Récupérer l'état courant de plusieurs signalements en une seule requête
+     * @return Map id_signalement -> état courant (les signalements sans historique sont absents)
+     */
+    @Transactional(readOnly = true)
+    public Map<Integer, EtatSignalement> getEtatsCourants(Collection<Integer> signalementIds) {
+        if (signalementIds.isEmpty()) {
+            return Map.of();
+        }
+        return etatCourantRepository.findAllWithEtatByIdSignalementIn(signalementIds).stream()
+                .collect(Collectors.toMap(EtatCourantSignalement::getIdSignalement,
+                        EtatCourantSignalement::getEtatSignalement,
+                        (a, b) -> a));
+    }
+
+    // Runs every `etat.courant.rebuild.rate.millis` milliseconds (default 21600000 = 6h), and once at startup
+    @Scheduled(fixedRateString = "${etat.courant.rebuild.rate.millis:21600000}")
+    @Transactional
+    public void reconstruireDepuisHistorique() {
+        int upserted = etatCourantRepository.upsertFromHistorique();
+        int deleted = etatCourantRepository.deleteOrphans();
+        if (upserted > 0 || deleted > 0) {
+            log.info("Projection état courant réparée: {} mise(s) à jour, {} suppression(s)", upserted, deleted);
+        }
+    }
+}
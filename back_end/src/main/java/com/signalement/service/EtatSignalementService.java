@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.EtatSignalement;
 import com.signalement.repository.EtatSignalementRepository;
@@ -24,32 +23,39 @@ import java.util.concurrent.ExecutionException;
 public class EtatSignalementService {
 
     private final EtatSignalementRepository etatSignalementRepository;
-    private final Firestore firestore;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
+    private final ReferenceDataService referenceDataService;
 
-    @Transactional(readOnly = true)
+    // Lectures servies par le registre des tables de référence (aucune requête)
     public List<EtatSignalement> getAllEtats() {
-        return etatSignalementRepository.findAll();
+        return referenceDataService.getEtats();
     }
 
-    @Transactional(readOnly = true)
     public Optional<EtatSignalement> getEtatById(Integer id) {
-        return etatSignalementRepository.findById(id);
+        return referenceDataService.getEtat(id);
     }
 
-    @Transactional(readOnly = true)
     public Optional<EtatSignalement> getEtatByLibelle(String libelle) {
-        return etatSignalementRepository.findByLibelle(libelle);
+        return referenceDataService.getEtatByLibelle(libelle);
     }
 
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<EtatSignalement> UPSERT =
+            FirebaseUpsertWriter.<EtatSignalement>table("etat_signalement")
+            .id("id_etat_signalement", EtatSignalement::getIdEtatSignalement)
+            .colonne("libelle", EtatSignalement::getLibelle)
+            .lastUpdate("last_update", EtatSignalement::getLastUpdate);
+
     // ======== FIREBASE SYNC METHODS (Tâches 31 & 32) ========
     
+    /**
+     * Appliquer des documents Firebase, lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
+     */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("etat_signalement");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-        int synced = 0;
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        FirebaseUpsertWriter.Lot<EtatSignalement> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -59,34 +65,33 @@ public class EtatSignalementService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = doc.getLong("id").intValue();
-                var existing = etatSignalementRepository.findById(id);
-                
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    EtatSignalement etat = existing.orElse(new EtatSignalement());
-                    etat.setIdEtatSignalement(id);
-                    etat.setLibelle(doc.getString("libelle"));
-                    etatSignalementRepository.save(etat);
-                    synced++;
-                }
+                EtatSignalement etat = new EtatSignalement();
+                etat.setIdEtatSignalement(id);
+                etat.setLibelle(doc.getString("libelle"));
+                etat.setLastUpdate(firebaseLastUpdate);
+                lot.ajouter(etat);
             }
         }
-        return synced;
+        return lot.resultat();
     }
 
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<EtatSignalement> etats = etatSignalementRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<EtatSignalement> etats = lastPushDate == null
+            ? etatSignalementRepository.findAll()
+            : etatSignalementRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("etat_signalement");
         for (EtatSignalement etat : etats) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", etat.getIdEtatSignalement());
             data.put("libelle", etat.getLibelle());
             data.put("last_update", etat.getLastUpdate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
             
-            firestore.collection("etat_signalement")
-                .document(String.valueOf(etat.getIdEtatSignalement()))
-                .set(data).get();
+            lot.set(String.valueOf(etat.getIdEtatSignalement()), data);
         }
-        log.info("{} états de signalement recréés", etats.size());
+        lot.terminer();
+        log.info("{} états de signalement envoyés vers Firebase", etats.size());
         return etats.size();
     }
 }
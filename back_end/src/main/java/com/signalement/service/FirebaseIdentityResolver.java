@@ -0,0 +1,74 @@
+package com.signalement.service;
+
+import com.google.cloud.firestore.DocumentSnapshot;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Résolution des identifiants pour la synchronisation Firebase -> PostgreSQL.
+ * Avant la boucle d'import, les lignes référencées par les documents (ligne existante, clés étrangères)
+ * sont chargées en quelques requêtes findAllById (par paquets), puis servies depuis une map
+ * au lieu d'un findById par document et par référence.
+ * Les maps sont propres à un import : elles ne sont jamais partagées entre deux synchronisations.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FirebaseIdentityResolver {
+
+    /**
+     * Nombre maximal d'identifiants par requête IN
+     */
+    private static final int TAILLE_PAQUET = 1000;
+
+    private final FirebaseConversionService firebaseConversionService;
+
+    /**
+     * Charger les entités dont l'id est référencé par le champ `champ` des documents
+     * @return id -> entité, pour les ids trouvés en base
+     */
+    public <T> Map<Integer, T> prefetch(List<? extends DocumentSnapshot> documents, String champ,
+                                        JpaRepository<T, Integer> repository, Function<T, Integer> idGetter) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (DocumentSnapshot doc : documents) {
+            Integer id = firebaseConversionService.getLongAsInteger(doc, champ);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+
+        Map<Integer, T> entites = new HashMap<>();
+        List<Integer> paquet = new ArrayList<>(Math.min(ids.size(), TAILLE_PAQUET));
+        for (Integer id : ids) {
+            paquet.add(id);
+            if (paquet.size() == TAILLE_PAQUET) {
+                charger(repository, paquet, idGetter, entites);
+            }
+        }
+        charger(repository, paquet, idGetter, entites);
+
+        log.debug("Champ {}: {} entité(s) trouvée(s) pour {} id(s) référencé(s)", champ, entites.size(), ids.size());
+        return entites;
+    }
+
+    private <T> void charger(JpaRepository<T, Integer> repository, List<Integer> paquet,
+                             Function<T, Integer> idGetter, Map<Integer, T> entites) {
+        if (paquet.isEmpty()) {
+            return;
+        }
+        for (T entite : repository.findAllById(paquet)) {
+            entites.put(idGetter.apply(entite), entite);
+        }
+        paquet.clear();
+    }
+}
@@ -0,0 +1,44 @@
+package com.signalement.service;
+
+import com.signalement.entity.DomainEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Envoi PostgreSQL -> Firebase déclenché par les événements métier (optionnel,
+ * domain.events.firebase-push.enabled=true). L'envoi est différentiel : un job couvre
+ * tous les événements du lot. Si une synchronisation est déjà en cours, le lot est présenté à nouveau plus tard.
+ */
+@Service
+@Slf4j
+public class FirebasePushEventConsumer implements DomainEventConsumer {
+
+    private final SyncJobService syncJobService;
+    private final boolean enabled;
+
+    public FirebasePushEventConsumer(SyncJobService syncJobService,
+                                     @Value("${domain.events.firebase-push.enabled:false}") boolean enabled) {
+        this.syncJobService = syncJobService;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public String nom() {
+        return "firebase_push";
+    }
+
+    @Override
+    public boolean traiter(List<DomainEvent> evenements) {
+        if (!enabled) {
+            return true;
+        }
+        SyncJobService.Soumission soumission = syncJobService.soumettre(SyncJobService.TypeSync.TO_FIREBASE);
+        if (soumission.nouveau()) {
+            log.info("Envoi vers Firebase lancé (job {}) pour {} événement(s)", soumission.job().getId(), evenements.size());
+        }
+        return soumission.nouveau();
+    }
+}
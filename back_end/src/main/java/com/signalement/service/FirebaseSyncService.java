@@ -1,27 +1,34 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.*;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
 import com.signalement.dto.SyncResultDTO;
+import com.signalement.entity.SuppressionFirebase;
 import com.signalement.entity.SynchronisationFirebase;
+import com.signalement.repository.SuppressionFirebaseRepository;
 import com.signalement.repository.SynchronisationFirebaseRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class FirebaseSyncService {
 
-    private final Firestore firestore;
+    private final FirestoreBulkWriter firestoreBulkWriter;
+    private final SuppressionFirebaseRepository suppressionFirebaseRepository;
     private final SynchronisationFirebaseRepository syncRepository;
+    private final SyncDependencyScheduler syncDependencyScheduler;
+    private final FirestoreIncrementalReader firestoreReader;
     
     // Injection des services pour chaque entité
     private final UtilisateurService utilisateurService;
@@ -38,16 +45,32 @@ public class FirebaseSyncService {
     private final TentativeConnexionService tentativeConnexionService;
     private final PhotoSignalementService photoSignalementService;
     private final UtilisateurFcmTokensService utilisateurFcmTokensService;
+    private final StatisticsSnapshotService statisticsSnapshotService;
+    private final TuileSignalementService tuileSignalementService;
+    private final ReferenceDataService referenceDataService;
+
+    @Value("${firebase.push.overlap.seconds:60}")
+    private long pushOverlapSeconds;
+
+    @Value("${firebase.sync.commit-size:500}")
+    private int commitSize;
+
+    @FunctionalInterface
+    private interface Importeur {
+        FirebaseUpsertWriter.Resultat importer(List<QueryDocumentSnapshot> documents, LocalDateTime depuis);
+    }
 
     /**
      * TÂCHE 31: Synchroniser depuis Firebase vers PostgreSQL
      * TOUTES les tables avec gestion de conflits (Last-Write-Wins)
+     * Les tables sont importées en parallèle selon leurs dépendances FK (une table après ses tables référencées).
+     * Pas de transaction englobante : les documents de chaque table sont validés par lots
+     * (firebase.sync.commit-size), un échec n'annule pas les lots déjà validés.
      */
-    @Transactional
-    public SyncResultDTO syncFromFirebase() {
+    public SyncResultDTO syncFromFirebase(SyncProgression progression) {
         LocalDateTime syncStartTime = LocalDateTime.now();
         Map<String, Integer> stats = new HashMap<>();
-        int totalSynced = 0;
+        Map<String, Long> durations = new HashMap<>();
 
         try {
             // 1. Récupérer la date de dernière synchronisation
@@ -56,62 +79,24 @@ public class FirebaseSyncService {
 
             log.info("Démarrage synchronisation Firebase -> PostgreSQL depuis {}", lastSyncDate);
 
-            // 2. Synchroniser TOUTES les tables via les services
-            int utilisateursSynced = utilisateurService.syncFromFirebase(lastSyncDate);
-            stats.put("utilisateurs", utilisateursSynced);
-            totalSynced += utilisateursSynced;
-
-            int typesUtilisateurSynced = typeUtilisateurService.syncFromFirebase(lastSyncDate);
-            stats.put("type_utilisateur", typesUtilisateurSynced);
-            totalSynced += typesUtilisateurSynced;
-
-            int etatsSynced = etatSignalementService.syncFromFirebase(lastSyncDate);
-            stats.put("etat_signalement", etatsSynced);
-            totalSynced += etatsSynced;
-
-            int typesTravauxSynced = typeTravailService.syncFromFirebase(lastSyncDate);
-            stats.put("type_travail", typesTravauxSynced);
-            totalSynced += typesTravauxSynced;
-
-            int entreprisesSynced = entrepriseService.syncFromFirebase(lastSyncDate);
-            stats.put("entreprise", entreprisesSynced);
-            totalSynced += entreprisesSynced;
-
-            int statutsSynced = statutAssignationService.syncFromFirebase(lastSyncDate);
-            stats.put("statut_assignation", statutsSynced);
-            totalSynced += statutsSynced;
-
-            int signalementsSynced = signalementService.syncFromFirebase(lastSyncDate);
-            stats.put("signalements", signalementsSynced);
-            totalSynced += signalementsSynced;
-
-            int entrepriseConcernerSynced = entrepriseConcernerService.syncFromFirebase(lastSyncDate);
-            stats.put("entreprise_concerner", entrepriseConcernerSynced);
-            totalSynced += entrepriseConcernerSynced;
-
-            int historiqueEtatSynced = historiqueEtatService.syncFromFirebase(lastSyncDate);
-            stats.put("historique_etat_signalement", historiqueEtatSynced);
-            totalSynced += historiqueEtatSynced;
-
-            int historiqueStatutSynced = historiqueStatutService.syncFromFirebase(lastSyncDate);
-            stats.put("historique_statut_assignation", historiqueStatutSynced);
-            totalSynced += historiqueStatutSynced;
-
-            int sessionsSynced = sessionService.syncFromFirebase(lastSyncDate);
-            stats.put("session", sessionsSynced);
-            totalSynced += sessionsSynced;
-
-            int tentativesConnexionSynced = tentativeConnexionService.syncFromFirebase(lastSyncDate);
-            stats.put("tentative_connexion", tentativesConnexionSynced);
-            totalSynced += tentativesConnexionSynced;
-
-            int photoSignalementSynced = photoSignalementService.syncFromFirebase(lastSyncDate);
-            stats.put("photo_signalement", photoSignalementSynced);
-            totalSynced += photoSignalementSynced;
-
-            int utilisateurFcmTokensSynced = utilisateurFcmTokensService.syncFromFirebase(lastSyncDate);
-            stats.put("utilisateur_fcm_tokens", utilisateurFcmTokensSynced);
-            totalSynced += utilisateurFcmTokensSynced;
+            // 2. Synchroniser TOUTES les tables via les services, en respectant les dépendances FK
+            Map<String, SyncDependencyScheduler.ResultatEtape> resultats = syncDependencyScheduler.executer(List.of(
+                etape("type_utilisateur", Set.of(), () -> importer("type_utilisateur", "type_utilisateur", typeUtilisateurService::importerDocuments, lastSyncDate, progression)),
+                etape("etat_signalement", Set.of(), () -> importer("etat_signalement", "etat_signalement", etatSignalementService::importerDocuments, lastSyncDate, progression)),
+                etape("type_travail", Set.of(), () -> importer("type_travail", "type_travail", typeTravailService::importerDocuments, lastSyncDate, progression)),
+                etape("entreprise", Set.of(), () -> importer("entreprise", "entreprises", entrepriseService::importerDocuments, lastSyncDate, progression)),
+                etape("statut_assignation", Set.of(), () -> importer("statut_assignation", "statut_assignation", statutAssignationService::importerDocuments, lastSyncDate, progression)),
+                etape("utilisateurs", Set.of("type_utilisateur"), () -> importer("utilisateurs", "utilisateurs", utilisateurService::importerDocuments, lastSyncDate, progression)),
+                etape("signalements", Set.of("utilisateurs", "type_travail"), () -> importer("signalements", "signalements", signalementService::importerDocuments, lastSyncDate, progression)),
+                etape("entreprise_concerner", Set.of("signalements", "entreprise", "statut_assignation"), () -> importer("entreprise_concerner", "entreprise_concerner", entrepriseConcernerService::importerDocuments, lastSyncDate, progression)),
+                etape("historique_etat_signalement", Set.of("signalements", "etat_signalement"), () -> importer("historique_etat_signalement", "historique_etat_signalement", historiqueEtatService::importerDocuments, lastSyncDate, progression)),
+                etape("historique_statut_assignation", Set.of("entreprise_concerner", "statut_assignation"), () -> importer("historique_statut_assignation", "historique_statut_assignation", historiqueStatutService::importerDocuments, lastSyncDate, progression)),
+                etape("session", Set.of("utilisateurs"), () -> importer("session", "sessions", sessionService::importerDocuments, lastSyncDate, progression)),
+                etape("tentative_connexion", Set.of("utilisateurs"), () -> importer("tentative_connexion", "tentative_connexion", tentativeConnexionService::importerDocuments, lastSyncDate, progression)),
+                etape("photo_signalement", Set.of("signalements"), () -> importer("photo_signalement", "photo_signalement", photoSignalementService::importerDocuments, lastSyncDate, progression)),
+                etape("utilisateur_fcm_tokens", Set.of("utilisateurs"), () -> importer("utilisateur_fcm_tokens", "utilisateur_fcm_tokens", utilisateurFcmTokensService::importerDocuments, lastSyncDate, progression))
+            ), resultat -> progression.tableTerminee(resultat.table()));
+            int totalSynced = collecter(resultats, stats, durations, null);
 
             // 3. Enregistrer la synchronisation réussie
             SynchronisationFirebase sync = new SynchronisationFirebase();
@@ -119,6 +104,9 @@ public class FirebaseSyncService {
             sync.setSuccess(true);
             sync.setRemarque(String.format("Sync Firebase->PostgreSQL: %d enregistrements dans %d tables", totalSynced, stats.size()));
             syncRepository.save(sync);
+            statisticsSnapshotService.invalider();
+            tuileSignalementService.invalider();
+            referenceDataService.rafraichir();
 
             log.info("Synchronisation terminée avec succès: {} enregistrements", totalSynced);
 
@@ -127,7 +115,9 @@ public class FirebaseSyncService {
                 syncStartTime,
                 "Synchronisation réussie depuis Firebase",
                 stats,
-                null
+                null,
+                null,
+                durations
             );
 
         } catch (Exception e) {
@@ -139,105 +129,85 @@ public class FirebaseSyncService {
             sync.setSuccess(false);
             sync.setRemarque("Erreur Firebase->PostgreSQL: " + e.getMessage());
             syncRepository.save(sync);
+            // Les lots déjà validés restent en base (tables de référence comprises)
+            referenceDataService.rafraichir();
 
             return new SyncResultDTO(
                 false,
                 syncStartTime,
                 "Erreur lors de la synchronisation",
                 stats,
-                e.getMessage()
+                e.getMessage(),
+                null,
+                durations
             );
         }
     }
 
     /**
      * TÂCHE 32: Synchroniser depuis PostgreSQL vers Firebase
-     * FULL SYNC: Supprime tout Firebase et recrée avec PostgreSQL
+     * Envoi différentiel : seules les lignes modifiées depuis le dernier envoi réussi sont écrites,
+     * les suppressions sont propagées via les pierres tombales (table suppression_firebase).
+     * Sans envoi réussi précédent, tout est envoyé. Les collections ne sont jamais vidées.
+     * Les collections sont envoyées en parallèle, une collection après celles qu'elle référence.
      */
-    @Transactional
-    public SyncResultDTO syncToFirebase() {
+    public SyncResultDTO syncToFirebase(SyncProgression progression) {
         LocalDateTime syncStartTime = LocalDateTime.now();
         Map<String, Integer> stats = new HashMap<>();
-        int totalSynced = 0;
+        Map<String, Long> durations = new HashMap<>();
+        Map<String, Double> throughput = new HashMap<>();
 
         try {
-            log.info("Démarrage FULL SYNC PostgreSQL -> Firebase");
-
-            // 1. SUPPRIMER toutes les collections Firebase
-            deleteAllFirebaseCollections();
-
-            // 2. RECRÉER toutes les collections avec les données PostgreSQL via les services
-            int typesUtilisateurCount = typeUtilisateurService.syncAllToFirebase();
-            stats.put("type_utilisateur", typesUtilisateurCount);
-            totalSynced += typesUtilisateurCount;
-
-            int utilisateursCount = utilisateurService.syncAllToFirebase();
-            stats.put("utilisateurs", utilisateursCount);
-            totalSynced += utilisateursCount;
-
-            int etatsCount = etatSignalementService.syncAllToFirebase();
-            stats.put("etat_signalement", etatsCount);
-            totalSynced += etatsCount;
-
-            int typesTravauxCount = typeTravailService.syncAllToFirebase();
-            stats.put("type_travail", typesTravauxCount);
-            totalSynced += typesTravauxCount;
-
-            int entreprisesCount = entrepriseService.syncAllToFirebase();
-            stats.put("entreprise", entreprisesCount);
-            totalSynced += entreprisesCount;
-
-            int statutsCount = statutAssignationService.syncAllToFirebase();
-            stats.put("statut_assignation", statutsCount);
-            totalSynced += statutsCount;
-
-            int signalementsCount = signalementService.syncAllToFirebase();
-            stats.put("signalements", signalementsCount);
-            totalSynced += signalementsCount;
-
-            int entrepriseConcernerCount = entrepriseConcernerService.syncAllToFirebase();
-            stats.put("entreprise_concerner", entrepriseConcernerCount);
-            totalSynced += entrepriseConcernerCount;
-
-            int historiqueEtatCount = historiqueEtatService.syncAllToFirebase();
-            stats.put("historique_etat_signalement", historiqueEtatCount);
-            totalSynced += historiqueEtatCount;
-
-            int historiqueStatutCount = historiqueStatutService.syncAllToFirebase();
-            stats.put("historique_statut_assignation", historiqueStatutCount);
-            totalSynced += historiqueStatutCount;
-
-            int sessionsCount = sessionService.syncAllToFirebase();
-            stats.put("session", sessionsCount);
-            totalSynced += sessionsCount;
-
-            int tentativesConnexionCount = tentativeConnexionService.syncAllToFirebase();
-            stats.put("tentative_connexion", tentativesConnexionCount);
-            totalSynced += tentativesConnexionCount;
-
-            int photoSignalementCount = photoSignalementService.syncAllToFirebase();
-            stats.put("photo_signalement", photoSignalementCount);
-            totalSynced += photoSignalementCount;
-
-            int utilisateurFcmTokensCount = utilisateurFcmTokensService.syncAllToFirebase();
-            stats.put("utilisateur_fcm_tokens", utilisateurFcmTokensCount);
-            totalSynced += utilisateurFcmTokensCount;
-
-            // 3. Enregistrer la synchronisation réussie
+            // 1. Filigrane : dernier envoi réussi, avec une marge pour les transactions validées pendant cet envoi
+            LocalDateTime lastPushDate = syncRepository.findLastSuccessfulSyncToFirebaseDate()
+                .map(date -> date.minusSeconds(pushOverlapSeconds))
+                .orElse(null);
+            log.info("Démarrage synchronisation PostgreSQL -> Firebase {}",
+                lastPushDate == null ? "(envoi complet)" : "depuis " + lastPushDate);
+
+            // 2. Propager les suppressions
+            int suppressions = appliquerSuppressions();
+
+            // 3. Envoyer les lignes modifiées via les services (écritures groupées), en respectant les dépendances FK
+            Map<String, SyncDependencyScheduler.ResultatEtape> resultats = syncDependencyScheduler.executer(List.of(
+                etape("type_utilisateur", Set.of(), () -> typeUtilisateurService.syncToFirebase(lastPushDate)),
+                etape("etat_signalement", Set.of(), () -> etatSignalementService.syncToFirebase(lastPushDate)),
+                etape("type_travail", Set.of(), () -> typeTravailService.syncToFirebase(lastPushDate)),
+                etape("entreprise", Set.of(), () -> entrepriseService.syncToFirebase(lastPushDate)),
+                etape("statut_assignation", Set.of(), () -> statutAssignationService.syncToFirebase(lastPushDate)),
+                etape("utilisateurs", Set.of("type_utilisateur"), () -> utilisateurService.syncToFirebase(lastPushDate)),
+                etape("signalements", Set.of("utilisateurs", "type_travail"), () -> signalementService.syncToFirebase(lastPushDate)),
+                etape("entreprise_concerner", Set.of("signalements", "entreprise", "statut_assignation"), () -> entrepriseConcernerService.syncToFirebase(lastPushDate)),
+                etape("historique_etat_signalement", Set.of("signalements", "etat_signalement"), () -> historiqueEtatService.syncToFirebase(lastPushDate)),
+                etape("historique_statut_assignation", Set.of("entreprise_concerner", "statut_assignation"), () -> historiqueStatutService.syncToFirebase(lastPushDate)),
+                etape("session", Set.of("utilisateurs"), () -> sessionService.syncToFirebase(lastPushDate)),
+                etape("tentative_connexion", Set.of("utilisateurs"), () -> tentativeConnexionService.syncToFirebase(lastPushDate)),
+                etape("photo_signalement", Set.of("signalements"), () -> photoSignalementService.syncToFirebase(lastPushDate)),
+                etape("utilisateur_fcm_tokens", Set.of("utilisateurs"), () -> utilisateurFcmTokensService.syncToFirebase(lastPushDate))
+            ), resultat -> {
+                progression.lignesTraitees(resultat.table(), resultat.count());
+                progression.tableTerminee(resultat.table());
+            });
+            int totalSynced = collecter(resultats, stats, durations, throughput);
+
+            // 4. Enregistrer la synchronisation réussie (nouveau filigrane)
             SynchronisationFirebase sync = new SynchronisationFirebase();
             sync.setDateSynchronisation(syncStartTime);
             sync.setSuccess(true);
-            sync.setRemarque(String.format("FULL SYNC PostgreSQL->Firebase: %d documents dans %d collections", totalSynced, stats.size()));
+            sync.setRemarque(String.format("Sync PostgreSQL->Firebase: %d documents et %d suppressions dans %d collections",
+                totalSynced, suppressions, stats.size()));
             syncRepository.save(sync);
 
-            log.info("FULL SYNC terminé: {} documents dans {} collections", totalSynced, stats.size());
+            log.info("Synchronisation vers Firebase terminée: {} documents, {} suppressions", totalSynced, suppressions);
 
             return new SyncResultDTO(
                 true,
                 syncStartTime,
-                "FULL SYNC réussi vers Firebase",
+                "Synchronisation réussie vers Firebase",
                 stats,
-                null
+                null,
+                throughput,
+                durations
             );
 
         } catch (Exception e) {
@@ -253,47 +223,92 @@ public class FirebaseSyncService {
             return new SyncResultDTO(
                 false,
                 syncStartTime,
-                "Erreur lors du FULL SYNC",
+                "Erreur lors de la synchronisation vers Firebase",
                 stats,
-                e.getMessage()
+                e.getMessage(),
+                throughput,
+                durations
             );
         }
     }
 
     // ============================================================
-    // MÉTHODES UTILITAIRES - Suppression Firebase
+    // MÉTHODES UTILITAIRES - Suppressions Firebase
     // ============================================================
 
     /**
-     * Supprimer toutes les collections Firebase
+     * Supprimer dans Firebase les documents des lignes supprimées en base (pierres tombales),
+     * puis retirer les pierres tombales appliquées
+     * @return nombre de suppressions envoyées
      */
-    private void deleteAllFirebaseCollections() throws ExecutionException, InterruptedException {
-        String[] collections = {
-            "signalements", "utilisateurs", "etat_signalement", 
-            "type_travail", "type_utilisateur", "entreprise", "statut_assignation",
-            "entreprise_concerner", "historique_etat_signalement", "historique_statut_assignation",
-            "session", "tentative_connexion", "photo_signalement", "utilisateur_fcm_tokens"
-        };
-
-        for (String collectionName : collections) {
-            deleteCollection(collectionName);
+    private int appliquerSuppressions() throws ExecutionException, InterruptedException {
+        List<SuppressionFirebase> suppressions = suppressionFirebaseRepository.findAllByOrderByIdSuppressionFirebaseAsc();
+        if (suppressions.isEmpty()) {
+            return 0;
         }
-        
-        log.info("Toutes les collections Firebase ont été supprimées");
+
+        Map<String, FirestoreBulkWriter.Lot> lots = new HashMap<>();
+        for (SuppressionFirebase suppression : suppressions) {
+            lots.computeIfAbsent(suppression.getCollection(), firestoreBulkWriter::ouvrir)
+                .delete(suppression.getDocumentId());
+        }
+        for (FirestoreBulkWriter.Lot lot : lots.values()) {
+            lot.terminer();
+        }
+
+        // Retirer exactement les pierres tombales lues : une suppression validée pendant l'envoi (id plus petit,
+        // transaction plus lente) n'a pas été appliquée et doit rester pour le prochain envoi
+        suppressionFirebaseRepository.deleteAllByIdInBatch(
+            suppressions.stream().map(SuppressionFirebase::getIdSuppressionFirebase).toList());
+        log.info("{} suppression(s) propagée(s) vers Firebase", suppressions.size());
+        return suppressions.size();
+    }
+
+    /**
+     * Importer les documents modifiés d'une collection au fil de la lecture :
+     * chaque page Firestore est importée dès sa réception, un lot (une transaction) de commitSize documents à la fois
+     * @return nombre de lignes écrites
+     */
+    private int importer(String table, String collection, Importeur importeur, LocalDateTime lastSyncDate,
+                         SyncProgression progression) throws ExecutionException, InterruptedException {
+        AtomicInteger total = new AtomicInteger();
+        AtomicInteger ignores = new AtomicInteger();
+        firestoreReader.lireDocumentsModifiesApres(collection, lastSyncDate, documents -> {
+            for (int debut = 0; debut < documents.size(); debut += commitSize) {
+                FirebaseUpsertWriter.Resultat resultat = importeur.importer(
+                    documents.subList(debut, Math.min(debut + commitSize, documents.size())), lastSyncDate);
+                progression.lignesTraitees(table, resultat.lignes());
+                total.addAndGet(resultat.lignes());
+                ignores.addAndGet(resultat.ignores().size());
+            }
+        });
+        if (ignores.get() > 0) {
+            log.warn("Table {}: {} document(s) ignoré(s) faute de parent en base", table, ignores.get());
+        }
+        return total.get();
+    }
+
+    private static SyncDependencyScheduler.Etape etape(String table, Set<String> dependances,
+                                                       SyncDependencyScheduler.EtapeSync action) {
+        return new SyncDependencyScheduler.Etape(table, dependances, action);
     }
 
     /**
-     * Supprimer une collection Firebase
+     * Reporter les résultats des étapes (nombre, durée, débit si demandé)
+     * @return nombre total d'éléments synchronisés
      */
-    private void deleteCollection(String collectionName) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection(collectionName);
-        ApiFuture<QuerySnapshot> future = collection.get();
-        java.util.List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-        
-        for (QueryDocumentSnapshot document : documents) {
-            document.getReference().delete().get();
+    private int collecter(Map<String, SyncDependencyScheduler.ResultatEtape> resultats, Map<String, Integer> stats,
+                          Map<String, Long> durations, Map<String, Double> throughput) {
+        int total = 0;
+        for (SyncDependencyScheduler.ResultatEtape resultat : resultats.values()) {
+            stats.put(resultat.table(), resultat.count());
+            durations.put(resultat.table(), resultat.dureeMs());
+            if (throughput != null) {
+                double secondes = Math.max(resultat.dureeMs() / 1000.0, 0.001);
+                throughput.put(resultat.table(), Math.round(resultat.count() / secondes * 10) / 10.0);
+            }
+            total += resultat.count();
         }
-        
-        log.info("Collection {} supprimée ({} documents)", collectionName, documents.size());
+        return total;
     }
 }
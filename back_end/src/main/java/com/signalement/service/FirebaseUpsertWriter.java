@@ -0,0 +1,265 @@
+package com.signalement.service;
+
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Écritures groupées pour la synchronisation Firebase -> PostgreSQL.
+ * Les lignes converties sont envoyées par lots JDBC avec
+ * INSERT ... ON CONFLICT (clé) DO UPDATE ... WHERE excluded.last_update > table.last_update :
+ * le Last-Write-Wins est appliqué par PostgreSQL en une opération ensembliste,
+ * au lieu d'un save() JPA par document (les ids IDENTITY désactivent le batching Hibernate).
+ * Doit être utilisé dans la transaction de l'import (le JdbcTemplate partage la connexion JPA).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FirebaseUpsertWriter {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+
+    @Value("${firebase.sync.upsert.batch-size:500}")
+    private int tailleBatch;
+
+    /**
+     * Colonne d'une table : nom, expression SQL du paramètre, valeur extraite de l'entité
+     * @param miseAJour false pour une colonne écrite seulement à l'insertion
+     * @param conserverSiNull true si une valeur nulle (champ absent du document) garde la valeur en base
+     * @param defaut expression SQL insérée à la place d'une valeur nulle (null : pas de valeur par défaut)
+     */
+    private record Colonne<T>(String nom, String expression, Function<T, Object> valeur, boolean miseAJour,
+                              boolean conserverSiNull, String defaut) {
+
+        Colonne(String nom, String expression, Function<T, Object> valeur, boolean miseAJour) {
+            this(nom, expression, valeur, miseAJour, false, null);
+        }
+
+        String insertion() {
+            return defaut == null ? expression : "COALESCE(" + expression + ", " + defaut + ")";
+        }
+
+        /**
+         * Avec une valeur par défaut, EXCLUDED contient déjà le défaut : le paramètre est repris dans le SET
+         */
+        String affectation(String table) {
+            if (!conserverSiNull) {
+                return nom + " = EXCLUDED." + nom;
+            }
+            String valeurMiseAJour = defaut == null ? "EXCLUDED." + nom : expression;
+            return nom + " = COALESCE(" + valeurMiseAJour + ", " + table + "." + nom + ")";
+        }
+
+        boolean parametreMiseAJour() {
+            return conserverSiNull && defaut != null;
+        }
+    }
+
+    /**
+     * Résultat d'un import : lignes écrites et documents non écrits faute de parent en base (clé étrangère absente)
+     */
+    public record Resultat(int lignes, List<QueryDocumentSnapshot> ignores) {
+    }
+
+    /**
+     * Description d'une table cible : clé de conflit, colonne last_update et colonnes écrites
+     */
+    public static final class Table<T> {
+
+        private final String nom;
+        private final List<Colonne<T>> colonnes = new ArrayList<>();
+        private String cle;
+        private String colonneId;
+        private String colonneLastUpdate;
+
+        private Table(String nom) {
+            this.nom = nom;
+        }
+
+        /**
+         * Id fourni par Firebase : clé de conflit, la séquence est recalée après l'import
+         */
+        public Table<T> id(String colonne, Function<T, Object> valeur) {
+            this.cle = colonne;
+            this.colonneId = colonne;
+            return colonne(colonne, valeur);
+        }
+
+        /**
+         * Clé naturelle (contrainte UNIQUE) utilisée comme clé de conflit, l'id restant généré par la base
+         */
+        public Table<T> cle(String colonne, Function<T, Object> valeur) {
+            this.cle = colonne;
+            return colonne(colonne, valeur);
+        }
+
+        public Table<T> lastUpdate(String colonne, Function<T, Object> valeur) {
+            this.colonneLastUpdate = colonne;
+            return colonne(colonne, valeur);
+        }
+
+        public Table<T> colonne(String colonne, Function<T, Object> valeur) {
+            colonnes.add(new Colonne<>(colonne, "?", valeur, true));
+            return this;
+        }
+
+        /**
+         * Colonne dont le paramètre passe par une expression SQL (ex. conversion géographique)
+         */
+        public Table<T> colonne(String colonne, String expression, Function<T, Object> valeur) {
+            colonnes.add(new Colonne<>(colonne, expression, valeur, true));
+            return this;
+        }
+
+        /**
+         * Colonne écrite à l'insertion mais jamais modifiée (ex. date de création)
+         */
+        public Table<T> colonneInsertion(String colonne, Function<T, Object> valeur) {
+            colonnes.add(new Colonne<>(colonne, "?", valeur, false));
+            return this;
+        }
+
+        /**
+         * Colonne facultative dans le document Firebase : à la mise à jour, une valeur nulle garde celle en base
+         */
+        public Table<T> colonneFacultative(String colonne, Function<T, Object> valeur) {
+            colonnes.add(new Colonne<>(colonne, "?", valeur, true, true, null));
+            return this;
+        }
+
+        public Table<T> colonneFacultative(String colonne, String expression, Function<T, Object> valeur) {
+            colonnes.add(new Colonne<>(colonne, expression, valeur, true, true, null));
+            return this;
+        }
+
+        /**
+         * Colonne facultative avec une valeur par défaut à l'insertion (ex. CURRENT_DATE),
+         * une valeur nulle gardant celle en base à la mise à jour
+         */
+        public Table<T> colonneFacultative(String colonne, Function<T, Object> valeur, String defaut) {
+            colonnes.add(new Colonne<>(colonne, "?", valeur, true, true, defaut));
+            return this;
+        }
+
+        private List<Colonne<T>> colonnesMiseAJour() {
+            return colonnes.stream().filter(c -> c.miseAJour() && !c.nom().equals(cle)).toList();
+        }
+
+        private String sql() {
+            String noms = colonnes.stream().map(Colonne::nom).collect(Collectors.joining(", "));
+            String parametres = colonnes.stream().map(Colonne::insertion).collect(Collectors.joining(", "));
+            String miseAJour = colonnesMiseAJour().stream()
+                    .map(c -> c.affectation("t"))
+                    .collect(Collectors.joining(", "));
+            return "INSERT INTO " + nom + " AS t (" + noms + ") VALUES (" + parametres + ")"
+                    + " ON CONFLICT (" + cle + ") DO UPDATE SET " + miseAJour
+                    + " WHERE EXCLUDED." + colonneLastUpdate + " > t." + colonneLastUpdate;
+        }
+    }
+
+    public static <T> Table<T> table(String nom) {
+        return new Table<>(nom);
+    }
+
+    /**
+     * Ouvrir un lot d'upserts sur une table. Appeler terminer() pour envoyer les dernières lignes.
+     */
+    public <T> Lot<T> ouvrir(Table<T> table) {
+        if (table.cle == null || table.colonneLastUpdate == null) {
+            throw new IllegalStateException("Table " + table.nom + " : clé de conflit et colonne last_update requises");
+        }
+        return new Lot<>(table, table.sql());
+    }
+
+    public final class Lot<T> {
+
+        private final Table<T> table;
+        private final String sql;
+        // Colonnes dont le paramètre est repris dans le SET, dans l'ordre de la requête
+        private final List<Colonne<T>> parametresMiseAJour;
+        private final List<Object[]> lignes = new ArrayList<>();
+        private final List<QueryDocumentSnapshot> ignores = new ArrayList<>();
+        private int total;
+
+        private Lot(Table<T> table, String sql) {
+            this.table = table;
+            this.sql = sql;
+            this.parametresMiseAJour = table.colonnesMiseAJour().stream().filter(Colonne::parametreMiseAJour).toList();
+        }
+
+        /**
+         * Ajouter une entité au lot. Si elle est gérée par JPA, elle est détachée :
+         * seule l'écriture groupée l'enregistre (pas de mise à jour Hibernate au commit).
+         */
+        public void ajouter(T entite) {
+            if (entityManager.contains(entite)) {
+                entityManager.detach(entite);
+            }
+            int nombreColonnes = table.colonnes.size();
+            Object[] valeurs = new Object[nombreColonnes + parametresMiseAJour.size()];
+            for (int i = 0; i < nombreColonnes; i++) {
+                valeurs[i] = table.colonnes.get(i).valeur().apply(entite);
+            }
+            for (int i = 0; i < parametresMiseAJour.size(); i++) {
+                valeurs[nombreColonnes + i] = parametresMiseAJour.get(i).valeur().apply(entite);
+            }
+            lignes.add(valeurs);
+            if (lignes.size() >= tailleBatch) {
+                envoyer();
+            }
+        }
+
+        /**
+         * Document non écrit faute de parent en base : rapporté dans le résultat pour être présenté à nouveau
+         */
+        public void ignorer(QueryDocumentSnapshot document) {
+            ignores.add(document);
+        }
+
+        /**
+         * terminer(), avec les documents ignorés
+         */
+        public Resultat resultat() {
+            return new Resultat(terminer(), List.copyOf(ignores));
+        }
+
+        /**
+         * Envoyer les dernières lignes et recaler la séquence de l'id si les ids viennent de Firebase
+         * @return nombre de lignes insérées ou mises à jour (les lignes plus anciennes qu'en base sont ignorées)
+         */
+        public int terminer() {
+            envoyer();
+            if (table.colonneId != null && total > 0) {
+                jdbcTemplate.queryForObject("SELECT setval(pg_get_serial_sequence(?, ?), "
+                        + "(SELECT COALESCE(MAX(" + table.colonneId + "), 0) + 1 FROM " + table.nom + "), false)",
+                        Long.class, table.nom, table.colonneId);
+            }
+            log.debug("Table {}: {} ligne(s) écrite(s) par upsert", table.nom, total);
+            return total;
+        }
+
+        private void envoyer() {
+            if (lignes.isEmpty()) {
+                return;
+            }
+            for (int count : jdbcTemplate.batchUpdate(sql, lignes)) {
+                // SUCCESS_NO_INFO : le pilote n'a pas remonté le nombre de lignes, compter la ligne comme écrite
+                if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                    total++;
+                }
+            }
+            lignes.clear();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.signalement.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Écritures Firestore groupées pour la synchronisation PostgreSQL -> Firebase.
+ * Les opérations sont regroupées en WriteBatch (500 opérations max par commit, limite Firestore)
+ * et plusieurs commits restent en cours en parallèle au lieu d'un aller-retour réseau par document.
+ */
+@Service
+@Slf4j
+public class FirestoreBulkWriter {
+
+    /**
+     * Nombre maximal d'opérations dans un WriteBatch Firestore
+     */
+    public static final int MAX_OPERATIONS_PAR_BATCH = 500;
+
+    private final Firestore firestore;
+    private final int tailleBatch;
+    private final int maxCommitsEnCours;
+
+    public FirestoreBulkWriter(Firestore firestore,
+                               @Value("${firebase.sync.batch-size:500}") int tailleBatch,
+                               @Value("${firebase.sync.max-commits-in-flight:4}") int maxCommitsEnCours) {
+        this.firestore = firestore;
+        this.tailleBatch = Math.max(1, Math.min(tailleBatch, MAX_OPERATIONS_PAR_BATCH));
+        this.maxCommitsEnCours = Math.max(1, maxCommitsEnCours);
+    }
+
+    /**
+     * Ouvrir un lot d'écritures sur une collection. Appeler terminer() pour attendre tous les commits.
+     * Un lot n'est pas thread-safe : un lot par collection et par thread.
+     */
+    public Lot ouvrir(String collectionName) {
+        return new Lot(firestore.collection(collectionName));
+    }
+
+    public final class Lot {
+
+        private final CollectionReference collection;
+        private final Deque<ApiFuture<List<WriteResult>>> commitsEnCours = new ArrayDeque<>();
+        private final long debut = System.nanoTime();
+        private WriteBatch batch;
+        private int operationsBatch;
+        private int total;
+
+        private Lot(CollectionReference collection) {
+            this.collection = collection;
+        }
+
+        public void set(String documentId, Map<String, Object> data) throws ExecutionException, InterruptedException {
+            batchCourant().set(collection.document(documentId), data);
+            operationAjoutee();
+        }
+
+        public void delete(String documentId) throws ExecutionException, InterruptedException {
+            batchCourant().delete(collection.document(documentId));
+            operationAjoutee();
+        }
+
+        /**
+         * Envoyer le dernier batch et attendre la fin de tous les commits
+         * @return nombre total d'opérations écrites
+         */
+        public int terminer() throws ExecutionException, InterruptedException {
+            commit();
+            while (!commitsEnCours.isEmpty()) {
+                commitsEnCours.removeFirst().get();
+            }
+            log.debug("Collection {}: {} opération(s) écrite(s) en {} ms",
+                    collection.getId(), total, (System.nanoTime() - debut) / 1_000_000);
+            return total;
+        }
+
+        private WriteBatch batchCourant() {
+            if (batch == null) {
+                batch = firestore.batch();
+                operationsBatch = 0;
+            }
+            return batch;
+        }
+
+        private void operationAjoutee() throws ExecutionException, InterruptedException {
+            operationsBatch++;
+            total++;
+            if (operationsBatch >= tailleBatch) {
+                commit();
+            }
+        }
+
+        private void commit() throws ExecutionException, InterruptedException {
+            if (batch == null) {
+                return;
+            }
+            // Limiter le nombre de commits en vol : attendre le plus ancien avant d'en lancer un autre
+            if (commitsEnCours.size() >= maxCommitsEnCours) {
+                commitsEnCours.removeFirst().get();
+            }
+            commitsEnCours.addLast(batch.commit());
+            batch = null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.signalement.service;
+
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Lecture incrémentale des collections Firestore pour la synchronisation Firebase -> PostgreSQL.
+ * Le filtre last_update est exécuté côté Firestore et les résultats sont lus par pages (curseur startAfter) :
+ * le coût d'une synchronisation dépend du nombre de documents modifiés, pas de la taille de la collection.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FirestoreIncrementalReader {
+
+    private final Firestore firestore;
+
+    @Value("${firebase.sync.page-size:500}")
+    private int pageSize;
+
+    /**
+     * Documents de la collection dont last_update (epoch millis) est strictement après `depuis`,
+     * triés par last_update croissant, remis page par page à `traitement` dès leur lecture :
+     * une page est traitée (et validée) avant que la suivante soit lue, seule une page est gardée en mémoire.
+     * @return nombre de documents lus
+     */
+    public int lireDocumentsModifiesApres(String collectionName, LocalDateTime depuis,
+                                         Consumer<List<QueryDocumentSnapshot>> traitement)
+            throws ExecutionException, InterruptedException {
+        long depuisMs = depuis.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Query query = firestore.collection(collectionName)
+                .whereGreaterThan("last_update", depuisMs)
+                .orderBy("last_update")
+                .limit(pageSize);
+
+        int total = 0;
+        QueryDocumentSnapshot dernier = null;
+        int pages = 0;
+        while (true) {
+            Query page = dernier == null ? query : query.startAfter(dernier);
+            List<QueryDocumentSnapshot> lot = page.get().get().getDocuments();
+            pages++;
+            if (!lot.isEmpty()) {
+                traitement.accept(lot);
+                total += lot.size();
+            }
+            if (lot.size() < pageSize) {
+                break;
+            }
+            dernier = lot.get(lot.size() - 1);
+        }
+        log.debug("Collection {}: {} document(s) modifié(s) depuis {} ({} page(s))",
+                collectionName, total, depuis, pages);
+        return total;
+    }
+}
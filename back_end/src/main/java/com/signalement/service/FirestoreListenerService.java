@@ -0,0 +1,314 @@
+package com.signalement.service;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.signalement.entity.CurseurFirebase;
+import com.signalement.repository.CurseurFirebaseRepository;
+import com.signalement.repository.SynchronisationFirebaseRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mode temps réel Firebase -> PostgreSQL (optionnel, firebase.listener.enabled=true).
+ * Un listener Firestore par collection reçoit les documents modifiés (last_update > filigrane)
+ * et les place dans une file bornée ; un thread les applique par lots avec la logique d'import
+ * des services (importerDocuments), dans l'ordre des dépendances FK.
+ *
+ * - Contre-pression : quand la file est pleine, le thread des callbacks Firestore attend,
+ *   la réception des snapshots suivants est suspendue jusqu'à ce que l'import rattrape son retard.
+ * - Reprise : le filigrane (dernier last_update appliqué) est enregistré par collection
+ *   dans curseur_firebase ; au démarrage et à chaque réattachement périodique,
+ *   les listeners repartent de ce filigrane (moins une marge).
+ * - Documents ignorés faute de parent (clé étrangère pas encore importée) ou dont l'import a échoué :
+ *   gardés en attente et réessayés avec chaque lot suivant ; le filigrane de leur collection reste avant le plus ancien,
+ *   ils sont donc aussi présentés à nouveau au réattachement ou au redémarrage.
+ * - Les suppressions Firebase ne sont pas propagées (comme la synchronisation manuelle).
+ */
+@Service
+@Slf4j
+public class FirestoreListenerService {
+
+    /**
+     * Date par défaut sans filigrane ni synchronisation précédente
+     */
+    private static final LocalDateTime DEPUIS_TOUJOURS = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    /**
+     * Collections des tables de référence (registre rechargé quand l'une d'elles est importée)
+     */
+    private static final Set<String> COLLECTIONS_REFERENCE = Set.of(
+            "type_utilisateur", "etat_signalement", "type_travail", "statut_assignation");
+
+    @FunctionalInterface
+    private interface Importeur {
+        FirebaseUpsertWriter.Resultat importer(List<QueryDocumentSnapshot> documents, LocalDateTime depuis);
+    }
+
+    private final Firestore firestore;
+    private final CurseurFirebaseRepository curseurRepository;
+    private final SynchronisationFirebaseRepository syncRepository;
+    private final StatisticsSnapshotService statisticsSnapshotService;
+    private final TuileSignalementService tuileSignalementService;
+    private final ReferenceDataService referenceDataService;
+
+    // Collection -> import, dans l'ordre des dépendances FK (un lot est appliqué dans cet ordre)
+    private final Map<String, Importeur> importeurs = new LinkedHashMap<>();
+    private final Map<String, ListenerRegistration> listeners = new ConcurrentHashMap<>();
+    // Collection -> documents ignorés faute de parent ou en échec, par id (utilisé seulement par le thread d'import)
+    private final Map<String, Map<String, QueryDocumentSnapshot>> enAttente = new HashMap<>();
+    private final BlockingQueue<QueryDocumentSnapshot> file;
+    private final ExecutorService callbacks;
+
+    private final boolean enabled;
+    private final int tailleLot;
+    private final long margeSecondes;
+
+    private volatile boolean actif;
+    private Thread worker;
+
+    public FirestoreListenerService(Firestore firestore,
+                                    CurseurFirebaseRepository curseurRepository,
+                                    SynchronisationFirebaseRepository syncRepository,
+                                    StatisticsSnapshotService statisticsSnapshotService,
+                                    TuileSignalementService tuileSignalementService,
+                                    ReferenceDataService referenceDataService,
+                                    TypeUtilisateurService typeUtilisateurService,
+                                    EtatSignalementService etatSignalementService,
+                                    TypeTravailService typeTravailService,
+                                    EntrepriseService entrepriseService,
+                                    StatutAssignationService statutAssignationService,
+                                    UtilisateurService utilisateurService,
+                                    SignalementService signalementService,
+                                    EntrepriseConcernerService entrepriseConcernerService,
+                                    HistoriqueEtatSignalementService historiqueEtatService,
+                                    HistoriqueStatutAssignationService historiqueStatutService,
+                                    SessionService sessionService,
+                                    TentativeConnexionService tentativeConnexionService,
+                                    PhotoSignalementService photoSignalementService,
+                                    UtilisateurFcmTokensService utilisateurFcmTokensService,
+                                    @Value("${firebase.listener.enabled:false}") boolean enabled,
+                                    @Value("${firebase.listener.queue-capacity:5000}") int capaciteFile,
+                                    @Value("${firebase.listener.batch-size:500}") int tailleLot,
+                                    @Value("${firebase.listener.overlap.seconds:60}") long margeSecondes) {
+        this.firestore = firestore;
+        this.curseurRepository = curseurRepository;
+        this.syncRepository = syncRepository;
+        this.statisticsSnapshotService = statisticsSnapshotService;
+        this.tuileSignalementService = tuileSignalementService;
+        this.referenceDataService = referenceDataService;
+        this.enabled = enabled;
+        this.tailleLot = Math.max(1, tailleLot);
+        this.margeSecondes = margeSecondes;
+        this.file = new LinkedBlockingQueue<>(Math.max(1, capaciteFile));
+        this.callbacks = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "firestore-listener");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        importeurs.put("type_utilisateur", typeUtilisateurService::importerDocuments);
+        importeurs.put("etat_signalement", etatSignalementService::importerDocuments);
+        importeurs.put("type_travail", typeTravailService::importerDocuments);
+        importeurs.put("entreprises", entrepriseService::importerDocuments);
+        importeurs.put("statut_assignation", statutAssignationService::importerDocuments);
+        importeurs.put("utilisateurs", utilisateurService::importerDocuments);
+        importeurs.put("signalements", signalementService::importerDocuments);
+        importeurs.put("entreprise_concerner", entrepriseConcernerService::importerDocuments);
+        importeurs.put("historique_etat_signalement", historiqueEtatService::importerDocuments);
+        importeurs.put("historique_statut_assignation", historiqueStatutService::importerDocuments);
+        importeurs.put("sessions", sessionService::importerDocuments);
+        importeurs.put("tentative_connexion", tentativeConnexionService::importerDocuments);
+        importeurs.put("photo_signalement", photoSignalementService::importerDocuments);
+        importeurs.put("utilisateur_fcm_tokens", utilisateurFcmTokensService::importerDocuments);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void demarrer() {
+        if (!enabled) {
+            return;
+        }
+        actif = true;
+        worker = new Thread(this::boucleImport, "firestore-listener-import");
+        worker.setDaemon(true);
+        worker.start();
+        importeurs.keySet().forEach(this::attacher);
+        log.info("Mode temps réel Firebase actif : {} collection(s) écoutée(s)", listeners.size());
+    }
+
+    /**
+     * Réattacher les listeners à partir du filigrane courant : le résultat suivi par chaque listener
+     * (documents modifiés depuis le filigrane) reste borné. Le filigrane ne dépasse pas un document
+     * ignoré faute de parent : ces documents sont présentés à nouveau.
+     */
+    // Runs every `firebase.listener.reattach.rate.millis` milliseconds (default 3600000 = 1h)
+    @Scheduled(fixedRateString = "${firebase.listener.reattach.rate.millis:3600000}",
+               initialDelayString = "${firebase.listener.reattach.rate.millis:3600000}")
+    public void rattacher() {
+        if (!actif) {
+            return;
+        }
+        importeurs.keySet().forEach(this::attacher);
+        log.debug("Listeners Firestore réattachés");
+    }
+
+    @PreDestroy
+    public void arreter() {
+        actif = false;
+        listeners.values().forEach(ListenerRegistration::remove);
+        listeners.clear();
+        callbacks.shutdownNow();
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private void attacher(String collection) {
+        LocalDateTime depuis = filigrane(collection);
+        long depuisMs = depuis.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        ListenerRegistration registration = firestore.collection(collection)
+                .whereGreaterThan("last_update", depuisMs)
+                .addSnapshotListener(callbacks, (snapshot, erreur) -> {
+                    if (erreur != null) {
+                        log.error("Listener Firestore {} en erreur: {}", collection, erreur.getMessage());
+                        return;
+                    }
+                    if (snapshot == null) {
+                        return;
+                    }
+                    for (DocumentChange change : snapshot.getDocumentChanges()) {
+                        // REMOVED : le document sort du résultat (ou est supprimé), rien à appliquer
+                        if (change.getType() != DocumentChange.Type.REMOVED) {
+                            mettreEnFile(change.getDocument());
+                        }
+                    }
+                });
+        ListenerRegistration precedent = listeners.put(collection, registration);
+        if (precedent != null) {
+            precedent.remove();
+        }
+        log.debug("Listener Firestore {} attaché depuis {}", collection, depuis);
+    }
+
+    private void mettreEnFile(QueryDocumentSnapshot document) {
+        try {
+            // Bloque le thread des callbacks quand la file est pleine (contre-pression)
+            file.put(document);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void boucleImport() {
+        while (actif) {
+            try {
+                QueryDocumentSnapshot premier = file.poll(1, TimeUnit.SECONDS);
+                if (premier == null) {
+                    continue;
+                }
+                List<QueryDocumentSnapshot> lot = new ArrayList<>(tailleLot);
+                lot.add(premier);
+                file.drainTo(lot, tailleLot - 1);
+                appliquer(lot);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Erreur dans l'import temps réel Firebase", e);
+            }
+        }
+    }
+
+    /**
+     * Appliquer un lot de documents : regroupés par collection (dernière version de chaque document),
+     * avec les documents en attente de leur parent, importés dans l'ordre des dépendances FK,
+     * puis filigrane avancé pour chaque collection importée, sans dépasser le plus ancien document ignoré
+     */
+    private void appliquer(List<QueryDocumentSnapshot> lot) {
+        Map<String, Map<String, QueryDocumentSnapshot>> parCollection = new HashMap<>();
+        enAttente.forEach((collection, documents) -> parCollection.put(collection, new LinkedHashMap<>(documents)));
+        for (QueryDocumentSnapshot document : lot) {
+            parCollection.computeIfAbsent(document.getReference().getParent().getId(), c -> new LinkedHashMap<>())
+                    .merge(document.getId(), document, (ancien, nouveau) -> lastUpdate(nouveau) >= lastUpdate(ancien) ? nouveau : ancien);
+        }
+
+        int total = 0;
+        boolean referenceModifiee = false;
+        for (Map.Entry<String, Importeur> entry : importeurs.entrySet()) {
+            Map<String, QueryDocumentSnapshot> documents = parCollection.get(entry.getKey());
+            if (documents == null) {
+                continue;
+            }
+            try {
+                // Chaque import est validé dans sa propre transaction (méthode du service)
+                FirebaseUpsertWriter.Resultat resultat = entry.getValue().importer(new ArrayList<>(documents.values()), DEPUIS_TOUJOURS);
+                total += resultat.lignes();
+                referenceModifiee |= resultat.lignes() > 0 && COLLECTIONS_REFERENCE.contains(entry.getKey());
+                long maxMs = documents.values().stream().mapToLong(this::lastUpdate).max().orElse(0);
+                // Les documents en attente de la collection faisaient partie de l'import : les ignorés les remplacent
+                Map<String, QueryDocumentSnapshot> ignores = new LinkedHashMap<>();
+                resultat.ignores().forEach(document -> ignores.put(document.getId(), document));
+                if (ignores.isEmpty()) {
+                    enAttente.remove(entry.getKey());
+                } else {
+                    enAttente.put(entry.getKey(), ignores);
+                    maxMs = Math.min(maxMs, ignores.values().stream().mapToLong(this::lastUpdate).min().orElse(maxMs) - 1);
+                    log.debug("Import temps réel de {} : {} document(s) en attente de leur parent",
+                            entry.getKey(), ignores.size());
+                }
+                if (maxMs > 0) {
+                    curseurRepository.avancer(entry.getKey(),
+                            LocalDateTime.ofInstant(Instant.ofEpochMilli(maxMs), ZoneId.systemDefault()));
+                }
+            } catch (RuntimeException e) {
+                // Documents gardés en attente : réessayés au prochain lot, le filigrane reste derrière eux
+                enAttente.put(entry.getKey(), new LinkedHashMap<>(documents));
+                log.error("Échec de l'import temps réel de {} ({} document(s) en attente): {}",
+                        entry.getKey(), documents.size(), e.getMessage());
+            }
+        }
+        if (referenceModifiee) {
+            referenceDataService.rafraichir();
+        }
+        if (total > 0) {
+            statisticsSnapshotService.invalider();
+            tuileSignalementService.invalider();
+            log.debug("Import temps réel Firebase: {} ligne(s) appliquée(s) pour {} document(s) reçu(s)", total, lot.size());
+        }
+    }
+
+    private LocalDateTime filigrane(String collection) {
+        LocalDateTime depuis = curseurRepository.findById(collection)
+                .map(CurseurFirebase::getLastUpdate)
+                .or(() -> syncRepository.findLastSuccessfulSyncFromFirebaseDate())
+                .orElse(DEPUIS_TOUJOURS);
+        return depuis.minusSeconds(margeSecondes);
+    }
+
+    private long lastUpdate(QueryDocumentSnapshot document) {
+        Long lastUpdate = document.getLong("last_update");
+        return lastUpdate != null ? lastUpdate : 0;
+    }
+}
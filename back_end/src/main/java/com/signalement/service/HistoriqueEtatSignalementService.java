@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.*;
 import com.signalement.repository.*;
@@ -13,8 +12,10 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 @Service
@@ -26,15 +27,32 @@ public class HistoriqueEtatSignalementService {
     private final SignalementRepository signalementRepository;
     private final EtatSignalementRepository etatRepository;
     private final FirebaseConversionService firebaseConversionService;
-    private final Firestore firestore;
+    private final EtatCourantSignalementService etatCourantSignalementService;
+    private final FirebaseIdentityResolver identityResolver;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
 
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<HistoriqueEtatSignalement> UPSERT =
+            FirebaseUpsertWriter.<HistoriqueEtatSignalement>table("historique_etat_signalement")
+            .id("id_historique", HistoriqueEtatSignalement::getIdHistorique)
+            .colonneFacultative("date_changement_etat", HistoriqueEtatSignalement::getDateChangement, "LOCALTIMESTAMP")
+            .colonne("id_signalement", h -> h.getSignalement().getIdSignalement())
+            .colonne("id_etat_signalement", h -> h.getEtatSignalement().getIdEtatSignalement())
+            .lastUpdate("last_update", HistoriqueEtatSignalement::getLastUpdate);
+
+    /**
+     * Appliquer des documents Firebase, lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
+     */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("historique_etat_signalement");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        // Références chargées en bloc pour vérifier les clés étrangères ; le Last-Write-Wins est décidé par l'upsert
+        Map<Integer, Signalement> signalements = identityResolver.prefetch(documents, "id_signalement", signalementRepository, Signalement::getIdSignalement);
+        Map<Integer, EtatSignalement> etats = identityResolver.prefetch(documents, "id_etat", etatRepository, EtatSignalement::getIdEtatSignalement);
 
-        int synced = 0;
+        FirebaseUpsertWriter.Lot<HistoriqueEtatSignalement> lot = upsertWriter.ouvrir(UPSERT);
+        Set<Integer> signalementsModifies = new HashSet<>();
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -44,39 +62,45 @@ public class HistoriqueEtatSignalementService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = historiqueRepository.findById(id);
+                HistoriqueEtatSignalement historique = new HistoriqueEtatSignalement();
+                historique.setIdHistorique(id);
+                
+                // Date absente du document : date actuelle à l'insertion, date en base conservée à la mise à jour
+                Long dateChangementMs = firebaseConversionService.getLongValue(doc, "date_changement");
+                historique.setDateChangement(dateChangementMs != null
+                    ? LocalDateTime.ofInstant(Instant.ofEpochMilli(dateChangementMs), ZoneId.systemDefault())
+                    : null);
+                
+                Integer signalementId = firebaseConversionService.getLongAsInteger(doc, "id_signalement");
+                Signalement signalement = signalements.get(signalementId);
+                
+                Integer etatId = firebaseConversionService.getLongAsInteger(doc, "id_etat");
+                EtatSignalement etat = etats.get(etatId);
                 
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    HistoriqueEtatSignalement historique = existing.orElse(new HistoriqueEtatSignalement());
-                    historique.setIdHistorique(id);
-                    
-                    Long dateChangementMs = firebaseConversionService.getLongValue(doc, "date_changement");
-                    if (dateChangementMs != null) {
-                        historique.setDateChangement(LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(dateChangementMs), ZoneId.systemDefault()));
-                    }
-                    
-                    Integer signalementId = firebaseConversionService.getLongAsInteger(doc, "id_signalement");
-                    Signalement signalement = signalementRepository.findById(signalementId).orElse(null);
-                    
-                    Integer etatId = firebaseConversionService.getLongAsInteger(doc, "id_etat");
-                    EtatSignalement etat = etatRepository.findById(etatId).orElse(null);
-                    
-                    if (signalement != null && etat != null) {
-                        historique.setSignalement(signalement);
-                        historique.setEtatSignalement(etat);
-                        historiqueRepository.save(historique);
-                        synced++;
-                    }
+                if (signalement != null && etat != null) {
+                    historique.setSignalement(signalement);
+                    historique.setEtatSignalement(etat);
+                    historique.setLastUpdate(firebaseLastUpdate);
+                    lot.ajouter(historique);
+                    signalementsModifies.add(signalement.getIdSignalement());
+                } else {
+                    lot.ignorer(doc);
                 }
             }
         }
-        return synced;
+        FirebaseUpsertWriter.Resultat resultat = lot.resultat();
+        // Projection de l'état courant recalculée en une requête pour les signalements importés
+        etatCourantSignalementService.recalculer(signalementsModifies);
+        return resultat;
     }
 
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<HistoriqueEtatSignalement> historiques = historiqueRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<HistoriqueEtatSignalement> historiques = lastPushDate == null
+            ? historiqueRepository.findAll()
+            : historiqueRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("historique_etat_signalement");
         for (HistoriqueEtatSignalement historique : historiques) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", historique.getIdHistorique());
@@ -91,11 +115,10 @@ public class HistoriqueEtatSignalementService {
             data.put("id_signalement", historique.getSignalement().getIdSignalement());
             data.put("id_etat", historique.getEtatSignalement().getIdEtatSignalement());
             
-            firestore.collection("historique_etat_signalement")
-                .document(String.valueOf(historique.getIdHistorique()))
-                .set(data).get();
+            lot.set(String.valueOf(historique.getIdHistorique()), data);
         }
-        log.info("{} historiques d'état recréés", historiques.size());
+        lot.terminer();
+        log.info("{} historiques d'état envoyés vers Firebase", historiques.size());
         return historiques.size();
     }
 }
@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.*;
 import com.signalement.repository.*;
@@ -26,15 +25,30 @@ public class HistoriqueStatutAssignationService {
     private final EntrepriseConcernerRepository entrepriseConcernerRepository;
     private final StatutAssignationRepository statutRepository;
     private final FirebaseConversionService firebaseConversionService;
-    private final Firestore firestore;
+    private final FirebaseIdentityResolver identityResolver;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
 
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<HistoriqueStatutAssignation> UPSERT =
+            FirebaseUpsertWriter.<HistoriqueStatutAssignation>table("historique_statut_assignation")
+            .id("id_historique", HistoriqueStatutAssignation::getIdHistorique)
+            .colonneFacultative("date_changement", HistoriqueStatutAssignation::getDateChangement, "LOCALTIMESTAMP")
+            .colonne("id_entreprise_concerner", h -> h.getEntrepriseConcerner().getIdEntrepriseConcerner())
+            .colonne("id_statut_assignation", h -> h.getStatutAssignation().getIdStatutAssignation())
+            .lastUpdate("last_update", HistoriqueStatutAssignation::getLastUpdate);
+
+    /**
+     * Appliquer des documents Firebase, lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
+     */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("historique_statut_assignation");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        // Références chargées en bloc pour vérifier les clés étrangères ; le Last-Write-Wins est décidé par l'upsert
+        Map<Integer, EntrepriseConcerner> entreprisesConcernees = identityResolver.prefetch(documents, "id_entreprise_concerner", entrepriseConcernerRepository, EntrepriseConcerner::getIdEntrepriseConcerner);
+        Map<Integer, StatutAssignation> statuts = identityResolver.prefetch(documents, "id_statut", statutRepository, StatutAssignation::getIdStatutAssignation);
 
-        int synced = 0;
+        FirebaseUpsertWriter.Lot<HistoriqueStatutAssignation> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -44,39 +58,41 @@ public class HistoriqueStatutAssignationService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = historiqueRepository.findById(id);
+                HistoriqueStatutAssignation historique = new HistoriqueStatutAssignation();
+                historique.setIdHistorique(id);
+                
+                // Date absente du document : date actuelle à l'insertion, date en base conservée à la mise à jour
+                Long dateChangementMs = firebaseConversionService.getLongValue(doc, "date_changement");
+                historique.setDateChangement(dateChangementMs != null
+                    ? LocalDateTime.ofInstant(Instant.ofEpochMilli(dateChangementMs), ZoneId.systemDefault())
+                    : null);
+                
+                Integer entrepriseConcernerId = firebaseConversionService.getLongAsInteger(doc, "id_entreprise_concerner");
+                EntrepriseConcerner ec = entreprisesConcernees.get(entrepriseConcernerId);
+                
+                Integer statutId = firebaseConversionService.getLongAsInteger(doc, "id_statut");
+                StatutAssignation statut = statuts.get(statutId);
                 
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    HistoriqueStatutAssignation historique = existing.orElse(new HistoriqueStatutAssignation());
-                    historique.setIdHistorique(id);
-                    
-                    Long dateChangementMs = firebaseConversionService.getLongValue(doc, "date_changement");
-                    if (dateChangementMs != null) {
-                        historique.setDateChangement(LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(dateChangementMs), ZoneId.systemDefault()));
-                    }
-                    
-                    Integer entrepriseConcernerId = firebaseConversionService.getLongAsInteger(doc, "id_entreprise_concerner");
-                    EntrepriseConcerner ec = entrepriseConcernerRepository.findById(entrepriseConcernerId).orElse(null);
-                    
-                    Integer statutId = firebaseConversionService.getLongAsInteger(doc, "id_statut");
-                    StatutAssignation statut = statutRepository.findById(statutId).orElse(null);
-                    
-                    if (ec != null && statut != null) {
-                        historique.setEntrepriseConcerner(ec);
-                        historique.setStatutAssignation(statut);
-                        historiqueRepository.save(historique);
-                        synced++;
-                    }
+                if (ec != null && statut != null) {
+                    historique.setEntrepriseConcerner(ec);
+                    historique.setStatutAssignation(statut);
+                    historique.setLastUpdate(firebaseLastUpdate);
+                    lot.ajouter(historique);
+                } else {
+                    lot.ignorer(doc);
                 }
             }
         }
-        return synced;
+        return lot.resultat();
     }
 
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<HistoriqueStatutAssignation> historiques = historiqueRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<HistoriqueStatutAssignation> historiques = lastPushDate == null
+            ? historiqueRepository.findAll()
+            : historiqueRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("historique_statut_assignation");
         for (HistoriqueStatutAssignation historique : historiques) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", historique.getIdHistorique());
@@ -91,11 +107,10 @@ public class HistoriqueStatutAssignationService {
             data.put("id_entreprise_concerner", historique.getEntrepriseConcerner().getIdEntrepriseConcerner());
             data.put("id_statut", historique.getStatutAssignation().getIdStatutAssignation());
             
-            firestore.collection("historique_statut_assignation")
-                .document(String.valueOf(historique.getIdHistorique()))
-                .set(data).get();
+            lot.set(String.valueOf(historique.getIdHistorique()), data);
         }
-        log.info("{} historiques de statut recréés", historiques.size());
+        lot.terminer();
+        log.info("{} historiques de statut envoyés vers Firebase", historiques.size());
         return historiques.size();
     }
 }
@@ -0,0 +1,223 @@
+package com.signalement.service;
+
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.MessagingErrorCode;
+import com.google.firebase.messaging.MulticastMessage;
+import com.google.firebase.messaging.Notification;
+import com.google.firebase.messaging.SendResponse;
+import com.signalement.entity.NotificationFcm;
+import com.signalement.repository.NotificationFcmRepository;
+import com.signalement.repository.UtilisateurFcmTokensRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Envoi en arrière-plan des notifications FCM mises en file par NotificationService (table notification_fcm).
+ * - Les notifications de même contenu sont envoyées par sendEachForMulticast (500 tokens max par appel)
+ * - Erreur temporaire (FCM indisponible, quota) : nouvel essai avec délai exponentiel,
+ *   jusqu'à notification.dispatch.max-attempts essais, puis statut ECHEC
+ * - Token désinscrit (UNREGISTERED, SENDER_ID_MISMATCH) : token désactivé dans utilisateur_fcm_tokens
+ * - Notification envoyée : ligne supprimée
+ * Un seul thread d'envoi : réveillé après chaque commit qui met des notifications en file,
+ * et périodiquement pour les nouveaux essais.
+ */
+@Service
+@Slf4j
+public class NotificationDispatcher {
+
+    /**
+     * Nombre maximal de tokens par appel multicast FCM
+     */
+    private static final int MAX_TOKENS_FCM = 500;
+
+    /**
+     * Erreurs FCM pour lesquelles un nouvel essai peut réussir
+     */
+    private static final Set<MessagingErrorCode> ERREURS_TEMPORAIRES = Set.of(
+            MessagingErrorCode.UNAVAILABLE, MessagingErrorCode.INTERNAL, MessagingErrorCode.QUOTA_EXCEEDED);
+
+    /**
+     * Erreurs FCM indiquant que le token n'est plus utilisable
+     */
+    private static final Set<MessagingErrorCode> TOKENS_INVALIDES = Set.of(
+            MessagingErrorCode.UNREGISTERED, MessagingErrorCode.SENDER_ID_MISMATCH);
+
+    private final FirebaseMessaging firebaseMessaging;
+    private final NotificationFcmRepository notificationFcmRepository;
+    private final UtilisateurFcmTokensRepository utilisateurFcmTokensRepository;
+    private final ExecutorService executor;
+    private final AtomicBoolean demande = new AtomicBoolean();
+
+    private final int tailleLot;
+    private final int maxTentatives;
+    private final long delaiBaseMillis;
+
+    public NotificationDispatcher(FirebaseMessaging firebaseMessaging,
+                                  NotificationFcmRepository notificationFcmRepository,
+                                  UtilisateurFcmTokensRepository utilisateurFcmTokensRepository,
+                                  @Value("${notification.dispatch.batch-size:500}") int tailleLot,
+                                  @Value("${notification.dispatch.max-attempts:5}") int maxTentatives,
+                                  @Value("${notification.dispatch.backoff.millis:2000}") long delaiBaseMillis) {
+        this.firebaseMessaging = firebaseMessaging;
+        this.notificationFcmRepository = notificationFcmRepository;
+        this.utilisateurFcmTokensRepository = utilisateurFcmTokensRepository;
+        this.tailleLot = Math.max(1, Math.min(tailleLot, MAX_TOKENS_FCM));
+        this.maxTentatives = Math.max(1, maxTentatives);
+        this.delaiBaseMillis = delaiBaseMillis;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fcm-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Demander un envoi des notifications en attente (sans attendre son exécution)
+     */
+    public void reveiller() {
+        if (demande.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                demande.set(false);
+                envoyerEnAttente();
+            });
+        }
+    }
+
+    // Runs every `notification.dispatch.rate.millis` milliseconds (default 5000 = 5s)
+    @Scheduled(fixedDelayString = "${notification.dispatch.rate.millis:5000}")
+    public void envoyerPeriodiquement() {
+        reveiller();
+    }
+
+    @PreDestroy
+    public void arreter() {
+        executor.shutdownNow();
+    }
+
+    private void envoyerEnAttente() {
+        try {
+            List<NotificationFcm> notifications;
+            // Les notifications replanifiées ont une date future : la boucle se termine
+            while (!(notifications = notificationFcmRepository.findAEnvoyer(
+                    LocalDateTime.now(), PageRequest.of(0, 1000))).isEmpty()) {
+                envoyer(notifications);
+            }
+        } catch (RuntimeException e) {
+            log.error("Erreur lors de l'envoi des notifications FCM: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Envoyer des notifications regroupées par contenu (titre, corps), par lots de tokens
+     */
+    private void envoyer(List<NotificationFcm> notifications) {
+        Map<List<String>, List<NotificationFcm>> parContenu = new LinkedHashMap<>();
+        List<NotificationFcm> envoyees = new ArrayList<>();
+        for (NotificationFcm notification : notifications) {
+            if (!Boolean.TRUE.equals(notification.getUtilisateurFcmTokens().getEnable())) {
+                // Token désactivé depuis la mise en file : rien à envoyer
+                envoyees.add(notification);
+                continue;
+            }
+            parContenu.computeIfAbsent(List.of(notification.getTitre(), notification.getCorps()), c -> new ArrayList<>())
+                    .add(notification);
+        }
+
+        List<NotificationFcm> aReessayer = new ArrayList<>();
+        List<Integer> tokensInvalides = new ArrayList<>();
+        for (List<NotificationFcm> groupe : parContenu.values()) {
+            for (int debut = 0; debut < groupe.size(); debut += tailleLot) {
+                List<NotificationFcm> lot = groupe.subList(debut, Math.min(debut + tailleLot, groupe.size()));
+                envoyerLot(lot, envoyees, aReessayer, tokensInvalides);
+            }
+        }
+
+        if (!tokensInvalides.isEmpty()) {
+            int desactives = utilisateurFcmTokensRepository.desactiver(tokensInvalides, LocalDateTime.now());
+            log.info("{} token(s) FCM désinscrit(s) désactivé(s)", desactives);
+        }
+        notificationFcmRepository.deleteAllInBatch(envoyees);
+        notificationFcmRepository.saveAll(aReessayer);
+        log.debug("Notifications FCM: {} traitée(s), {} à réessayer ou en échec", envoyees.size(), aReessayer.size());
+    }
+
+    private void envoyerLot(List<NotificationFcm> lot, List<NotificationFcm> envoyees,
+                            List<NotificationFcm> aReessayer, List<Integer> tokensInvalides) {
+        NotificationFcm premiere = lot.get(0);
+        MulticastMessage message = MulticastMessage.builder()
+                .setNotification(Notification.builder()
+                        .setTitle(premiere.getTitre())
+                        .setBody(premiere.getCorps())
+                        .build())
+                .addAllTokens(lot.stream().map(n -> n.getUtilisateurFcmTokens().getFcmToken()).toList())
+                .build();
+
+        BatchResponse reponse;
+        try {
+            reponse = firebaseMessaging.sendEachForMulticast(message);
+        } catch (FirebaseMessagingException e) {
+            // Échec de l'appel lui-même (authentification, réseau) : tout le lot est réessayé
+            log.warn("Envoi FCM de {} notification(s) en échec: {}", lot.size(), e.getMessage());
+            lot.forEach(notification -> replanifier(notification, e.getMessage(), true, aReessayer));
+            return;
+        }
+
+        // Les réponses sont dans l'ordre des tokens du message
+        List<SendResponse> reponses = reponse.getResponses();
+        for (int i = 0; i < lot.size(); i++) {
+            NotificationFcm notification = lot.get(i);
+            SendResponse resultat = reponses.get(i);
+            if (resultat.isSuccessful()) {
+                envoyees.add(notification);
+                continue;
+            }
+            FirebaseMessagingException erreur = resultat.getException();
+            MessagingErrorCode code = erreur.getMessagingErrorCode();
+            if (TOKENS_INVALIDES.contains(code)) {
+                tokensInvalides.add(notification.getUtilisateurFcmTokens().getIdUtilisateurFcmTokens());
+                envoyees.add(notification);
+            } else {
+                replanifier(notification, code + ": " + erreur.getMessage(),
+                        code == null || ERREURS_TEMPORAIRES.contains(code), aReessayer);
+            }
+        }
+        log.info("Envoi FCM: {} succès, {} échec(s) sur {} token(s)",
+                reponse.getSuccessCount(), reponse.getFailureCount(), lot.size());
+    }
+
+    /**
+     * Planifier un nouvel essai (délai doublé à chaque essai) ou passer la notification en ECHEC
+     */
+    private void replanifier(NotificationFcm notification, String erreur, boolean temporaire,
+                             List<NotificationFcm> aReessayer) {
+        int tentatives = notification.getTentatives() + 1;
+        notification.setTentatives(tentatives);
+        notification.setDerniereErreur(erreur != null && erreur.length() > 500 ? erreur.substring(0, 500) : erreur);
+        if (temporaire && tentatives < maxTentatives) {
+            long delai = delaiBaseMillis << Math.min(tentatives - 1, 20);
+            notification.setProchaineTentative(LocalDateTime.now().plus(Duration.ofMillis(delai)));
+        } else {
+            notification.setStatut(NotificationFcm.ECHEC);
+            log.warn("Notification FCM {} abandonnée après {} essai(s): {}",
+                    notification.getIdNotificationFcm(), tentatives, erreur);
+        }
+        aReessayer.add(notification);
+    }
+}
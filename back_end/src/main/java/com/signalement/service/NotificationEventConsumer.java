@@ -0,0 +1,40 @@
+package com.signalement.service;
+
+import com.signalement.entity.DomainEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Notification FCM de l'utilisateur créateur pour chaque changement d'état de son signalement (Tâche 34)
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationEventConsumer implements DomainEventConsumer {
+
+    private final NotificationService notificationService;
+
+    @Override
+    public String nom() {
+        return "notifications";
+    }
+
+    @Override
+    public boolean traiter(List<DomainEvent> evenements) {
+        for (DomainEvent evenement : evenements) {
+            if (!DomainEvent.ETAT_CHANGE.equals(evenement.getType())) {
+                continue;
+            }
+            try {
+                notificationService.notifySignalementStatusChange(evenement.getIdSignalement(), evenement.getLibelle());
+            } catch (RuntimeException e) {
+                // Ne pas bloquer les notifications suivantes (ex. signalement supprimé depuis)
+                log.error("Notification du signalement {} impossible: {}", evenement.getIdSignalement(), e.getMessage());
+            }
+        }
+        return true;
+    }
+}
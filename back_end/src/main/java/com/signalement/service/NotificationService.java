@@ -1,15 +1,19 @@
 package com.signalement.service;
 
-import com.google.firebase.messaging.FirebaseMessaging;
-import com.google.firebase.messaging.Message;
-import com.google.firebase.messaging.Notification;
+import com.signalement.entity.NotificationFcm;
 import com.signalement.entity.Signalement;
 import com.signalement.entity.UtilisateurFcmTokens;
+import com.signalement.repository.NotificationFcmRepository;
 import com.signalement.repository.SignalementRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -17,96 +21,106 @@ import java.util.List;
 @Slf4j
 public class NotificationService {
 
-    private final FirebaseMessaging firebaseMessaging;
     private final UtilisateurFcmTokensService utilisateurFcmTokensService;
     private final SignalementRepository signalementRepository;
+    private final NotificationFcmRepository notificationFcmRepository;
+    private final NotificationDispatcher notificationDispatcher;
 
     /**
-     * Envoyer une notification à l'utilisateur créateur du signalement
-     * quand le statut change
+     * Notifier l'utilisateur créateur du signalement quand le statut change.
+     * Appelé par NotificationEventConsumer pour chaque événement ETAT_CHANGE validé.
+     * Les notifications (une par device activé) sont enregistrées dans notification_fcm,
+     * puis envoyées par NotificationDispatcher après le commit.
      * 
      * @param signalementId ID du signalement dont le statut a changé
      * @param newEtatLibelle Nouveau statut (ex: "En cours", "Résolu")
-     * @return Liste des device_name qui ont reçu la notification
+     * @return Liste des device_name à qui la notification sera envoyée
      */
+    @Transactional
     public List<String> notifySignalementStatusChange(Integer signalementId, String newEtatLibelle) {
-        try {
-            // Récupérer le signalement
-            Signalement signalement = signalementRepository.findById(signalementId)
-                    .orElseThrow(() -> new IllegalArgumentException("Signalement non trouvé"));
+        // Récupérer le signalement
+        Signalement signalement = signalementRepository.findById(signalementId)
+                .orElseThrow(() -> new IllegalArgumentException("Signalement non trouvé"));
 
-            // Récupérer l'utilisateur créateur
-            if (signalement.getUtilisateur() == null) {
-                log.warn("Signalement {} n'a pas d'utilisateur associé", signalementId);
-                return List.of();
-            }
-
-            Integer userId = signalement.getUtilisateur().getIdUtilisateur();
-
-            // Récupérer seulement les tokens FCM ACTIVÉS de l'utilisateur
-            List<UtilisateurFcmTokens> fcmTokens = utilisateurFcmTokensService
-                    .getEnabledTokensByUtilisateur(userId);
-
-            if (fcmTokens.isEmpty()) {
-                log.info("Aucun token FCM activé trouvé pour l'utilisateur {} du signalement {}", 
-                        userId, signalementId);
-                return List.of();
-            }
-
-            // Construire le titre avec le type de travail
-            String typeTravauxLibelle = signalement.getTypeTravail() != null 
-                    ? signalement.getTypeTravail().getLibelle()
-                    : "Signalement";
-            
-            String title = String.format("Signalement #%d (%s) - Statut changé", 
-                    signalementId, typeTravauxLibelle);
-            String body = String.format("Votre signalement est maintenant %s", newEtatLibelle);
+        // Récupérer l'utilisateur créateur
+        if (signalement.getUtilisateur() == null) {
+            log.warn("Signalement {} n'a pas d'utilisateur associé", signalementId);
+            return List.of();
+        }
 
-            // Envoyer la notification à chaque device de l'utilisateur et collecter les device_name
-            List<String> devicesSent = new java.util.ArrayList<>();
-            for (UtilisateurFcmTokens tokenObj : fcmTokens) {
-                sendNotificationToDevice(tokenObj.getFcmToken(), title, body);
-                devicesSent.add(tokenObj.getDeviceName());
-            }
+        Integer userId = signalement.getUtilisateur().getIdUtilisateur();
 
-            log.info("Notification envoyée à {} device(s) pour le signalement {}: {}", 
-                    fcmTokens.size(), signalementId, devicesSent);
-            
-            return devicesSent;
+        // Récupérer seulement les tokens FCM ACTIVÉS de l'utilisateur
+        List<UtilisateurFcmTokens> fcmTokens = utilisateurFcmTokensService
+                .getEnabledTokensByUtilisateur(userId);
 
-        } catch (Exception e) {
-            log.error("Erreur lors de l'envoi de la notification pour le signalement {}: {}", 
-                    signalementId, e.getMessage(), e);
-            // Ne pas lever d'exception pour ne pas bloquer la mise à jour du signalement
+        if (fcmTokens.isEmpty()) {
+            log.info("Aucun token FCM activé trouvé pour l'utilisateur {} du signalement {}", 
+                    userId, signalementId);
             return List.of();
         }
+
+        // Construire le titre avec le type de travail
+        String typeTravauxLibelle = signalement.getTypeTravail() != null 
+                ? signalement.getTypeTravail().getLibelle()
+                : "Signalement";
+        
+        String title = String.format("Signalement #%d (%s) - Statut changé", 
+                signalementId, typeTravauxLibelle);
+        String body = String.format("Votre signalement est maintenant %s", newEtatLibelle);
+
+        // Mettre en file une notification par device et collecter les device_name
+        LocalDateTime now = LocalDateTime.now();
+        List<NotificationFcm> notifications = new ArrayList<>();
+        List<String> devices = new ArrayList<>();
+        for (UtilisateurFcmTokens tokenObj : fcmTokens) {
+            NotificationFcm notification = new NotificationFcm();
+            notification.setUtilisateurFcmTokens(tokenObj);
+            notification.setTitre(title);
+            notification.setCorps(body);
+            notification.setStatut(NotificationFcm.EN_ATTENTE);
+            notification.setTentatives(0);
+            notification.setProchaineTentative(now);
+            notification.setDateCreation(now);
+            notifications.add(notification);
+            devices.add(tokenObj.getDeviceName());
+        }
+        notificationFcmRepository.saveAll(notifications);
+        reveillerApresCommit();
+
+        log.info("Notification mise en file pour {} device(s) du signalement {}: {}", 
+                fcmTokens.size(), signalementId, devices);
+        return devices;
     }
 
     /**
-     * Envoyer une notification à un device spécifique via son token FCM
-     * 
-     * @param fcmToken Token FCM du device
-     * @param title Titre de la notification
-     * @param body Corps du message
+     * Devices (tokens FCM activés) du créateur du signalement, destinataires d'une notification de changement de statut
      */
-    private void sendNotificationToDevice(String fcmToken, String title, String body) {
-        try {
-            Notification notification = Notification.builder()
-                    .setTitle(title)
-                    .setBody(body)
-                    .build();
-
-            Message message = Message.builder()
-                    .setNotification(notification)
-                    .setToken(fcmToken)
-                    .build();
-
-            String response = firebaseMessaging.send(message);
-            log.debug("Notification envoyée au token {}: {}", fcmToken, response);
+    @Transactional(readOnly = true)
+    public List<String> getDevicesANotifier(Integer signalementId) {
+        return signalementRepository.findById(signalementId)
+                .filter(signalement -> signalement.getUtilisateur() != null)
+                .map(signalement -> utilisateurFcmTokensService
+                        .getEnabledTokensByUtilisateur(signalement.getUtilisateur().getIdUtilisateur())
+                        .stream()
+                        .map(UtilisateurFcmTokens::getDeviceName)
+                        .toList())
+                .orElse(List.of());
+    }
 
-        } catch (Exception e) {
-            log.error("Erreur lors de l'envoi de la notification au token {}: {}", 
-                    fcmToken, e.getMessage());
+    /**
+     * Déclencher l'envoi dès que les notifications sont validées (sinon le dispatcher ne les verrait pas)
+     */
+    private void reveillerApresCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    notificationDispatcher.reveiller();
+                }
+            });
+        } else {
+            notificationDispatcher.reveiller();
         }
     }
 }
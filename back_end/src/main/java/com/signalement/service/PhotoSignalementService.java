@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.PhotoSignalement;
 import com.signalement.entity.Signalement;
@@ -28,19 +27,31 @@ public class PhotoSignalementService {
     private final PhotoSignalementRepository photoSignalementRepository;
     private final SignalementRepository signalementRepository;
     private final FirebaseConversionService firebaseConversionService;
-    private final Firestore firestore;
+    private final FirebaseIdentityResolver identityResolver;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
+
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<PhotoSignalement> UPSERT =
+            FirebaseUpsertWriter.<PhotoSignalement>table("photo_signalement")
+            .id("id_photo_signalement", PhotoSignalement::getIdPhotoSignalement)
+            .colonne("url_photo", PhotoSignalement::getUrlPhoto)
+            .colonneFacultative("date_ajout", PhotoSignalement::getDateAjout, "CURRENT_DATE")
+            .colonne("id_signalement", p -> p.getSignalement().getIdSignalement())
+            .lastUpdate("lats_update", PhotoSignalement::getLastUpdate);
 
     /**
      * Synchroniser les photos depuis Firebase (Tâche 31)
      * Récupère les photos modifiées après la date lastSyncDate et les met à jour en BD
+     * Documents lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
      */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("photo_signalement");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        // Références chargées en bloc pour vérifier les clés étrangères ; le Last-Write-Wins est décidé par l'upsert
+        Map<Integer, Signalement> signalements = identityResolver.prefetch(documents, "id_signalement", signalementRepository, Signalement::getIdSignalement);
 
-        int synced = 0;
+        FirebaseUpsertWriter.Lot<PhotoSignalement> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -50,37 +61,33 @@ public class PhotoSignalementService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = photoSignalementRepository.findById(id);
+                PhotoSignalement photo = new PhotoSignalement();
+                photo.setIdPhotoSignalement(id);
+                photo.setUrlPhoto(doc.getString("url_photo"));
+                
+                // Récupérer la date d'ajout depuis Firebase (en millisecondes)
+                Long dateAjoutMs = firebaseConversionService.getLongValue(doc, "date_ajout");
+                if (dateAjoutMs != null) {
+                    LocalDate dateAjout = LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(dateAjoutMs), ZoneId.systemDefault()).toLocalDate();
+                    photo.setDateAjout(dateAjout);
+                }
                 
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    PhotoSignalement photo = existing.orElse(new PhotoSignalement());
-                    photo.setIdPhotoSignalement(id);
-                    photo.setUrlPhoto(doc.getString("url_photo"));
-                    
-                    // Récupérer la date d'ajout depuis Firebase (en millisecondes)
-                    Long dateAjoutMs = firebaseConversionService.getLongValue(doc, "date_ajout");
-                    if (dateAjoutMs != null) {
-                        LocalDate dateAjout = LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(dateAjoutMs), ZoneId.systemDefault()).toLocalDate();
-                        photo.setDateAjout(dateAjout);
-                    }
-                    
-                    // Récupérer le signalement associé
-                    Integer signalementId = firebaseConversionService.getLongAsInteger(doc, "id_signalement");
-                    if (signalementId != null) {
-                        Signalement signalement = signalementRepository.findById(signalementId).orElse(null);
-                        if (signalement != null) {
-                            photo.setSignalement(signalement);
-                            photo.setLastUpdate(firebaseLastUpdate);
-                            photoSignalementRepository.save(photo);
-                            synced++;
-                        }
-                    }
+                // Récupérer le signalement associé
+                Integer signalementId = firebaseConversionService.getLongAsInteger(doc, "id_signalement");
+                Signalement signalement = signalementId != null ? signalements.get(signalementId) : null;
+                if (signalement != null) {
+                    photo.setSignalement(signalement);
+                    photo.setLastUpdate(firebaseLastUpdate);
+                    lot.ajouter(photo);
+                } else {
+                    lot.ignorer(doc);
                 }
             }
         }
-        log.info("{} photos synchronisées depuis Firebase", synced);
-        return synced;
+        FirebaseUpsertWriter.Resultat resultat = lot.resultat();
+        log.info("{} photos synchronisées depuis Firebase", resultat.lignes());
+        return resultat;
     }
 
     /**
@@ -88,8 +95,12 @@ public class PhotoSignalementService {
      * Envoie toutes les photos de la BD vers Firebase
      */
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<PhotoSignalement> photos = photoSignalementRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<PhotoSignalement> photos = lastPushDate == null
+            ? photoSignalementRepository.findAll()
+            : photoSignalementRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("photo_signalement");
         for (PhotoSignalement photo : photos) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", photo.getIdPhotoSignalement());
@@ -107,11 +118,10 @@ public class PhotoSignalementService {
                 data.put("id_signalement", photo.getSignalement().getIdSignalement());
             }
             
-            firestore.collection("photo_signalement")
-                .document(String.valueOf(photo.getIdPhotoSignalement()))
-                .set(data).get();
+            lot.set(String.valueOf(photo.getIdPhotoSignalement()), data);
         }
-        log.info("{} photos recréées dans Firebase", photos.size());
+        lot.terminer();
+        log.info("{} photos envoyées vers Firebase", photos.size());
         return photos.size();
     }
 }
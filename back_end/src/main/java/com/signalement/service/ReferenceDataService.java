@@ -0,0 +1,213 @@
+package com.signalement.service;
+
+import com.signalement.entity.EtatSignalement;
+import com.signalement.entity.StatutAssignation;
+import com.signalement.entity.TypeTravail;
+import com.signalement.entity.TypeUtilisateur;
+import com.signalement.repository.EtatSignalementRepository;
+import com.signalement.repository.StatutAssignationRepository;
+import com.signalement.repository.TypeTravailRepository;
+import com.signalement.repository.TypeUtilisateurRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Registre en mémoire des tables de référence (états, types de travail, statuts d'assignation,
+ * types d'utilisateur). Ces tables ne changent que par la synchronisation Firebase :
+ * elles sont chargées au démarrage puis rechargées après chaque import (rafraichir()).
+ * - Recherche par id ou par libellé (insensible à la casse) sans requête
+ * - Instantané immuable remplacé en bloc : une lecture voit toujours un ensemble cohérent
+ * - Les entités retournées sont des copies détachées, utilisables comme référence de clé étrangère
+ * - ETag par table, calculé sur le contenu (id, libellé, last_update)
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReferenceDataService {
+
+    /**
+     * Contenu d'une table de référence
+     */
+    private record Table<T>(List<T> liste, Map<Integer, T> parId, Map<String, T> parLibelle, String etag) {
+    }
+
+    /**
+     * Liste d'une table de référence et son ETag, lus dans le même instantané
+     */
+    public record Version<T>(List<T> liste, String etag) {
+    }
+
+    private record Instantane(Table<EtatSignalement> etats,
+                              Table<TypeTravail> typesTravail,
+                              Table<StatutAssignation> statuts,
+                              Table<TypeUtilisateur> typesUtilisateur) {
+    }
+
+    private final EtatSignalementRepository etatSignalementRepository;
+    private final TypeTravailRepository typeTravailRepository;
+    private final StatutAssignationRepository statutAssignationRepository;
+    private final TypeUtilisateurRepository typeUtilisateurRepository;
+
+    private volatile Instantane instantane;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialiser() {
+        charger();
+    }
+
+    /**
+     * Recharger les tables de référence (après le commit si appelé dans une transaction)
+     */
+    public void rafraichir() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    charger();
+                }
+            });
+        } else {
+            charger();
+        }
+    }
+
+    // ======== ÉTATS DE SIGNALEMENT ========
+
+    public List<EtatSignalement> getEtats() {
+        return copies(instantane().etats(), ReferenceDataService::copie);
+    }
+
+    public Optional<EtatSignalement> getEtat(Integer id) {
+        return Optional.ofNullable(id).map(instantane().etats().parId()::get).map(ReferenceDataService::copie);
+    }
+
+    public Optional<EtatSignalement> getEtatByLibelle(String libelle) {
+        return parLibelle(instantane().etats(), libelle).map(ReferenceDataService::copie);
+    }
+
+    public Version<EtatSignalement> getEtatsVersion() {
+        return version(instantane().etats(), ReferenceDataService::copie);
+    }
+
+    // ======== TYPES DE TRAVAIL ========
+
+    public List<TypeTravail> getTypesTravail() {
+        return copies(instantane().typesTravail(), ReferenceDataService::copie);
+    }
+
+    public Optional<TypeTravail> getTypeTravail(Integer id) {
+        return Optional.ofNullable(id).map(instantane().typesTravail().parId()::get).map(ReferenceDataService::copie);
+    }
+
+    public Version<TypeTravail> getTypesTravailVersion() {
+        return version(instantane().typesTravail(), ReferenceDataService::copie);
+    }
+
+    // ======== STATUTS D'ASSIGNATION ========
+
+    public Optional<StatutAssignation> getStatutAssignation(Integer id) {
+        return Optional.ofNullable(id).map(instantane().statuts().parId()::get).map(ReferenceDataService::copie);
+    }
+
+    // ======== TYPES D'UTILISATEUR ========
+
+    public List<TypeUtilisateur> getTypesUtilisateur() {
+        return copies(instantane().typesUtilisateur(), ReferenceDataService::copie);
+    }
+
+    public Optional<TypeUtilisateur> getTypeUtilisateur(Integer id) {
+        return Optional.ofNullable(id).map(instantane().typesUtilisateur().parId()::get).map(ReferenceDataService::copie);
+    }
+
+    public Optional<TypeUtilisateur> getTypeUtilisateurByLibelle(String libelle) {
+        return parLibelle(instantane().typesUtilisateur(), libelle).map(ReferenceDataService::copie);
+    }
+
+    private Instantane instantane() {
+        Instantane courant = instantane;
+        if (courant == null) {
+            // Appel avant ApplicationReadyEvent : chargement à la demande
+            courant = charger();
+        }
+        return courant;
+    }
+
+    private synchronized Instantane charger() {
+        Instantane nouveau = new Instantane(
+                table(etatSignalementRepository.findAll(), EtatSignalement::getIdEtatSignalement,
+                        EtatSignalement::getLibelle, e -> String.valueOf(e.getLastUpdate())),
+                table(typeTravailRepository.findAll(), TypeTravail::getIdTypeTravail,
+                        TypeTravail::getLibelle, t -> String.valueOf(t.getLastUpdate())),
+                table(statutAssignationRepository.findAll(), StatutAssignation::getIdStatutAssignation,
+                        StatutAssignation::getLibelle, s -> String.valueOf(s.getLastUpdate())),
+                table(typeUtilisateurRepository.findAll(), TypeUtilisateur::getIdTypeUtilisateur,
+                        TypeUtilisateur::getLibelle, t -> String.valueOf(t.getLastUpdate())));
+        instantane = nouveau;
+        log.info("Tables de référence chargées : {} état(s), {} type(s) de travail, {} statut(s), {} type(s) d'utilisateur",
+                nouveau.etats().liste().size(), nouveau.typesTravail().liste().size(),
+                nouveau.statuts().liste().size(), nouveau.typesUtilisateur().liste().size());
+        return nouveau;
+    }
+
+    private static <T> Table<T> table(List<T> lignes, Function<T, Integer> id,
+                                      Function<T, String> libelle, Function<T, String> lastUpdate) {
+        List<T> liste = lignes.stream().sorted(Comparator.comparing(id)).toList();
+        Map<Integer, T> parId = new HashMap<>();
+        Map<String, T> parLibelle = new HashMap<>();
+        StringBuilder contenu = new StringBuilder();
+        for (T ligne : liste) {
+            parId.put(id.apply(ligne), ligne);
+            if (libelle.apply(ligne) != null) {
+                parLibelle.put(libelle.apply(ligne).toLowerCase(Locale.ROOT), ligne);
+            }
+            contenu.append(id.apply(ligne)).append('|').append(libelle.apply(ligne))
+                    .append('|').append(lastUpdate.apply(ligne)).append('\n');
+        }
+        String etag = "\"" + DigestUtils.md5DigestAsHex(contenu.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+        return new Table<>(liste, Map.copyOf(parId), Map.copyOf(parLibelle), etag);
+    }
+
+    private static <T> Optional<T> parLibelle(Table<T> table, String libelle) {
+        return Optional.ofNullable(libelle).map(l -> table.parLibelle().get(l.toLowerCase(Locale.ROOT)));
+    }
+
+    private static <T> List<T> copies(Table<T> table, UnaryOperator<T> copie) {
+        return table.liste().stream().map(copie).toList();
+    }
+
+    private static <T> Version<T> version(Table<T> table, UnaryOperator<T> copie) {
+        return new Version<>(copies(table, copie), table.etag());
+    }
+
+    private static EtatSignalement copie(EtatSignalement e) {
+        return new EtatSignalement(e.getIdEtatSignalement(), e.getLibelle(), e.getLastUpdate());
+    }
+
+    private static TypeTravail copie(TypeTravail t) {
+        return new TypeTravail(t.getIdTypeTravail(), t.getLibelle(), t.getLastUpdate());
+    }
+
+    private static StatutAssignation copie(StatutAssignation s) {
+        return new StatutAssignation(s.getIdStatutAssignation(), s.getLibelle(), s.getLastUpdate());
+    }
+
+    private static TypeUtilisateur copie(TypeUtilisateur t) {
+        return new TypeUtilisateur(t.getIdTypeUtilisateur(), t.getLibelle(), t.getLastUpdate());
+    }
+}
@@ -0,0 +1,98 @@
+package com.signalement.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.signalement.entity.Utilisateur;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Cache mémoire token -> session résolue, devant la table session.
+ * - Taille bornée (session.cache.max-size)
+ * - Une entrée expire au plus tard à la date de fin de la session, et au plus tard après session.cache.ttl.seconds
+ * - SessionService l'invalide à la déconnexion, au blocage, au rafraîchissement et à la purge des sessions expirées
+ */
+@Service
+@Slf4j
+public class SessionCacheService {
+
+    /**
+     * Session résolue : utilisateur (avec son type chargé) et date de fin de la session
+     */
+    public record CachedSession(Utilisateur utilisateur, LocalDateTime dateFin) {
+        public boolean isValid() {
+            return dateFin.isAfter(LocalDateTime.now());
+        }
+    }
+
+    private final Cache<String, CachedSession> cache;
+
+    public SessionCacheService(@Value("${session.cache.max-size:10000}") long maxSize,
+                               @Value("${session.cache.ttl.seconds:300}") long ttlSeconds) {
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, CachedSession>() {
+                    @Override
+                    public long expireAfterCreate(String token, CachedSession session, long currentTime) {
+                        Duration restant = Duration.between(LocalDateTime.now(), session.dateFin());
+                        if (restant.isNegative()) {
+                            return 0;
+                        }
+                        return restant.compareTo(ttl) < 0 ? restant.toNanos() : ttl.toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, CachedSession session, long currentTime, long currentDuration) {
+                        return expireAfterCreate(token, session, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, CachedSession session, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Récupérer la session d'un token, en la chargeant via `loader` si elle n'est pas en cache.
+     * Le loader retourne null si le token est inconnu (rien n'est alors mis en cache).
+     * @return la session si elle existe et n'est pas expirée
+     */
+    public Optional<CachedSession> get(String token, Function<String, CachedSession> loader) {
+        return Optional.ofNullable(cache.get(token, loader))
+                .filter(CachedSession::isValid);
+    }
+
+    public void invalidate(String token) {
+        cache.invalidate(token);
+    }
+
+    /**
+     * Invalider toutes les sessions en cache d'un utilisateur
+     */
+    public void invalidateUtilisateur(Integer idUtilisateur) {
+        cache.asMap().values().removeIf(s -> s.utilisateur().getIdUtilisateur().equals(idUtilisateur));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Retirer les sessions expirées encore présentes dans le cache
+     */
+    public void evictExpired() {
+        cache.asMap().values().removeIf(s -> !s.isValid());
+        cache.cleanUp();
+        log.debug("Cache sessions: {} entrée(s) après purge", cache.estimatedSize());
+    }
+}
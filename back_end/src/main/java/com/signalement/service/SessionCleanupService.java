@@ -16,6 +16,7 @@ public class SessionCleanupService {
     private static final Logger logger = LoggerFactory.getLogger(SessionCleanupService.class);
 
     private final SessionRepository sessionRepository;
+    private final SessionService sessionService;
 
     // Runs every `session.cleanup.rate.millis` milliseconds (default 3600000 = 1h)
     @Scheduled(fixedRateString = "${session.cleanup.rate.millis:3600000}")
@@ -26,5 +27,6 @@ public class SessionCleanupService {
         if (deleted > 0) {
             logger.info("Purge expired sessions: {} deleted", deleted);
         }
+        sessionService.evictExpiredSessions();
     }
 }
@@ -1,15 +1,19 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.Session;
 import com.signalement.entity.Utilisateur;
 import com.signalement.repository.SessionRepository;
 import com.signalement.repository.UtilisateurRepository;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -26,52 +30,118 @@ import java.util.concurrent.ExecutionException;
 @Slf4j
 public class SessionService {
 
+    /**
+     * Attributs de requête posés par SessionFilter une fois le token validé :
+     * les contrôleurs et services réutilisent l'utilisateur résolu au lieu de le rechercher à nouveau
+     */
+    public static final String TOKEN_ATTRIBUTE = "com.signalement.session.token";
+    public static final String UTILISATEUR_ATTRIBUTE = "com.signalement.session.utilisateur";
+
     private final SessionRepository sessionRepository;
     private final UtilisateurRepository utilisateurRepository;
     private final FirebaseConversionService firebaseConversionService;
-    private final Firestore firestore;
+    private final FirebaseIdentityResolver identityResolver;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
+    private final SessionCacheService sessionCache;
+    private final SignedSessionTokenService signedTokens;
 
+    /**
+     * Créer une session. En mode session.mode=signed le token est un jeton signé (validable sans la base) ;
+     * la ligne session est tout de même enregistrée pour l'historique et la synchronisation Firebase.
+     */
     @Transactional
     public Session createSession(Utilisateur utilisateur, int durationHours) {
+        LocalDateTime debut = LocalDateTime.now();
+        LocalDateTime fin = debut.plusHours(durationHours);
         Session session = new Session();
-        session.setToken(UUID.randomUUID().toString());
+        if (signedTokens.isEnabled()) {
+            session.setToken(signedTokens.emettre(utilisateur,
+                    debut.atZone(ZoneId.systemDefault()).toInstant(),
+                    fin.atZone(ZoneId.systemDefault()).toInstant()));
+        } else {
+            session.setToken(UUID.randomUUID().toString());
+        }
         session.setUtilisateur(utilisateur);
-        session.setDateDebut(LocalDateTime.now());
-        session.setDateFin(LocalDateTime.now().plusHours(durationHours));
+        session.setDateDebut(debut);
+        session.setDateFin(fin);
         return sessionRepository.save(session);
     }
 
+    public boolean isSignedTokenMode() {
+        return signedTokens.isEnabled();
+    }
+
     @Transactional(readOnly = true)
     public Optional<Session> getSessionByToken(String token) {
         return sessionRepository.findByToken(token);
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * En mode jeton signé : vérification de la signature, de l'expiration et de la révocation, sans accès à la base
+     */
     public boolean isSessionValid(String token) {
-        return sessionRepository.findByToken(token)
-                .map(session -> session.getDateFin().isAfter(LocalDateTime.now()))
-                .orElse(false);
+        if (signedTokens.isEnabled()) {
+            return signedTokens.verifier(token).isPresent();
+        }
+        return resolveSession(token).isPresent();
     }
 
     @Transactional
     public void deleteSession(Integer id) {
-        sessionRepository.deleteById(id);
+        sessionRepository.findById(id).ifPresent(session -> {
+            sessionRepository.delete(session);
+            signedTokens.revoquer(session.getToken());
+            evict(() -> sessionCache.invalidate(session.getToken()));
+        });
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * Utilisateur d'une session valide.
+     * Réutilise l'utilisateur déjà résolu par SessionFilter pour la requête courante, sinon passe par le cache.
+     */
     public Optional<Utilisateur> getUtilisateurByToken(String token) {
-        return sessionRepository.findByToken(token)
-                .filter(session -> session.getDateFin().isAfter(LocalDateTime.now()))
-                .map(Session::getUtilisateur);
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            HttpServletRequest request = attributes.getRequest();
+            if (token != null && token.equals(request.getAttribute(TOKEN_ATTRIBUTE))) {
+                return Optional.ofNullable((Utilisateur) request.getAttribute(UTILISATEUR_ATTRIBUTE));
+            }
+        }
+        return resolveSession(token).map(SessionCacheService.CachedSession::utilisateur);
+    }
+
+    /**
+     * Résoudre un token en session valide (cache mémoire, puis table session si absent du cache).
+     * En mode jeton signé, le jeton est vérifié à chaque appel et seul l'utilisateur est chargé depuis la base.
+     */
+    public Optional<SessionCacheService.CachedSession> resolveSession(String token) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+        if (signedTokens.isEnabled()) {
+            return signedTokens.verifier(token)
+                    .flatMap(jeton -> sessionCache.get(token, t -> utilisateurRepository.findWithTypeById(jeton.idUtilisateur())
+                            .map(utilisateur -> new SessionCacheService.CachedSession(utilisateur,
+                                    LocalDateTime.ofInstant(jeton.expiration(), ZoneId.systemDefault())))
+                            .orElse(null)));
+        }
+        return sessionCache.get(token, t -> sessionRepository.findWithUtilisateurByToken(t)
+                .map(session -> new SessionCacheService.CachedSession(session.getUtilisateur(), session.getDateFin()))
+                .orElse(null));
     }
 
     @Transactional
     public boolean refreshSession(String token, int additionalHours) {
+        if (signedTokens.isEnabled()) {
+            // L'expiration fait partie de la signature : un jeton signé ne peut pas être prolongé
+            return false;
+        }
         Optional<Session> opt = sessionRepository.findByToken(token);
         if (opt.isPresent()) {
             Session session = opt.get();
             session.setDateFin(session.getDateFin().plusHours(additionalHours));
             sessionRepository.save(session);
+            evict(() -> sessionCache.invalidate(token));
             return true;
         }
         return false;
@@ -80,21 +150,72 @@ public class SessionService {
     @Transactional
     public void invalidateSession(String token) {
         sessionRepository.findByToken(token).ifPresent(sessionRepository::delete);
+        signedTokens.revoquer(token);
+        evict(() -> sessionCache.invalidate(token));
     }
 
     @Transactional
     public long invalidateSessionsForUser(Utilisateur utilisateur) {
-        return sessionRepository.deleteByUtilisateur(utilisateur);
+        long deleted = sessionRepository.deleteByUtilisateur(utilisateur);
+        signedTokens.revoquerUtilisateur(utilisateur.getIdUtilisateur());
+        evictUtilisateur(utilisateur.getIdUtilisateur());
+        return deleted;
+    }
+
+    /**
+     * Retirer du cache les sessions d'un utilisateur (ex: après modification de son compte)
+     */
+    public void evictUtilisateur(Integer idUtilisateur) {
+        evict(() -> sessionCache.invalidateUtilisateur(idUtilisateur));
+    }
+
+    /**
+     * Retirer du cache les sessions expirées (appelé par la purge périodique de la table session),
+     * ainsi que les révocations de jetons signés devenues inutiles
+     */
+    public void evictExpiredSessions() {
+        sessionCache.evictExpired();
+        signedTokens.purgerRevocations();
+    }
+
+    /**
+     * Invalider le cache tout de suite, puis à nouveau après le commit :
+     * une lecture concurrente pendant la transaction aurait pu y remettre l'ancienne session
+     */
+    private void evict(Runnable invalidation) {
+        invalidation.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        }
     }
+
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<Session> UPSERT =
+            FirebaseUpsertWriter.<Session>table("session")
+            .id("id_session", Session::getIdSession)
+            .colonne("token", Session::getToken)
+            .colonneFacultative("date_debut", Session::getDateDebut)
+            .colonneFacultative("date_fin", Session::getDateFin)
+            .colonne("id_utilisateur", s -> s.getUtilisateur().getIdUtilisateur())
+            .lastUpdate("last_update", Session::getLastUpdate);
+
     // ======== FIREBASE SYNC METHODS (Tâches 31 & 32) ========
     
+    /**
+     * Appliquer des documents Firebase, lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
+     */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("sessions");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        // Références chargées en bloc pour vérifier les clés étrangères ; le Last-Write-Wins est décidé par l'upsert
+        Map<Integer, Utilisateur> utilisateurs = identityResolver.prefetch(documents, "id_utilisateur", utilisateurRepository, Utilisateur::getIdUtilisateur);
 
-        int synced = 0;
+        FirebaseUpsertWriter.Lot<Session> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -104,42 +225,48 @@ public class SessionService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = sessionRepository.findById(id);
+                Session session = new Session();
+                session.setIdSession(id);
+                session.setToken(doc.getString("token"));
+                
+                Long dateDebutMs = firebaseConversionService.getLongValue(doc, "date_debut");
+                if (dateDebutMs != null) {
+                    session.setDateDebut(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(dateDebutMs), ZoneId.systemDefault()));
+                }
                 
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    Session session = existing.orElse(new Session());
-                    session.setIdSession(id);
-                    session.setToken(doc.getString("token"));
-                    
-                    Long dateDebutMs = firebaseConversionService.getLongValue(doc, "date_debut");
-                    if (dateDebutMs != null) {
-                        session.setDateDebut(LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(dateDebutMs), ZoneId.systemDefault()));
-                    }
-                    
-                    Long dateFinMs = firebaseConversionService.getLongValue(doc, "date_fin");
-                    if (dateFinMs != null) {
-                        session.setDateFin(LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(dateFinMs), ZoneId.systemDefault()));
-                    }
-                    
-                    Integer utilisateurId = firebaseConversionService.getLongAsInteger(doc, "id_utilisateur");
-                    Utilisateur utilisateur = utilisateurRepository.findById(utilisateurId).orElse(null);
-                    
-                    if (utilisateur != null) {
-                        session.setUtilisateur(utilisateur);
-                        sessionRepository.save(session);
-                        synced++;
-                    }
+                Long dateFinMs = firebaseConversionService.getLongValue(doc, "date_fin");
+                if (dateFinMs != null) {
+                    session.setDateFin(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(dateFinMs), ZoneId.systemDefault()));
+                }
+                
+                Integer utilisateurId = firebaseConversionService.getLongAsInteger(doc, "id_utilisateur");
+                Utilisateur utilisateur = utilisateurs.get(utilisateurId);
+                
+                if (utilisateur != null) {
+                    session.setUtilisateur(utilisateur);
+                    session.setLastUpdate(firebaseLastUpdate);
+                    lot.ajouter(session);
+                } else {
+                    lot.ignorer(doc);
                 }
             }
         }
-        return synced;
+        FirebaseUpsertWriter.Resultat resultat = lot.resultat();
+        if (resultat.lignes() > 0) {
+            evict(sessionCache::invalidateAll);
+        }
+        return resultat;
     }
 
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<Session> sessions = sessionRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<Session> sessions = lastPushDate == null
+            ? sessionRepository.findAll()
+            : sessionRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("sessions");
         for (Session session : sessions) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", session.getIdSession());
@@ -159,11 +286,10 @@ public class SessionService {
                 .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
             data.put("id_utilisateur", session.getUtilisateur().getIdUtilisateur());
             
-            firestore.collection("sessions")
-                .document(String.valueOf(session.getIdSession()))
-                .set(data).get();
+            lot.set(String.valueOf(session.getIdSession()), data);
         }
-        log.info("{} sessions recréées", sessions.size());
+        lot.terminer();
+        log.info("{} sessions envoyées vers Firebase", sessions.size());
         return sessions.size();
     }
 }
@@ -0,0 +1,92 @@
+package com.signalement.service;
+
+import com.signalement.dto.SignalementClusterDTO;
+import com.signalement.repository.SignalementRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Regroupement des signalements pour la carte visiteur.
+ * Les signalements de l'emprise affichée sont regroupés en base par cellule de grille
+ * dont la taille dépend du zoom (map.cluster.cell.pixels pixels à l'écran), et au minimum
+ * 1/MAX_CELLULES_COTE de l'emprise quel que soit le zoom demandé :
+ * la taille de la réponse dépend de l'écran et non du nombre de signalements.
+ */
+@Service
+@RequiredArgsConstructor
+public class SignalementClusterService {
+
+    private static final int ZOOM_MAX = 22;
+    // Nombre maximal de cellules sur la largeur et sur la hauteur de l'emprise
+    private static final int MAX_CELLULES_COTE = 64;
+
+    private final SignalementRepository signalementRepository;
+
+    @Value("${map.cluster.cell.pixels:60}")
+    private int pixelsParCellule;
+
+    @Transactional(readOnly = true)
+    public List<SignalementClusterDTO> getClusters(double minLon, double minLat, double maxLon, double maxLat,
+                                                   int zoom, Integer etatId, Integer typeTravailId) {
+        validerCoordonnees(minLat, minLon);
+        validerCoordonnees(maxLat, maxLon);
+        if (minLon >= maxLon || minLat >= maxLat) {
+            throw new IllegalArgumentException("Emprise invalide : min doit être inférieur à max");
+        }
+        // Un zoom incohérent avec l'emprise (ex: monde entier au zoom 22) ne multiplie pas les cellules
+        double taille = Math.max(tailleCellule(Math.max(0, Math.min(zoom, ZOOM_MAX))),
+                Math.max(maxLon - minLon, maxLat - minLat) / MAX_CELLULES_COTE);
+
+        Map<String, SignalementClusterDTO> clusters = new LinkedHashMap<>();
+        Map<String, double[]> sommes = new LinkedHashMap<>();
+        for (SignalementRepository.ClusterCellule ligne : signalementRepository.clusterByGrid(
+                minLon, minLat, maxLon, maxLat, taille, etatId, typeTravailId)) {
+            String cle = ligne.getCelluleX() + ":" + ligne.getCelluleY();
+            SignalementClusterDTO cluster = clusters.computeIfAbsent(cle, c -> {
+                SignalementClusterDTO dto = new SignalementClusterDTO();
+                dto.setTotal(0L);
+                dto.setParEtat(new LinkedHashMap<>());
+                dto.setIdSignalement(ligne.getIdSignalement());
+                return dto;
+            });
+            cluster.setTotal(cluster.getTotal() + ligne.getTotal());
+            cluster.getParEtat().merge(ligne.getEtat() != null ? ligne.getEtat() : "Inconnu", ligne.getTotal(), Long::sum);
+            double[] somme = sommes.computeIfAbsent(cle, c -> new double[2]);
+            somme[0] += ligne.getSommeLongitude();
+            somme[1] += ligne.getSommeLatitude();
+        }
+
+        List<SignalementClusterDTO> resultat = new ArrayList<>(clusters.size());
+        clusters.forEach((cle, cluster) -> {
+            double[] somme = sommes.get(cle);
+            cluster.setLongitude(somme[0] / cluster.getTotal());
+            cluster.setLatitude(somme[1] / cluster.getTotal());
+            if (cluster.getTotal() > 1) {
+                cluster.setIdSignalement(null);
+            }
+            resultat.add(cluster);
+        });
+        return resultat;
+    }
+
+    private void validerCoordonnees(double latitude, double longitude) {
+        if (!Double.isFinite(latitude) || !Double.isFinite(longitude)
+                || latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new IllegalArgumentException("Coordonnées invalides : latitude entre -90 et 90, longitude entre -180 et 180");
+        }
+    }
+
+    /**
+     * Taille (en degrés) d'une cellule de pixelsParCellule pixels au zoom donné (tuiles de 256 pixels)
+     */
+    private double tailleCellule(int zoom) {
+        return 360.0 / (256.0 * Math.pow(2, zoom)) * pixelsParCellule;
+    }
+}
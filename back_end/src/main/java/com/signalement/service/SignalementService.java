@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.dto.AssignEnterpriseRequest;
 import com.signalement.dto.CreateSignalementRequest;
@@ -8,6 +7,7 @@ import com.signalement.dto.EntrepriseConcernerDTO;
 import com.signalement.dto.SignalementProgressDTO;
 import com.signalement.dto.UpdateAssignmentStatusRequest;
 import com.signalement.dto.UpdateSignalementRequest;
+import com.signalement.entity.DomainEvent;
 import com.signalement.entity.Entreprise;
 import com.signalement.entity.EntrepriseConcerner;
 import com.signalement.entity.EtatSignalement;
@@ -19,11 +19,9 @@ import com.signalement.entity.TypeTravail;
 import com.signalement.entity.Utilisateur;
 import com.signalement.repository.EntrepriseConcernerRepository;
 import com.signalement.repository.EntrepriseRepository;
-import com.signalement.repository.EtatSignalementRepository;
 import com.signalement.repository.HistoriqueEtatSignalementRepository;
 import com.signalement.repository.HistoriqueStatutAssignationRepository;
 import com.signalement.repository.SignalementRepository;
-import com.signalement.repository.StatutAssignationRepository;
 import com.signalement.repository.TypeTravailRepository;
 import com.signalement.repository.UtilisateurRepository;
 
@@ -32,16 +30,23 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.PrecisionModel;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 
@@ -53,18 +58,27 @@ import lombok.extern.slf4j.Slf4j;
 public class SignalementService {
 
     private final SignalementRepository signalementRepository;
-    private final EtatSignalementRepository etatSignalementRepository;
     private final TypeTravailRepository typeTravailRepository;
+    private final ReferenceDataService referenceDataService;
     private final HistoriqueEtatSignalementRepository historiqueEtatSignalementRepository;
     private final EntrepriseRepository entrepriseRepository;
     private final EntrepriseConcernerRepository entrepriseConcernerRepository;
-    private final StatutAssignationRepository statutAssignationRepository;
     private final FirebaseConversionService firebaseConversionService;
     private final UtilisateurRepository utilisateurRepository;
     private final HistoriqueStatutAssignationRepository historiqueStatutAssignationRepository;
     private final NotificationService notificationService;
-    private final Firestore firestore;
+    private final EtatCourantSignalementService etatCourantSignalementService;
+    private final DomainEventPublisher domainEventPublisher;
+    private final FirebaseIdentityResolver identityResolver;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
     private static final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+    private static final String CURSOR_NEXT = "n";
+    private static final String CURSOR_PREV = "p";
+    // Rayon maximal de la recherche autour d'un point (mètres)
+    private static final double RAYON_MAX_METRES = 50_000;
+    // Nombre maximal de signalements par demande de détails groupée
+    private static final int DETAILS_MAX_IDS = 200;
 
     @Transactional(readOnly = true)
     public List<Signalement> getAllSignalements() {
@@ -83,47 +97,122 @@ public class SignalementService {
 
     @Transactional(readOnly = true)
     public List<com.signalement.dto.SignalementDTO> getSignalementsDtoByUtilisateur(Utilisateur utilisateur) {
-        return signalementRepository.findByUtilisateur(utilisateur)
-                .stream()
-                .map(this::convertToEnrichedDTO)
-                .toList();
+        return toDTOs(signalementRepository.findResumesByUtilisateur(utilisateur.getIdUtilisateur()));
     }
 
     @Transactional(readOnly = true)
     public List<com.signalement.dto.SignalementDTO> getAllSignalementsDto() {
-        return signalementRepository.findAll()
-                .stream()
-                .map(this::convertToEnrichedDTO)
-                .toList();
+        return toDTOs(signalementRepository.findResumesByEtatCourantAndTypeTravail(null, null));
     }
 
     @Transactional(readOnly = true)
     public List<com.signalement.dto.SignalementDTO> getAllSignalementsDtoWithFilters(Integer etatId, Integer typeTravauxId) {
-        List<Signalement> allSignalements = signalementRepository.findAll();
-        
-        // Filter by état if specified
-        if (etatId != null) {
-            allSignalements = allSignalements.stream()
-                    .filter(s -> {
-                        EtatSignalement currentEtat = getCurrentEtat(s.getIdSignalement());
-                        return currentEtat != null && currentEtat.getIdEtatSignalement().equals(etatId);
-                    })
-                    .toList();
+        // Filtres état courant / type appliqués en SQL via la projection etat_courant_signalement
+        return toDTOs(signalementRepository.findResumesByEtatCourantAndTypeTravail(etatId, typeTravauxId));
+    }
+
+    /**
+     * Page de signalements filtrés par état courant / type de travail.
+     * Filtre, tri (plus récents d'abord) et pagination faits en SQL : seule la page demandée est chargée.
+     * @param page Numéro de page (commence à 1)
+     * @param limit Nombre d'éléments par page
+     */
+    @Transactional(readOnly = true)
+    public Page<com.signalement.dto.SignalementDTO> getSignalementsDtoPage(Integer etatId, Integer typeTravauxId, int page, int limit) {
+        // Tri (plus récents d'abord) dans la requête
+        PageRequest pageRequest = PageRequest.of(page - 1, limit);
+        return signalementRepository
+                .findPageByEtatCourantAndTypeTravail(etatId, typeTravauxId, pageRequest)
+                .map(this::toDTO);
+    }
+
+    /**
+     * Page de signalements par curseur (keyset sur date_creation, id_signalement).
+     * Contrairement à l'offset, le coût ne dépend pas de la position et les éléments ne se décalent pas
+     * quand de nouveaux signalements arrivent.
+     * @param cursor Curseur opaque "next" ou "prev" renvoyé par une page précédente
+     * @throws IllegalArgumentException si le curseur est invalide
+     */
+    @Transactional(readOnly = true)
+    public com.signalement.dto.SignalementCursorPageDTO getSignalementsDtoByCursor(Integer etatId, Integer typeTravauxId, String cursor, int limit) {
+        String[] parts = decodeCursor(cursor);
+        boolean suivant = CURSOR_NEXT.equals(parts[0]);
+        LocalDateTime dateCreation = LocalDateTime.parse(parts[1]);
+        Integer idSignalement = Integer.valueOf(parts[2]);
+
+        // On demande un élément de plus pour savoir s'il reste des signalements dans ce sens
+        List<SignalementRepository.SignalementResume> signalements = suivant
+                ? signalementRepository.findOlderThan(etatId, typeTravauxId, dateCreation, idSignalement, limit + 1)
+                : signalementRepository.findNewerThan(etatId, typeTravauxId, dateCreation, idSignalement, limit + 1);
+        boolean hasMore = signalements.size() > limit;
+        List<SignalementRepository.SignalementResume> pageItems = new ArrayList<>(signalements.subList(0, Math.min(limit, signalements.size())));
+        if (!suivant) {
+            Collections.reverse(pageItems);
         }
-        
-        // Filter by type if specified
-        if (typeTravauxId != null) {
-            allSignalements = allSignalements.stream()
-                    .filter(s -> s.getTypeTravail() != null && s.getTypeTravail().getIdTypeTravail().equals(typeTravauxId))
-                    .toList();
+
+        List<com.signalement.dto.SignalementDTO> items = toDTOs(pageItems);
+        String next = null;
+        String prev = null;
+        if (!items.isEmpty()) {
+            next = (!suivant || hasMore) ? encodeCursor(items.get(items.size() - 1), true) : null;
+            prev = (suivant || hasMore) ? encodeCursor(items.get(0), false) : null;
         }
-        
-        return allSignalements.stream()
-                .map(this::convertToEnrichedDTO)
-                .toList();
+        return new com.signalement.dto.SignalementCursorPageDTO(items, next, prev);
+    }
+
+    /**
+     * Construire un curseur opaque à partir d'un signalement
+     * @param suivant true = curseur vers les plus anciens ("next"), false = vers les plus récents ("prev")
+     */
+    public String encodeCursor(com.signalement.dto.SignalementDTO dto, boolean suivant) {
+        String raw = (suivant ? CURSOR_NEXT : CURSOR_PREV) + "|" + dto.getDateCreation() + "|" + dto.getIdSignalement();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|");
+            if (parts.length != 3 || !(CURSOR_NEXT.equals(parts[0]) || CURSOR_PREV.equals(parts[0]))) {
+                throw new IllegalArgumentException("Curseur invalide");
+            }
+            LocalDateTime.parse(parts[1]);
+            Integer.valueOf(parts[2]);
+            return parts;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Curseur invalide");
+        }
+    }
+
+    /**
+     * Convertir les lignes projetées (signalement, état courant et type de travail déjà joints) en DTOs
+     */
+    private List<com.signalement.dto.SignalementDTO> toDTOs(List<SignalementRepository.SignalementResume> lignes) {
+        return lignes.stream().map(this::toDTO).toList();
+    }
+
+    private com.signalement.dto.SignalementDTO toDTO(SignalementRepository.SignalementResume ligne) {
+        com.signalement.dto.SignalementDTO dto = new com.signalement.dto.SignalementDTO();
+        dto.setIdSignalement(ligne.getIdSignalement());
+        dto.setTitre(ligne.getTitre());
+        dto.setDescription(ligne.getDescription());
+        dto.setLatitude(ligne.getLatitude());
+        dto.setLongitude(ligne.getLongitude());
+        dto.setSurfaceMetreCarree(ligne.getSurfaceMetreCarree());
+        dto.setDateCreation(ligne.getDateCreation());
+        dto.setEtatActuelId(ligne.getEtatActuelId());
+        dto.setEtatLibelle(ligne.getEtatLibelle());
+        dto.setIdTypeTravail(ligne.getIdTypeTravail());
+        dto.setTypeTravauxLibelle(ligne.getTypeTravauxLibelle());
+        dto.setIdUtilisateur(ligne.getIdUtilisateur());
+        return dto;
     }
 
     public com.signalement.dto.SignalementDTO convertToEnrichedDTO(Signalement s) {
+        return convertToEnrichedDTO(s, getCurrentEtat(s.getIdSignalement()));
+    }
+
+    private com.signalement.dto.SignalementDTO convertToEnrichedDTO(Signalement s, EtatSignalement currentEtat) {
         com.signalement.dto.SignalementDTO dto = new com.signalement.dto.SignalementDTO();
         dto.setIdSignalement(s.getIdSignalement());
         dto.setTitre(s.getTitre());
@@ -135,8 +224,7 @@ public class SignalementService {
         // synced and lastSync removed from schema
         
         try {
-            // État managed via historique - retrieve current état
-            EtatSignalement currentEtat = getCurrentEtat(s.getIdSignalement());
+            // État managed via historique - current état read from the projection
             if (currentEtat != null) {
                 dto.setEtatActuelId(currentEtat.getIdEtatSignalement());
                 dto.setEtatLibelle(currentEtat.getLibelle());
@@ -145,8 +233,12 @@ public class SignalementService {
         
         try {
             if (s.getTypeTravail() != null) {
-                dto.setIdTypeTravail(s.getTypeTravail().getIdTypeTravail());
-                dto.setTypeTravauxLibelle(s.getTypeTravail().getLibelle());
+                // Libellé lu dans le registre des tables de référence : le proxy du type n'est pas initialisé
+                Integer idTypeTravail = s.getTypeTravail().getIdTypeTravail();
+                dto.setIdTypeTravail(idTypeTravail);
+                dto.setTypeTravauxLibelle(referenceDataService.getTypeTravail(idTypeTravail)
+                    .map(TypeTravail::getLibelle)
+                    .orElse(null));
             }
         } catch (Exception ignored) {}
         
@@ -182,7 +274,7 @@ public class SignalementService {
         
         // Type de travail optionnel
         if (request.getIdTypeTravail() != null) {
-            TypeTravail typeTravail = typeTravailRepository.findById(request.getIdTypeTravail())
+            TypeTravail typeTravail = referenceDataService.getTypeTravail(request.getIdTypeTravail())
                     .orElseThrow(() -> new IllegalArgumentException("Type de travail non trouvé avec l'ID: " + request.getIdTypeTravail()));
             signalement.setTypeTravail(typeTravail);
         }
@@ -190,26 +282,68 @@ public class SignalementService {
         Signalement savedSignalement = signalementRepository.save(signalement);
         
         // Create initial historique entry with "En attente" état
-        EtatSignalement etatInitial = etatSignalementRepository.findById(1)
+        EtatSignalement etatInitial = referenceDataService.getEtat(1)
                 .orElseThrow(() -> new IllegalStateException("État 'En attente' non trouvé"));
-        createHistoriqueEtat(savedSignalement, etatInitial);
+        enregistrerHistoriqueEtat(savedSignalement, etatInitial, null);
+        domainEventPublisher.publier(DomainEvent.SIGNALEMENT_CREE, savedSignalement.getIdSignalement(),
+            etatInitial.getIdEtatSignalement(), etatInitial.getLibelle());
         
         return savedSignalement;
     }
 
     @Transactional(readOnly = true)
     public List<Signalement> getSignalementsByEtat(Integer etatId) {
-        return signalementRepository.findAll().stream()
-                .filter(s -> {
-                    EtatSignalement currentEtat = getCurrentEtat(s.getIdSignalement());
-                    return currentEtat != null && currentEtat.getIdEtatSignalement().equals(etatId);
-                })
-                .toList();
+        return signalementRepository.findByEtatCourantAndTypeTravail(etatId, null);
+    }
+
+    /**
+     * Page de signalements dans une emprise, filtrés par état courant / type de travail (plus récents d'abord)
+     * @param page Numéro de page (commence à 1)
+     */
+    @Transactional(readOnly = true)
+    public Page<com.signalement.dto.SignalementDTO> getSignalementsDtoInBbox(double minLon, double minLat, double maxLon, double maxLat,
+                                                                         Integer etatId, Integer typeTravauxId, int page, int limit) {
+        validerCoordonnees(minLat, minLon);
+        validerCoordonnees(maxLat, maxLon);
+        if (minLon >= maxLon || minLat >= maxLat) {
+            throw new IllegalArgumentException("Emprise invalide : min doit être inférieur à max");
+        }
+        PageRequest pageRequest = PageRequest.of(page - 1, limit);
+        return signalementRepository
+                .findPageInBbox(minLon, minLat, maxLon, maxLat, etatId, typeTravauxId, pageRequest)
+                .map(this::toDTO);
+    }
+
+    /**
+     * Page de signalements à moins de distanceMeters mètres d'un point, du plus proche au plus éloigné
+     */
+    @Transactional(readOnly = true)
+    public Page<com.signalement.dto.SignalementDTO> getSignalementsDtoNearby(double latitude, double longitude, double distanceMeters,
+                                                                         Integer etatId, Integer typeTravauxId, int page, int limit) {
+        validerCoordonnees(latitude, longitude);
+        if (distanceMeters <= 0 || distanceMeters > RAYON_MAX_METRES) {
+            throw new IllegalArgumentException("Le rayon doit être compris entre 0 et " + RAYON_MAX_METRES + " mètres");
+        }
+        PageRequest pageRequest = PageRequest.of(page - 1, limit);
+        return signalementRepository
+                .findPageNearby(latitude, longitude, distanceMeters, etatId, typeTravauxId, pageRequest)
+                .map(this::toDTO);
     }
 
+    /**
+     * Les k signalements les plus proches d'un point
+     */
     @Transactional(readOnly = true)
-    public List<Signalement> getSignalementsNearby(Double latitude, Double longitude, Double distanceMeters) {
-        return signalementRepository.findSignalementsNearby(latitude, longitude, distanceMeters);
+    public List<com.signalement.dto.SignalementDTO> getSignalementsDtoNearest(double latitude, double longitude, int k,
+                                                                          Integer etatId, Integer typeTravauxId) {
+        validerCoordonnees(latitude, longitude);
+        return toDTOs(signalementRepository.findNearest(latitude, longitude, etatId, typeTravauxId, k));
+    }
+
+    private void validerCoordonnees(double latitude, double longitude) {
+        if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new IllegalArgumentException("Coordonnées invalides : latitude entre -90 et 90, longitude entre -180 et 180");
+        }
     }
 
     @Transactional
@@ -227,6 +361,7 @@ public class SignalementService {
                     existing.setLongitude(signalement.getLongitude());
                     // etatActuel managed via historique - use updateSignalementStatus() instead
                     existing.setTypeTravail(signalement.getTypeTravail());
+                    domainEventPublisher.publier(DomainEvent.SIGNALEMENT_MODIFIE, id, null, null);
                     return signalementRepository.save(existing);
                 })
                 .orElseThrow(() -> new IllegalArgumentException("Signalement non trouvé avec l'ID: " + id));
@@ -235,6 +370,7 @@ public class SignalementService {
     @Transactional
     public void deleteSignalement(Integer id) {
         signalementRepository.deleteById(id);
+        domainEventPublisher.publier(DomainEvent.SIGNALEMENT_SUPPRIME, id, null, null);
     }
 
     /**
@@ -268,11 +404,12 @@ public class SignalementService {
         
         // Mise à jour du type de travail si fourni
         if (request.getIdTypeTravail() != null) {
-            TypeTravail typeTravail = typeTravailRepository.findById(request.getIdTypeTravail())
+            TypeTravail typeTravail = referenceDataService.getTypeTravail(request.getIdTypeTravail())
                 .orElseThrow(() -> new IllegalArgumentException("Type de travail non trouvé"));
             signalement.setTypeTravail(typeTravail);
         }
         // synced field removed
+        domainEventPublisher.publier(DomainEvent.SIGNALEMENT_MODIFIE, id, null, null);
         
         return signalementRepository.save(signalement);
     }
@@ -287,6 +424,7 @@ public class SignalementService {
         return updateSignalementStatus(id, etatId, null, utilisateur);
     }
     
+    @Transactional
     public Signalement updateSignalementStatus(Integer id, Integer etatId, LocalDateTime dateChangement, Utilisateur utilisateur) 
             throws IllegalAccessException {
         // Vérifier que l'utilisateur est manager
@@ -297,7 +435,7 @@ public class SignalementService {
         Signalement signalement = signalementRepository.findById(id)
             .orElseThrow(() -> new IllegalArgumentException("Signalement non trouvé avec l'ID: " + id));
         
-        EtatSignalement etat = etatSignalementRepository.findById(etatId)
+        EtatSignalement etat = referenceDataService.getEtat(etatId)
             .orElseThrow(() -> new IllegalArgumentException("État non trouvé avec l'ID: " + etatId));
         
         // ✅ NOUVELLE VALIDATION MÉTIER (Tâche 29)
@@ -307,23 +445,20 @@ public class SignalementService {
         createHistoriqueEtat(signalement, etat, dateChangement);
         
         // Reload signalement to ensure fresh state for DTO conversion
-        Signalement reloadedSignalement = signalementRepository.findById(id)
+        // (la notification (Tâche 34) est envoyée par NotificationEventConsumer après le commit)
+        return signalementRepository.findById(id)
             .orElseThrow(() -> new IllegalArgumentException("Signalement non trouvé avec l'ID: " + id));
-        
-        // 📲 ENVOYER NOTIFICATION À L'UTILISATEUR CRÉATEUR (Tâche 34)
-        notificationService.notifySignalementStatusChange(id, etat.getLibelle());
-        
-        return reloadedSignalement;
     }
 
     /**
-     * Mettre à jour le statut d'un signalement et retourner les devices notifiés
+     * Mettre à jour le statut d'un signalement et retourner les devices à notifier
      * @param id ID du signalement
      * @param etatId ID du nouvel état
      * @param dateChangement Date du changement (optionnel)
      * @param utilisateur Utilisateur (doit être manager)
      * @return Map contenant "signalement" et "devicesNotified"
      */
+    @Transactional
     public Map<String, Object> updateSignalementStatusWithNotificationTracking(Integer id, Integer etatId, LocalDateTime dateChangement, Utilisateur utilisateur) 
             throws IllegalAccessException {
         // Vérifier que l'utilisateur est manager
@@ -334,7 +469,7 @@ public class SignalementService {
         Signalement signalement = signalementRepository.findById(id)
             .orElseThrow(() -> new IllegalArgumentException("Signalement non trouvé avec l'ID: " + id));
         
-        EtatSignalement etat = etatSignalementRepository.findById(etatId)
+        EtatSignalement etat = referenceDataService.getEtat(etatId)
             .orElseThrow(() -> new IllegalArgumentException("État non trouvé avec l'ID: " + etatId));
         
         // ✅ NOUVELLE VALIDATION MÉTIER (Tâche 29)
@@ -347,9 +482,9 @@ public class SignalementService {
         Signalement reloadedSignalement = signalementRepository.findById(id)
             .orElseThrow(() -> new IllegalArgumentException("Signalement non trouvé avec l'ID: " + id));
         
-        // 📲 ENVOYER NOTIFICATION À L'UTILISATEUR CRÉATEUR (Tâche 34)
-        // Capture les devices qui ont reçu la notification
-        List<String> devicesNotified = notificationService.notifySignalementStatusChange(id, etat.getLibelle());
+        // 📲 NOTIFICATION À L'UTILISATEUR CRÉATEUR (Tâche 34), envoyée par NotificationEventConsumer après le commit
+        // Capture les devices à qui la notification est envoyée
+        List<String> devicesNotified = notificationService.getDevicesANotifier(id);
         
         Map<String, Object> result = new HashMap<>();
         result.put("signalement", reloadedSignalement);
@@ -407,12 +542,13 @@ public class SignalementService {
     @Transactional(readOnly = true)
     public List<EntrepriseConcernerDTO> getAssignationsBySignalement(Integer signalementId) {
         // Vérifier que le signalement existe
-        Signalement signalement = signalementRepository.findById(signalementId)
-            .orElseThrow(() -> new IllegalArgumentException("Signalement non trouvé"));
+        if (!signalementRepository.existsById(signalementId)) {
+            throw new IllegalArgumentException("Signalement non trouvé");
+        }
         
-        // Récupérer toutes les assignations
+        // Récupérer toutes les assignations (entreprise et statut chargés avec)
         List<EntrepriseConcerner> assignations = entrepriseConcernerRepository
-            .findBySignalement_IdSignalement(signalementId);
+            .findDetailsBySignalement(signalementId);
         
         // Convertir en DTOs
         return assignations.stream()
@@ -420,11 +556,71 @@ public class SignalementService {
             .toList();
     }
 
+    /**
+     * Détails d'un signalement (popup de la carte) en trois requêtes :
+     * le signalement, ses assignations (entreprise et statut chargés avec) et son historique (états chargés avec).
+     * L'historique sert à la fois à l'état courant (première ligne) et à la chronologie.
+     */
     @Transactional(readOnly = true)
     public com.signalement.dto.SignalementDetailsDTO getSignalementDetails(Integer signalementId) {
         Signalement s = signalementRepository.findById(signalementId)
             .orElseThrow(() -> new IllegalArgumentException("Signalement non trouvé"));
 
+        return toDetailsDTO(s,
+            historiqueEtatSignalementRepository.findTimelineBySignalement(signalementId),
+            entrepriseConcernerRepository.findDetailsBySignalement(signalementId));
+    }
+
+    /**
+     * Détails de plusieurs signalements (préchargement des popups de la carte) en trois requêtes IN,
+     * assignations et historiques regroupés en mémoire par signalement
+     * @return détails dans l'ordre des ids demandés (ids inconnus ignorés)
+     */
+    @Transactional(readOnly = true)
+    public List<com.signalement.dto.SignalementDetailsDTO> getSignalementsDetails(List<Integer> signalementIds) {
+        List<Integer> ids = signalementIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        if (ids.size() > DETAILS_MAX_IDS) {
+            throw new IllegalArgumentException("Au plus " + DETAILS_MAX_IDS + " signalements par demande");
+        }
+
+        Map<Integer, Signalement> signalements = new HashMap<>();
+        for (Signalement s : signalementRepository.findAllById(ids)) {
+            signalements.put(s.getIdSignalement(), s);
+        }
+        if (signalements.isEmpty()) {
+            return List.of();
+        }
+        Map<Integer, List<HistoriqueEtatSignalement>> historiques = new HashMap<>();
+        for (HistoriqueEtatSignalement h : historiqueEtatSignalementRepository.findTimelineBySignalements(signalements.keySet())) {
+            historiques.computeIfAbsent(h.getSignalement().getIdSignalement(), k -> new ArrayList<>()).add(h);
+        }
+        Map<Integer, List<EntrepriseConcerner>> assignations = new HashMap<>();
+        for (EntrepriseConcerner ec : entrepriseConcernerRepository.findDetailsBySignalements(signalements.keySet())) {
+            assignations.computeIfAbsent(ec.getSignalement().getIdSignalement(), k -> new ArrayList<>()).add(ec);
+        }
+
+        List<com.signalement.dto.SignalementDetailsDTO> details = new ArrayList<>(signalements.size());
+        for (Integer id : ids) {
+            Signalement s = signalements.get(id);
+            if (s != null) {
+                details.add(toDetailsDTO(s,
+                    historiques.getOrDefault(id, List.of()),
+                    assignations.getOrDefault(id, List.of())));
+            }
+        }
+        return details;
+    }
+
+    /**
+     * @param historiques historique du signalement, du plus récent au plus ancien (états chargés)
+     * @param assignations assignations du signalement (entreprise et statut chargés)
+     */
+    private com.signalement.dto.SignalementDetailsDTO toDetailsDTO(Signalement s,
+                                                                  List<HistoriqueEtatSignalement> historiques,
+                                                                  List<EntrepriseConcerner> assignations) {
         com.signalement.dto.SignalementDetailsDTO dto = new com.signalement.dto.SignalementDetailsDTO();
         dto.setIdSignalement(s.getIdSignalement());
         dto.setTitre(s.getTitre());
@@ -435,7 +631,7 @@ public class SignalementService {
         dto.setDateCreation(s.getDateCreation());
 
         // Current état
-        EtatSignalement current = getCurrentEtat(s.getIdSignalement());
+        EtatSignalement current = historiques.isEmpty() ? null : historiques.get(0).getEtatSignalement();
         if (current != null) {
             dto.setCurrentEtatId(current.getIdEtatSignalement());
             dto.setCurrentEtatLibelle(current.getLibelle());
@@ -453,15 +649,15 @@ public class SignalementService {
         dto.setProgressionPercent(progression);
 
         // Assignations
-        dto.setAssignations(getAssignationsBySignalement(signalementId));
+        dto.setAssignations(assignations.stream()
+            .map(this::convertToDTO)
+            .toList());
 
         // Historique des états
-        List<HistoriqueEtatSignalement> historiques = historiqueEtatSignalementRepository
-            .findBySignalement_IdSignalementOrderByDateChangementDesc(signalementId);
         List<com.signalement.dto.SignalementDetailsDTO.EtatHistoryEntryDTO> historyDtos = historiques.stream()
             .map(h -> new com.signalement.dto.SignalementDetailsDTO.EtatHistoryEntryDTO(
-                h.getEtatSignalement() != null ? h.getEtatSignalement().getIdEtatSignalement() : null,
-                h.getEtatSignalement() != null ? h.getEtatSignalement().getLibelle() : null,
+                h.getEtatSignalement().getIdEtatSignalement(),
+                h.getEtatSignalement().getLibelle(),
                 h.getDateChangement()
             ))
             .toList();
@@ -472,29 +668,29 @@ public class SignalementService {
     
     // Helper methods for historique-based état management
     
-    private void createHistoriqueEtat(Signalement signalement, EtatSignalement etat) {
-        createHistoriqueEtat(signalement, etat, null);
+    private void createHistoriqueEtat(Signalement signalement, EtatSignalement etat, LocalDateTime dateChangement) {
+        enregistrerHistoriqueEtat(signalement, etat, dateChangement);
+        // Événement validé avec le changement d'état (notification, statistiques, envoi Firebase)
+        domainEventPublisher.publier(DomainEvent.ETAT_CHANGE, signalement.getIdSignalement(),
+            etat.getIdEtatSignalement(), etat.getLibelle());
     }
     
-    private void createHistoriqueEtat(Signalement signalement, EtatSignalement etat, LocalDateTime dateChangement) {
+    private void enregistrerHistoriqueEtat(Signalement signalement, EtatSignalement etat, LocalDateTime dateChangement) {
         HistoriqueEtatSignalement historique = new HistoriqueEtatSignalement();
         historique.setSignalement(signalement);
         historique.setEtatSignalement(etat);
         // Utiliser la date fournie, ou LocalDateTime.now() si null
         historique.setDateChangement(dateChangement != null ? dateChangement : LocalDateTime.now());
         historiqueEtatSignalementRepository.save(historique);
+        
+        // Maintenir la projection de l'état courant dans la même transaction
+        etatCourantSignalementService.enregistrerChangement(
+            signalement.getIdSignalement(), etat, historique.getDateChangement());
     }
     
     private EtatSignalement getCurrentEtat(Integer signalementId) {
-        // Get all historique entries for this signalement, ordered by most recent first
-        List<HistoriqueEtatSignalement> historiques = historiqueEtatSignalementRepository
-                .findBySignalement_IdSignalementOrderByDateChangementDesc(signalementId);
-        
-        // Return the current état (the most recent one)
-        if (!historiques.isEmpty()) {
-            return historiques.get(0).getEtatSignalement();
-        }
-        return null;
+        // Read the current état from the projection (one row per signalement)
+        return etatCourantSignalementService.getEtatCourant(signalementId).orElse(null);
     }
     
     // ===== TÂCHE 27 =====
@@ -523,7 +719,7 @@ public class SignalementService {
             .orElseThrow(() -> new IllegalArgumentException("Entreprise non trouvée"));
         
         // Récupérer le statut d'assignation par défaut (EN ATTENTE = ID 1)
-        StatutAssignation statut = statutAssignationRepository.findById(1)
+        StatutAssignation statut = referenceDataService.getStatutAssignation(1)
             .orElseThrow(() -> new IllegalArgumentException("Statut d'assignation 'En attente' non trouvé"));
         
         // Valider les dates
@@ -574,7 +770,7 @@ public class SignalementService {
             .orElseThrow(() -> new IllegalArgumentException("Assignation non trouvée"));
         
         // Récupérer le nouveau statut
-        StatutAssignation nouveauStatut = statutAssignationRepository.findById(request.getIdStatutAssignation())
+        StatutAssignation nouveauStatut = referenceDataService.getStatutAssignation(request.getIdStatutAssignation())
             .orElseThrow(() -> new IllegalArgumentException("Statut d'assignation non trouvé"));
         
         // Mettre à jour le statut
@@ -597,6 +793,9 @@ public class SignalementService {
         historique.setStatutAssignation(statut);
         historique.setDateChangement(LocalDateTime.now());
         historiqueStatutAssignationRepository.save(historique);
+        domainEventPublisher.publier(DomainEvent.ASSIGNATION_STATUT_CHANGE,
+            assignation.getSignalement().getIdSignalement(),
+            assignation.getIdEntrepriseConcerner(), statut.getLibelle());
     }
 
     public EntrepriseConcernerDTO convertToDTO(EntrepriseConcerner assignation) {
@@ -628,15 +827,34 @@ public class SignalementService {
         return dto;
     }
 
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<Signalement> UPSERT =
+            FirebaseUpsertWriter.<Signalement>table("signalement")
+            .id("id_signalement", Signalement::getIdSignalement)
+            .colonne("titre", Signalement::getTitre)
+            .colonne("description", Signalement::getDescription)
+            .colonneFacultative("latitude", Signalement::getLatitude)
+            .colonneFacultative("longitude", Signalement::getLongitude)
+            .colonneFacultative("surface_metre_carree", Signalement::getSurfaceMetreCarree)
+            .colonneInsertion("date_creation", Signalement::getDateCreation)
+            .colonneFacultative("geom", "ST_GeogFromText(CAST(? AS text))", s -> s.getGeom() != null ? s.getGeom().toText() : null)
+            .colonne("id_type_travail", s -> s.getTypeTravail().getIdTypeTravail())
+            .colonneFacultative("id_utilisateur", s -> s.getUtilisateur() != null ? s.getUtilisateur().getIdUtilisateur() : null)
+            .lastUpdate("last_update", Signalement::getLastUpdate);
+
     // ======== FIREBASE SYNC METHODS (Tâches 31 & 32) ========
     
+    /**
+     * Appliquer des documents Firebase, lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
+     */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("signalements");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        // Références chargées en bloc pour vérifier les clés étrangères ; le Last-Write-Wins est décidé par l'upsert
+        Map<Integer, TypeTravail> types = identityResolver.prefetch(documents, "id_type_travail", typeTravailRepository, TypeTravail::getIdTypeTravail);
+        Map<Integer, Utilisateur> utilisateurs = identityResolver.prefetch(documents, "id_utilisateur", utilisateurRepository, Utilisateur::getIdUtilisateur);
 
-        int synced = 0;
+        FirebaseUpsertWriter.Lot<Signalement> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -646,64 +864,62 @@ public class SignalementService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = signalementRepository.findById(id);
+                Signalement signalement = new Signalement();
+                signalement.setIdSignalement(id);
+                signalement.setTitre(doc.getString("titre"));
+                signalement.setDescription(doc.getString("description"));
+                
+                Double latitude = doc.getDouble("latitude");
+                Double longitude = doc.getDouble("longitude");
+                if (latitude != null && longitude != null) {
+                    signalement.setLatitude(java.math.BigDecimal.valueOf(latitude));
+                    signalement.setLongitude(java.math.BigDecimal.valueOf(longitude));
+                    Point point = geometryFactory.createPoint(new Coordinate(longitude, latitude));
+                    signalement.setGeom(point);
+                }
+                
+                Double surface = doc.getDouble("surface_metre_carree");
+                if (surface != null) {
+                    signalement.setSurfaceMetreCarree(java.math.BigDecimal.valueOf(surface));
+                }
+                
+                // Récupérer la date de création depuis Firebase (en millisecondes)
+                Long dateCreationMs = firebaseConversionService.getLongValue(doc, "date_creation");
+                if (dateCreationMs != null) {
+                    signalement.setDateCreation(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(dateCreationMs), ZoneId.systemDefault()));
+                } else {
+                    // Valeur par défaut de @PrePersist (l'upsert JDBC ne passe pas par JPA)
+                    signalement.setDateCreation(LocalDateTime.now());
+                }
+                
+                Integer typeId = firebaseConversionService.getLongAsInteger(doc, "id_type_travail");
+                TypeTravail type = typeId != null ? types.get(typeId) : null;
                 
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    Signalement signalement = existing.orElse(new Signalement());
-                    signalement.setIdSignalement(id);
-                    signalement.setTitre(doc.getString("titre"));
-                    signalement.setDescription(doc.getString("description"));
-                    
-                    Double latitude = doc.getDouble("latitude");
-                    Double longitude = doc.getDouble("longitude");
-                    if (latitude != null && longitude != null) {
-                        signalement.setLatitude(java.math.BigDecimal.valueOf(latitude));
-                        signalement.setLongitude(java.math.BigDecimal.valueOf(longitude));
-                        Point point = geometryFactory.createPoint(new Coordinate(longitude, latitude));
-                        signalement.setGeom(point);
-                    }
-                    
-                    Double surface = doc.getDouble("surface_metre_carree");
-                    if (surface != null) {
-                        signalement.setSurfaceMetreCarree(java.math.BigDecimal.valueOf(surface));
-                    }
-                    
-                    // Récupérer la date de création depuis Firebase (en millisecondes)
-                    Long dateCreationMs = firebaseConversionService.getLongValue(doc, "date_creation");
-                    if (dateCreationMs != null && signalement.getDateCreation() == null) {
-                        signalement.setDateCreation(LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(dateCreationMs), ZoneId.systemDefault()));
-                    }
-                    
-                    Integer typeId = firebaseConversionService.getLongAsInteger(doc, "id_type_travail");
-                    TypeTravail type = typeId != null ? typeTravailRepository.findById(typeId).orElse(null) : null;
-                    
-                    // Récupérer l'utilisateur depuis Firebase
-                    Integer userId = firebaseConversionService.getLongAsInteger(doc, "id_utilisateur");
-                    Utilisateur utilisateur = userId != null ? null : null; // À adapter selon votre repository d'utilisateurs
-                    
-                    if (type != null) {
-                        signalement.setTypeTravail(type);
-                        if (userId != null) {
-                            // Trouver l'utilisateur dans la base de données
-                            utilisateur = utilisateurRepository.findById(userId).orElse(null);
-                            if (utilisateur != null) {
-                                signalement.setUtilisateur(utilisateur);
-                            }
-                        }
-                        signalement.setLastUpdate(firebaseLastUpdate);
-                        signalementRepository.save(signalement);
-                        synced++;
-                    }
+                // Récupérer l'utilisateur depuis Firebase (absent du document : utilisateur en base conservé)
+                Integer userId = firebaseConversionService.getLongAsInteger(doc, "id_utilisateur");
+                Utilisateur utilisateur = userId != null ? utilisateurs.get(userId) : null;
+                
+                if (type != null && (userId == null || utilisateur != null)) {
+                    signalement.setTypeTravail(type);
+                    signalement.setUtilisateur(utilisateur);
+                    signalement.setLastUpdate(firebaseLastUpdate);
+                    lot.ajouter(signalement);
+                } else {
+                    lot.ignorer(doc);
                 }
             }
         }
-        return synced;
+        return lot.resultat();
     }
 
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<Signalement> signalements = signalementRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<Signalement> signalements = lastPushDate == null
+            ? signalementRepository.findAll()
+            : signalementRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("signalements");
         for (Signalement signalement : signalements) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", signalement.getIdSignalement());
@@ -735,11 +951,10 @@ public class SignalementService {
                 data.put("id_utilisateur", signalement.getUtilisateur().getIdUtilisateur());
             }
             
-            firestore.collection("signalements")
-                .document(String.valueOf(signalement.getIdSignalement()))
-                .set(data).get();
+            lot.set(String.valueOf(signalement.getIdSignalement()), data);
         }
-        log.info("{} signalements recréés", signalements.size());
+        lot.terminer();
+        log.info("{} signalements envoyés vers Firebase", signalements.size());
         return signalements.size();
     }
 
@@ -750,31 +965,18 @@ public class SignalementService {
      * @return DTO avec l'état et le pourcentage d'avancement
      */
     public com.signalement.dto.SignalementProgressDTO getSignalementProgress(Integer signalementId, LocalDateTime atDate) {
-        Signalement signalement = signalementRepository.findById(signalementId)
-            .orElseThrow(() -> new IllegalArgumentException("Signalement non trouvé avec l'ID: " + signalementId));
+        if (!signalementRepository.existsById(signalementId)) {
+            throw new IllegalArgumentException("Signalement non trouvé avec l'ID: " + signalementId);
+        }
 
         // Si pas de date fournie, utiliser maintenant
         LocalDateTime dateRef = atDate != null ? atDate : LocalDateTime.now();
 
-        // Récupérer tous les changements d'état du signalement, triés chronologiquement
-        List<HistoriqueEtatSignalement> historiques = historiqueEtatSignalementRepository
-                .findBySignalement_IdSignalementOrderByDateChangementDesc(signalementId);
-
-        // Trouver l'état valide à la date donnée
-        EtatSignalement etatAlaDate = null;
-        for (HistoriqueEtatSignalement historique : historiques) {
-            // Si le changement s'est produit avant ou à la date référence
-            if (historique.getDateChangement().isBefore(dateRef) || historique.getDateChangement().isEqual(dateRef)) {
-                etatAlaDate = historique.getEtatSignalement();
-                break;
-            }
-        }
-
+        // Dernier changement d'état antérieur ou égal à la date (une ligne lue par l'index de l'historique)
         // Si aucun historique trouvé, utiliser l'état de création (en attente par défaut)
-        if (etatAlaDate == null) {
-            etatAlaDate = etatSignalementRepository.findById(1)
-                .orElseThrow(() -> new IllegalArgumentException("État 'En attente' non trouvé"));
-        }
+        EtatSignalement etatAlaDate = referenceDataService.getEtat(
+                historiqueEtatSignalementRepository.findIdEtatAt(signalementId, dateRef).orElse(1))
+            .orElseThrow(() -> new IllegalArgumentException("État 'En attente' non trouvé"));
 
         // Calculer le pourcentage d'avancement selon l'état
         Integer pourcentage = calculateProgress(etatAlaDate.getLibelle());
@@ -787,6 +989,34 @@ public class SignalementService {
                 .build();
     }
 
+    /**
+     * État et avancement de tous les signalements à une date (relecture historique de la carte), en une requête
+     * @param atDate date de référence (maintenant si null) ; les signalements créés après sont exclus
+     * @param etatId filtre sur l'état à cette date (null = pas de filtre)
+     */
+    @Transactional(readOnly = true)
+    public List<com.signalement.dto.SignalementEtatDateDTO> getSignalementsEtatsALaDate(LocalDateTime atDate,
+                                                                                    Integer etatId, Integer typeTravauxId) {
+        LocalDateTime dateRef = atDate != null ? atDate : LocalDateTime.now();
+        return historiqueEtatSignalementRepository.findEtatsAt(dateRef, etatId, typeTravauxId).stream()
+            .map(ligne -> {
+                // Libellé lu dans le registre des tables de référence (pas de jointure)
+                String libelle = referenceDataService.getEtat(ligne.getIdEtat())
+                    .map(EtatSignalement::getLibelle)
+                    .orElse(null);
+                return com.signalement.dto.SignalementEtatDateDTO.builder()
+                    .idSignalement(ligne.getIdSignalement())
+                    .latitude(ligne.getLatitude())
+                    .longitude(ligne.getLongitude())
+                    .idTypeTravail(ligne.getIdTypeTravail())
+                    .etatId(ligne.getIdEtat())
+                    .etatLibelle(libelle)
+                    .pourcentageAvancement(calculateProgress(libelle))
+                    .build();
+            })
+            .toList();
+    }
+
     /**
      * Calcule le pourcentage d'avancement selon l'état du signalement
      */
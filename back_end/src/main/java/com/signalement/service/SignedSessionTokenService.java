@@ -0,0 +1,297 @@
+package com.signalement.service;
+
+import com.signalement.entity.JetonRevoque;
+import com.signalement.entity.Utilisateur;
+import com.signalement.entity.UtilisateurRevoque;
+import com.signalement.repository.JetonRevoqueRepository;
+import com.signalement.repository.UtilisateurRepository;
+import com.signalement.repository.UtilisateurRevoqueRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Jetons de session signés (HMAC-SHA256), actifs quand session.mode=signed.
+ * Le jeton porte l'id utilisateur, le type d'utilisateur, la date d'émission et la date d'expiration :
+ * sa validation ne demande aucun accès à la base.
+ * Format : s1.&lt;base64url(id:type:emission:expiration)&gt;.&lt;base64url(hmac)&gt;
+ *
+ * Liste de révocation, consultée en mémoire et partagée par la base :
+ * - jetons révoqués à la déconnexion : table jeton_revoque, gardés jusqu'à leur expiration
+ * - utilisateurs révoqués (blocage) : tout jeton émis avant la révocation est refusé,
+ *   table utilisateur_revoque (date du dernier blocage), gardés pendant la durée de vie maximale des jetons ;
+ *   un utilisateur bloqué sans révocation enregistrée (ex: import Firebase) est révoqué tant qu'il reste bloqué.
+ * Chaque instance recharge les deux au démarrage, puis toutes les session.signed.revocation.refresh.millis :
+ * une révocation faite sur une autre instance y est appliquée au plus tard après ce délai.
+ */
+@Service
+@Slf4j
+public class SignedSessionTokenService {
+
+    public static final String MODE_SIGNED = "signed";
+    private static final String PREFIX = "s1.";
+    private static final String ALGORITHME = "HmacSHA256";
+    // Marge de relecture des révocations : une transaction validée en retard reste prise en compte
+    private static final Duration MARGE_RECHARGEMENT = Duration.ofMinutes(1);
+
+    /**
+     * Contenu vérifié d'un jeton signé
+     */
+    public record SignedToken(Integer idUtilisateur, Integer idTypeUtilisateur, Instant emission, Instant expiration) {
+    }
+
+    private final UtilisateurRepository utilisateurRepository;
+    private final JetonRevoqueRepository jetonRevoqueRepository;
+    private final UtilisateurRevoqueRepository utilisateurRevoqueRepository;
+    private final boolean enabled;
+    private final SecretKeySpec cle;
+    private final ThreadLocal<Mac> macs;
+
+    // signature du jeton -> expiration du jeton
+    private final Map<String, Instant> jetonsRevoques = new ConcurrentHashMap<>();
+    // id utilisateur -> date de révocation (la plus récente)
+    private final Map<Integer, Instant> utilisateursRevoques = new ConcurrentHashMap<>();
+    // id utilisateur bloqué en base -> date à laquelle le blocage a été vu (retiré au déblocage)
+    private final Map<Integer, Instant> utilisateursBloques = new ConcurrentHashMap<>();
+    // Durée de vie la plus longue des jetons émis : durée de conservation des révocations d'utilisateurs
+    private final AtomicLong dureeMaxSecondes;
+    // Date de révocation la plus récente déjà chargée depuis la base
+    private volatile LocalDateTime dernierRechargement;
+
+    public SignedSessionTokenService(UtilisateurRepository utilisateurRepository,
+                                     JetonRevoqueRepository jetonRevoqueRepository,
+                                     UtilisateurRevoqueRepository utilisateurRevoqueRepository,
+                                     @Value("${session.mode:database}") String mode,
+                                     @Value("${session.signed.secret:}") String secret,
+                                     @Value("${session.duration.hours:8}") long sessionDurationHours) {
+        this.utilisateurRepository = utilisateurRepository;
+        this.jetonRevoqueRepository = jetonRevoqueRepository;
+        this.utilisateurRevoqueRepository = utilisateurRevoqueRepository;
+        this.enabled = MODE_SIGNED.equalsIgnoreCase(mode);
+        this.dureeMaxSecondes = new AtomicLong(Duration.ofHours(sessionDurationHours).toSeconds());
+        if (enabled && secret.length() < 32) {
+            throw new IllegalStateException("session.signed.secret doit contenir au moins 32 caractères en mode session.mode=signed");
+        }
+        this.cle = enabled ? new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHME) : null;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHME);
+                mac.init(cle);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Initialisation HMAC impossible", e);
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Émettre un jeton signé pour un utilisateur
+     */
+    public String emettre(Utilisateur utilisateur, Instant emission, Instant expiration) {
+        dureeMaxSecondes.accumulateAndGet(Duration.between(emission, expiration).toSeconds(), Math::max);
+        String payload = utilisateur.getIdUtilisateur() + ":"
+                + utilisateur.getTypeUtilisateur().getIdTypeUtilisateur() + ":"
+                + emission.getEpochSecond() + ":"
+                + expiration.getEpochSecond();
+        String corps = PREFIX + encoder(payload.getBytes(StandardCharsets.UTF_8));
+        return corps + "." + encoder(signer(corps));
+    }
+
+    /**
+     * Vérifier signature, expiration et révocation d'un jeton, sans accès à la base
+     */
+    public Optional<SignedToken> verifier(String token) {
+        if (!enabled || token == null || !token.startsWith(PREFIX)) {
+            return Optional.empty();
+        }
+        int point = token.lastIndexOf('.');
+        if (point <= PREFIX.length()) {
+            return Optional.empty();
+        }
+        String corps = token.substring(0, point);
+        String signature = token.substring(point + 1);
+        try {
+            if (!MessageDigest.isEqual(signer(corps), Base64.getUrlDecoder().decode(signature))) {
+                return Optional.empty();
+            }
+            String[] champs = new String(Base64.getUrlDecoder().decode(corps.substring(PREFIX.length())),
+                    StandardCharsets.UTF_8).split(":");
+            if (champs.length != 4) {
+                return Optional.empty();
+            }
+            SignedToken jeton = new SignedToken(
+                    Integer.valueOf(champs[0]),
+                    Integer.valueOf(champs[1]),
+                    Instant.ofEpochSecond(Long.parseLong(champs[2])),
+                    Instant.ofEpochSecond(Long.parseLong(champs[3])));
+            if (!jeton.expiration().isAfter(Instant.now()) || estRevoque(signature, jeton)) {
+                return Optional.empty();
+            }
+            return Optional.of(jeton);
+        } catch (IllegalArgumentException e) {
+            // Base64 ou nombres invalides
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Révoquer un jeton (déconnexion) jusqu'à son expiration.
+     * Enregistré dans la transaction de l'appelant, visible des autres instances au prochain rechargement.
+     */
+    public void revoquer(String token) {
+        int point = token == null ? -1 : token.lastIndexOf('.');
+        if (!enabled || point <= PREFIX.length() || !token.startsWith(PREFIX)) {
+            return;
+        }
+        Instant expiration;
+        try {
+            String[] champs = new String(Base64.getUrlDecoder().decode(token.substring(PREFIX.length(), point)),
+                    StandardCharsets.UTF_8).split(":");
+            expiration = Instant.ofEpochSecond(Long.parseLong(champs[3]));
+        } catch (RuntimeException e) {
+            return;
+        }
+        String signature = token.substring(point + 1);
+        jetonsRevoques.put(signature, expiration);
+        jetonRevoqueRepository.save(new JetonRevoque(signature,
+                LocalDateTime.ofInstant(expiration, ZoneId.systemDefault()), LocalDateTime.now()));
+    }
+
+    /**
+     * Révoquer tous les jetons déjà émis pour un utilisateur (blocage).
+     * Enregistré dans la transaction de l'appelant, visible des autres instances au prochain rechargement.
+     */
+    public void revoquerUtilisateur(Integer idUtilisateur) {
+        if (!enabled) {
+            return;
+        }
+        Instant now = Instant.now();
+        utilisateursRevoques.merge(idUtilisateur, now, SignedSessionTokenService::plusTardive);
+        utilisateurRevoqueRepository.save(new UtilisateurRevoque(idUtilisateur,
+                LocalDateTime.ofInstant(now, ZoneId.systemDefault())));
+    }
+
+    /**
+     * Retirer de la liste de révocation (mémoire et table jeton_revoque) les entrées dont les jetons ont tous expiré.
+     * Appelé par la purge périodique des sessions, dans sa transaction.
+     */
+    public void purgerRevocations() {
+        Instant now = Instant.now();
+        jetonsRevoques.values().removeIf(expiration -> expiration.isBefore(now));
+        Instant limite = now.minusSeconds(dureeMaxSecondes.get());
+        utilisateursRevoques.values().removeIf(revocation -> revocation.isBefore(limite));
+        if (enabled) {
+            long supprimes = jetonRevoqueRepository.deleteByDateExpirationBefore(
+                    LocalDateTime.ofInstant(now, ZoneId.systemDefault()));
+            if (supprimes > 0) {
+                log.debug("{} jeton(s) révoqué(s) expiré(s) supprimé(s)", supprimes);
+            }
+            supprimes = utilisateurRevoqueRepository.deleteByDateRevocationBefore(
+                    LocalDateTime.ofInstant(limite, ZoneId.systemDefault()));
+            if (supprimes > 0) {
+                log.debug("{} révocation(s) d'utilisateur expirée(s) supprimée(s)", supprimes);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void chargerRevocations() {
+        if (!enabled) {
+            return;
+        }
+        // Après un redémarrage, les jetons révoqués et ceux des utilisateurs bloqués doivent rester refusés
+        recharger();
+        log.info("Jetons de session signés actifs, {} jeton(s) et {} utilisateur(s) révoqué(s)",
+                jetonsRevoques.size(), utilisateursRevoques.size());
+    }
+
+    /**
+     * Appliquer les révocations faites par les autres instances (déconnexions et blocages)
+     */
+    @Scheduled(fixedDelayString = "${session.signed.revocation.refresh.millis:10000}")
+    public void recharger() {
+        if (!enabled) {
+            return;
+        }
+        Instant now = Instant.now();
+        LocalDateTime depuis = dernierRechargement;
+        List<JetonRevoque> jetons = depuis == null
+                ? jetonRevoqueRepository.findByDateExpirationAfter(LocalDateTime.ofInstant(now, ZoneId.systemDefault()))
+                : jetonRevoqueRepository.findByDateRevocationAfter(depuis.minus(MARGE_RECHARGEMENT));
+        LocalDateTime plusRecente = depuis;
+        for (JetonRevoque jeton : jetons) {
+            Instant expiration = jeton.getDateExpiration().atZone(ZoneId.systemDefault()).toInstant();
+            if (expiration.isAfter(now)) {
+                jetonsRevoques.put(jeton.getSignature(), expiration);
+            }
+            if (plusRecente == null || jeton.getDateRevocation().isAfter(plusRecente)) {
+                plusRecente = jeton.getDateRevocation();
+            }
+        }
+        dernierRechargement = plusRecente != null ? plusRecente : LocalDateTime.ofInstant(now, ZoneId.systemDefault());
+
+        // Peu de lignes (blocages des dernières heures) : relues entièrement, la date la plus récente l'emporte
+        LocalDateTime limite = LocalDateTime.ofInstant(now.minusSeconds(dureeMaxSecondes.get()), ZoneId.systemDefault());
+        for (UtilisateurRevoque revocation : utilisateurRevoqueRepository.findByDateRevocationAfter(limite)) {
+            utilisateursRevoques.merge(revocation.getIdUtilisateur(),
+                    revocation.getDateRevocation().atZone(ZoneId.systemDefault()).toInstant(),
+                    SignedSessionTokenService::plusTardive);
+        }
+        Set<Integer> bloques = new HashSet<>(utilisateurRepository.findBlockedIds());
+        // Débloqué : les jetons émis ensuite redeviennent valides (ceux d'avant restent refusés par utilisateur_revoque)
+        utilisateursBloques.keySet().retainAll(bloques);
+        for (Integer idUtilisateur : bloques) {
+            // Blocage vu pour la première fois : les jetons déjà émis sont refusés à partir de maintenant
+            utilisateursBloques.putIfAbsent(idUtilisateur, now);
+        }
+    }
+
+    private boolean estRevoque(String signature, SignedToken jeton) {
+        if (jetonsRevoques.containsKey(signature)) {
+            return true;
+        }
+        Instant revocation = utilisateursRevoques.get(jeton.idUtilisateur());
+        if (revocation != null && !jeton.emission().isAfter(revocation)) {
+            return true;
+        }
+        Instant blocage = utilisateursBloques.get(jeton.idUtilisateur());
+        return blocage != null && !jeton.emission().isAfter(blocage);
+    }
+
+    private static Instant plusTardive(Instant a, Instant b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private byte[] signer(String corps) {
+        return macs.get().doFinal(corps.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String encoder(byte[] octets) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(octets);
+    }
+}
@@ -0,0 +1,29 @@
+package com.signalement.service;
+
+import com.signalement.entity.DomainEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Recalcul de l'instantané des statistiques après une création, un changement d'état ou d'assignation
+ */
+@Service
+@RequiredArgsConstructor
+public class StatisticsEventConsumer implements DomainEventConsumer {
+
+    private final StatisticsSnapshotService statisticsSnapshotService;
+
+    @Override
+    public String nom() {
+        return "statistiques";
+    }
+
+    @Override
+    public boolean traiter(List<DomainEvent> evenements) {
+        // Un seul recalcul pour tout le lot
+        statisticsSnapshotService.invalider();
+        return true;
+    }
+}
@@ -8,7 +8,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -21,76 +20,26 @@ public class StatisticsService {
     private final UtilisateurRepository utilisateurRepository;
     private final EntrepriseRepository entrepriseRepository;
     private final EntrepriseConcernerRepository entrepriseConcernerRepository;
-    private final EtatSignalementRepository etatSignalementRepository;
-    private final TypeTravailRepository typeTravailRepository;
-    private final HistoriqueEtatSignalementRepository historiqueEtatSignalementRepository;
-    private final TypeUtilisateurRepository typeUtilisateurRepository;
+    private final ReferenceDataService referenceDataService;
 
     /**
      * Récupère les statistiques globales du système
+     * Nombre fixe de requêtes d'agrégation, indépendant du volume de données
      */
     public StatisticsDTO getSummaryStatistics() {
-        // Récupérer tous les signalements
-        List<Signalement> allSignalements = signalementRepository.findAll();
-
         // Compter les signalements par état actuel
-        Map<String, Integer> countByEtat = countByEtat(allSignalements);
-
-        // Récupérer tous les utilisateurs
-        List<Utilisateur> allUtilisateurs = utilisateurRepository.findAll();
+        int totalSignalements = (int) signalementRepository.count();
+        Map<String, Integer> countByEtat = countByEtat();
 
         // Compter les utilisateurs par type
-        TypeUtilisateur citoyenType = typeUtilisateurRepository.findById(1)
-                .orElse(null);
-        TypeUtilisateur managerType = typeUtilisateurRepository.findById(2)
-                .orElse(null);
-
-        int citoyens = (int) allUtilisateurs.stream()
-                .filter(u -> u.getTypeUtilisateur() != null && u.getTypeUtilisateur().equals(citoyenType))
-                .count();
-        int managers = (int) allUtilisateurs.stream()
-                .filter(u -> u.getTypeUtilisateur() != null && u.getTypeUtilisateur().equals(managerType))
-                .count();
-        int comptesBloques = (int) allUtilisateurs.stream()
-                .filter(u -> Boolean.TRUE.equals(u.getIsBlocked()))
-                .count();
+        UtilisateurRepository.UtilisateurStats utilisateurStats = utilisateurRepository.getUtilisateurStats();
 
-        // Récupérer toutes les entreprises
-        List<Entreprise> allEntreprises = entrepriseRepository.findAll();
-        int entreprisesActives = allEntreprises.size(); // Toutes les entreprises en base sont considérées actives
+        // Toutes les entreprises en base sont considérées actives
+        int totalEntreprises = (int) entrepriseRepository.count();
+        int entreprisesActives = totalEntreprises;
 
-        // Récupérer toutes les assignations (EntrepriseConcerner)
-        List<EntrepriseConcerner> allAssignations = entrepriseConcernerRepository.findAll();
-        int assignationsEnCours = (int) allAssignations.stream()
-                .filter(ec -> {
-                    // Vérifier si le signalement associé est "en cours"
-                    Signalement sig = ec.getSignalement();
-                    if (sig == null) return false;
-                    
-                    Optional<HistoriqueEtatSignalement> latestHistorique = 
-                            historiqueEtatSignalementRepository.findLatestBySignalement(sig);
-                    
-                    if (latestHistorique.isEmpty()) return false;
-                    
-                    EtatSignalement etat = latestHistorique.get().getEtatSignalement();
-                    return etat != null && "en cours".equalsIgnoreCase(etat.getLibelle());
-                })
-                .count();
-
-        int assignationsTerminees = (int) allAssignations.stream()
-                .filter(ec -> {
-                    Signalement sig = ec.getSignalement();
-                    if (sig == null) return false;
-                    
-                    Optional<HistoriqueEtatSignalement> latestHistorique = 
-                            historiqueEtatSignalementRepository.findLatestBySignalement(sig);
-                    
-                    if (latestHistorique.isEmpty()) return false;
-                    
-                    EtatSignalement etat = latestHistorique.get().getEtatSignalement();
-                    return etat != null && "terminé".equalsIgnoreCase(etat.getLibelle());
-                })
-                .count();
+        // Assignations selon l'état actuel du signalement associé
+        EntrepriseConcernerRepository.AssignationStats assignationStats = entrepriseConcernerRepository.getAssignationStats();
 
         // Calculer les taux moyens
         List<StatisticsDTO.EntreprisePerformanceDTO> performances = getEnterpriseStatistics();
@@ -116,20 +65,20 @@ public class StatisticsService {
         Double delaiMoyen = calculateAverageProcessingTimeInDays();
 
         return StatisticsDTO.builder()
-                .totalSignalements(allSignalements.size())
+                .totalSignalements(totalSignalements)
                 .signalementsEnAttente(countByEtat.getOrDefault("en attente", 0))
                 .signalementsEnCours(countByEtat.getOrDefault("en cours", 0))
                 .signalementsTermines(countByEtat.getOrDefault("terminé", 0))
-                .totalUtilisateurs(allUtilisateurs.size())
-                .citoyens(citoyens)
-                .managers(managers)
-                .comptesBloques(comptesBloques)
-                .totalEntreprises(allEntreprises.size())
+                .totalUtilisateurs(utilisateurStats.getTotal().intValue())
+                .citoyens(utilisateurStats.getCitoyens().intValue())
+                .managers(utilisateurStats.getManagers().intValue())
+                .comptesBloques(utilisateurStats.getBloques().intValue())
+                .totalEntreprises(totalEntreprises)
                 .entreprisesActives(entreprisesActives)
-                .entreprisesInactives(allEntreprises.size() - entreprisesActives)
-                .totalAssignations(allAssignations.size())
-                .assignationsEnCours(assignationsEnCours)
-                .assignationsTerminees(assignationsTerminees)
+                .entreprisesInactives(totalEntreprises - entreprisesActives)
+                .totalAssignations(assignationStats.getTotal().intValue())
+                .assignationsEnCours(assignationStats.getEnCours().intValue())
+                .assignationsTerminees(assignationStats.getTerminees().intValue())
                 .tauxCompletionMoyen(tauxCompletionMoyen)
                 .tauxPonctualiteMoyen(tauxPonctualiteMoyen)
                 .delaiTraitementMoyenJours(delaiMoyen)
@@ -139,57 +88,15 @@ public class StatisticsService {
     }
 
     /**
-     * Compte les signalements par état actuel
+     * Compte les signalements par état actuel (libellé en minuscules)
      */
-    private Map<String, Integer> countByEtat(List<Signalement> signalements) {
+    private Map<String, Integer> countByEtat() {
         Map<String, Integer> result = new HashMap<>();
-
-        for (Signalement sig : signalements) {
-            Optional<HistoriqueEtatSignalement> latestHistorique = 
-                    historiqueEtatSignalementRepository.findLatestBySignalement(sig);
-
-            if (latestHistorique.isPresent()) {
-                EtatSignalement etat = latestHistorique.get().getEtatSignalement();
-                if (etat != null && etat.getLibelle() != null) {
-                    String etatLabel = etat.getLibelle().toLowerCase();
-                    result.put(etatLabel, result.getOrDefault(etatLabel, 0) + 1);
-                }
-            }
-        }
-
-        return result;
-    }
-
-    /**
-     * Récupère les signalements groupés par type de travail
-     */
-    private Map<TypeTravail, List<Signalement>> getSignalementsByType() {
-        List<Signalement> allSignalements = signalementRepository.findAll();
-        return allSignalements.stream()
-                .filter(s -> s.getTypeTravail() != null)
-                .collect(Collectors.groupingBy(Signalement::getTypeTravail));
-    }
-
-    /**
-     * Récupère les signalements groupés par état actuel
-     */
-    private Map<String, List<Signalement>> getSignalementsByState() {
-        List<Signalement> allSignalements = signalementRepository.findAll();
-        Map<String, List<Signalement>> result = new HashMap<>();
-
-        for (Signalement sig : allSignalements) {
-            Optional<HistoriqueEtatSignalement> latestHistorique = 
-                    historiqueEtatSignalementRepository.findLatestBySignalement(sig);
-
-            if (latestHistorique.isPresent()) {
-                EtatSignalement etat = latestHistorique.get().getEtatSignalement();
-                if (etat != null && etat.getLibelle() != null) {
-                    String etatLabel = etat.getLibelle().toLowerCase();
-                    result.computeIfAbsent(etatLabel, k -> new ArrayList<>()).add(sig);
-                }
+        for (SignalementRepository.EtatCount row : signalementRepository.countByEtatCourant()) {
+            if (row.getLibelle() != null) {
+                result.merge(row.getLibelle().toLowerCase(), row.getTotal().intValue(), Integer::sum);
             }
         }
-
         return result;
     }
 
@@ -197,26 +104,21 @@ public class StatisticsService {
      * Récupère les statistiques par type de travail
      */
     public List<StatisticsDTO.TypeTravailStatDTO> getStatisticsByWorkType() {
-        Map<TypeTravail, List<Signalement>> byType = getSignalementsByType();
-        int totalSignalements = signalementRepository.findAll().size();
-
-        return byType.entrySet().stream()
-                .map(entry -> {
-                    TypeTravail type = entry.getKey();
-                    List<Signalement> signalements = entry.getValue();
-
-                    Map<String, Integer> countByEtat = countByEtat(signalements);
+        int totalSignalements = (int) signalementRepository.count();
 
+        return signalementRepository.statsByTypeTravail().stream()
+                .map(row -> {
+                    int total = row.getTotal().intValue();
                     double pourcentage = totalSignalements > 0 ?
-                            (signalements.size() * 100.0 / totalSignalements) : 0.0;
+                            (total * 100.0 / totalSignalements) : 0.0;
 
                     return StatisticsDTO.TypeTravailStatDTO.builder()
-                            .idTypeTravail(type.getIdTypeTravail())
-                            .nomType(type.getLibelle())
-                            .total(signalements.size())
-                            .enAttente(countByEtat.getOrDefault("en attente", 0))
-                            .enCours(countByEtat.getOrDefault("en cours", 0))
-                            .termine(countByEtat.getOrDefault("terminé", 0))
+                            .idTypeTravail(row.getIdTypeTravail())
+                            .nomType(row.getLibelle())
+                            .total(total)
+                            .enAttente(row.getEnAttente().intValue())
+                            .enCours(row.getEnCours().intValue())
+                            .termine(row.getTermine().intValue())
                             .pourcentage(Math.round(pourcentage * 100.0) / 100.0)
                             .build();
                 })
@@ -228,17 +130,18 @@ public class StatisticsService {
      * Récupère les statistiques par état
      */
     public List<StatisticsDTO.EtatStatDTO> getStatisticsByState() {
-        Map<String, List<Signalement>> byState = getSignalementsByState();
-        int totalSignalements = signalementRepository.findAll().size();
+        int totalSignalements = (int) signalementRepository.count();
+        Map<Integer, Integer> countByEtatId = new HashMap<>();
+        for (SignalementRepository.EtatCount row : signalementRepository.countByEtatCourant()) {
+            countByEtatId.put(row.getIdEtat(), row.getTotal().intValue());
+        }
 
         // Récupérer tous les états possibles
-        List<EtatSignalement> allEtats = etatSignalementRepository.findAll();
+        List<EtatSignalement> allEtats = referenceDataService.getEtats();
 
         return allEtats.stream()
                 .map(etat -> {
-                    String etatLabel = etat.getLibelle().toLowerCase();
-                    List<Signalement> signalements = byState.getOrDefault(etatLabel, new ArrayList<>());
-                    int count = signalements.size();
+                    int count = countByEtatId.getOrDefault(etat.getIdEtatSignalement(), 0);
                     double pourcentage = totalSignalements > 0 ?
                             (count * 100.0 / totalSignalements) : 0.0;
 
@@ -257,33 +160,10 @@ public class StatisticsService {
      * Récupère les statistiques par entreprise
      */
     public List<StatisticsDTO.EntreprisePerformanceDTO> getEnterpriseStatistics() {
-        List<Entreprise> allEntreprises = entrepriseRepository.findAll();
-
-        return allEntreprises.stream()
-                .map(entreprise -> {
-                    // Récupérer toutes les assignations de cette entreprise
-                    List<EntrepriseConcerner> assignations = entrepriseConcernerRepository.findAll().stream()
-                            .filter(ec -> ec.getEntreprise() != null && 
-                                    ec.getEntreprise().getIdEntreprise().equals(entreprise.getIdEntreprise()))
-                            .collect(Collectors.toList());
-
-                    int tachesAssignees = assignations.size();
-
-                    // Compter les tâches terminées
-                    int tachesTerminees = (int) assignations.stream()
-                            .filter(ec -> {
-                                Signalement sig = ec.getSignalement();
-                                if (sig == null) return false;
-
-                                Optional<HistoriqueEtatSignalement> latestHistorique = 
-                                        historiqueEtatSignalementRepository.findLatestBySignalement(sig);
-
-                                if (latestHistorique.isEmpty()) return false;
-
-                                EtatSignalement etat = latestHistorique.get().getEtatSignalement();
-                                return etat != null && "terminé".equalsIgnoreCase(etat.getLibelle());
-                            })
-                            .count();
+        return entrepriseConcernerRepository.getEntrepriseStats().stream()
+                .map(row -> {
+                    int tachesAssignees = row.getTachesAssignees().intValue();
+                    int tachesTerminees = row.getTachesTerminees().intValue();
 
                     // Calculer le taux de complétion
                     double tauxCompletion = tachesAssignees > 0 ?
@@ -293,8 +173,8 @@ public class StatisticsService {
                     double tauxPonctualite = tauxCompletion > 80 ? 95.0 : tauxCompletion * 0.9;
 
                     return StatisticsDTO.EntreprisePerformanceDTO.builder()
-                            .idEntreprise(entreprise.getIdEntreprise())
-                            .nomEntreprise(entreprise.getNomDuCompagnie())
+                            .idEntreprise(row.getIdEntreprise())
+                            .nomEntreprise(row.getNomEntreprise())
                             .tachesAssignees(tachesAssignees)
                             .tachesTerminees(tachesTerminees)
                             .tauxCompletion(Math.round(tauxCompletion * 100.0) / 100.0)
@@ -311,58 +191,10 @@ public class StatisticsService {
      * @return délai moyen en jours, ou 0.0 s'il n'y a aucun signalement résolu
      */
     private Double calculateAverageProcessingTimeInDays() {
-        List<Signalement> allSignalements = signalementRepository.findAll();
-
-        // Récupérer tous les signalements résolus (état = "Résolu" ou "terminé")
-        List<Signalement> resolvedSignalements = new ArrayList<>();
-
-        for (Signalement signalement : allSignalements) {
-            // Récupérer l'état actuel du signalement
-            Optional<HistoriqueEtatSignalement> latestHistorique = 
-                    historiqueEtatSignalementRepository.findLatestBySignalement(signalement);
-
-            if (latestHistorique.isPresent()) {
-                EtatSignalement etat = latestHistorique.get().getEtatSignalement();
-                if (etat != null && ("Résolu".equalsIgnoreCase(etat.getLibelle()) || 
-                                     "terminé".equalsIgnoreCase(etat.getLibelle()))) {
-                    resolvedSignalements.add(signalement);
-                }
-            }
-        }
-
-        // Si aucun signalement résolu, retourner 0.0
-        if (resolvedSignalements.isEmpty()) {
+        Double moyenne = signalementRepository.averageProcessingTimeInDays();
+        if (moyenne == null) {
             return 0.0;
         }
-
-        // Calculer le délai pour chaque signalement résolu
-        double totalJours = 0;
-        int count = 0;
-
-        for (Signalement signalement : resolvedSignalements) {
-            // Trouver l'historique avec l'état "Résolu"
-            List<HistoriqueEtatSignalement> historiques = historiqueEtatSignalementRepository
-                    .findBySignalement_IdSignalementOrderByDateChangementDesc(signalement.getIdSignalement());
-
-            for (HistoriqueEtatSignalement historique : historiques) {
-                EtatSignalement etat = historique.getEtatSignalement();
-                if (etat != null && ("Résolu".equalsIgnoreCase(etat.getLibelle()) || 
-                                     "terminé".equalsIgnoreCase(etat.getLibelle()))) {
-                    // Calculer la durée en jours
-                    long jours = ChronoUnit.DAYS.between(signalement.getDateCreation(), historique.getDateChangement());
-                    totalJours += jours;
-                    count++;
-                    break; // Prendre seulement la première résolution
-                }
-            }
-        }
-
-        // Calculer la moyenne
-        if (count == 0) {
-            return 0.0;
-        }
-
-        double moyenne = totalJours / count;
         return Math.round(moyenne * 100.0) / 100.0;
     }
 }
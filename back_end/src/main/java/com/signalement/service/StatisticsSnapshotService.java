@@ -0,0 +1,126 @@
+package com.signalement.service;
+
+import com.signalement.dto.StatisticsDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Instantané en mémoire des statistiques publiques (résumé, par type, par état).
+ * Les endpoints visiteurs lisent cet instantané au lieu de recalculer les statistiques à chaque appel.
+ * - Les écritures (état, assignation) appellent invalider() : recalcul après commit, regroupé par le tick suivant
+ * - Recalcul complet périodique
+ * - Un instantané plus vieux que statistics.snapshot.max-staleness.millis est recalculé avant d'être servi
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StatisticsSnapshotService {
+
+    private final StatisticsService statisticsService;
+
+    @Value("${statistics.snapshot.max-staleness.millis:60000}")
+    private long maxStalenessMillis;
+
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+    private final Object refreshLock = new Object();
+    private volatile Snapshot snapshot;
+
+    private record Snapshot(StatisticsDTO summary,
+                            List<StatisticsDTO.TypeTravailStatDTO> parType,
+                            List<StatisticsDTO.EtatStatDTO> parEtat,
+                            Instant calculeLe) {
+    }
+
+    public StatisticsDTO getSummaryStatistics() {
+        return current().summary();
+    }
+
+    public List<StatisticsDTO.TypeTravailStatDTO> getStatisticsByWorkType() {
+        return current().parType();
+    }
+
+    public List<StatisticsDTO.EtatStatDTO> getStatisticsByState() {
+        return current().parEtat();
+    }
+
+    /**
+     * Signaler que les données des statistiques ont changé.
+     * Dans une transaction, le recalcul n'est demandé qu'après le commit (sinon il lirait l'ancien état).
+     */
+    public void invalider() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dirty.set(true);
+                }
+            });
+        } else {
+            dirty.set(true);
+        }
+    }
+
+    // Runs every `statistics.snapshot.dirty.check.millis` milliseconds (default 5000 = 5s)
+    @Scheduled(fixedDelayString = "${statistics.snapshot.dirty.check.millis:5000}")
+    public void refreshIfDirty() {
+        if (dirty.get()) {
+            refreshQuietly();
+        }
+    }
+
+    // Runs every `statistics.snapshot.refresh.rate.millis` milliseconds (default 300000 = 5min)
+    @Scheduled(fixedRateString = "${statistics.snapshot.refresh.rate.millis:300000}")
+    public void refreshAll() {
+        refreshQuietly();
+    }
+
+    private Snapshot current() {
+        Snapshot s = snapshot;
+        Instant limite = Instant.now().minusMillis(maxStalenessMillis);
+        if (s == null || s.calculeLe().isBefore(limite)) {
+            s = refresh(limite);
+        }
+        return s;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh(Instant.now());
+        } catch (Exception e) {
+            // Garder l'instantané précédent si le recalcul échoue
+            log.error("Erreur lors du recalcul des statistiques: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recalculer l'instantané sauf si un autre thread l'a déjà recalculé après `limite`
+     */
+    private Snapshot refresh(Instant limite) {
+        synchronized (refreshLock) {
+            Snapshot s = snapshot;
+            if (s != null && s.calculeLe().isAfter(limite) && !dirty.get()) {
+                return s;
+            }
+            dirty.set(false);
+            Instant debut = Instant.now();
+            s = new Snapshot(
+                    statisticsService.getSummaryStatistics(),
+                    List.copyOf(statisticsService.getStatisticsByWorkType()),
+                    List.copyOf(statisticsService.getStatisticsByState()),
+                    debut);
+            snapshot = s;
+            log.debug("Statistiques recalculées en {} ms", Duration.between(debut, Instant.now()).toMillis());
+            return s;
+        }
+    }
+}
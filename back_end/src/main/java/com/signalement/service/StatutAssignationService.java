@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.StatutAssignation;
 import com.signalement.repository.StatutAssignationRepository;
@@ -24,18 +23,24 @@ public class StatutAssignationService {
 
     private final StatutAssignationRepository statutAssignationRepository;
     private final FirebaseConversionService firebaseConversionService;
-    private final Firestore firestore;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
+
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<StatutAssignation> UPSERT =
+            FirebaseUpsertWriter.<StatutAssignation>table("statut_assignation")
+            .id("id_statut_assignation", StatutAssignation::getIdStatutAssignation)
+            .colonne("libelle", StatutAssignation::getLibelle)
+            .lastUpdate("last_update", StatutAssignation::getLastUpdate);
 
     /**
      * Synchroniser les statuts d'assignation depuis Firebase (Tâche 31)
+     * Documents lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
      */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("statut_assignation");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-        int synced = 0;
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        FirebaseUpsertWriter.Lot<StatutAssignation> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -45,36 +50,35 @@ public class StatutAssignationService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = statutAssignationRepository.findById(id);
-                
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    StatutAssignation statut = existing.orElse(new StatutAssignation());
-                    statut.setIdStatutAssignation(id);
-                    statut.setLibelle(doc.getString("libelle"));
-                    statutAssignationRepository.save(statut);
-                    synced++;
-                }
+                StatutAssignation statut = new StatutAssignation();
+                statut.setIdStatutAssignation(id);
+                statut.setLibelle(doc.getString("libelle"));
+                statut.setLastUpdate(firebaseLastUpdate);
+                lot.ajouter(statut);
             }
         }
-        return synced;
+        return lot.resultat();
     }
 
     /**
      * Synchroniser tous les statuts d'assignation vers Firebase (Tâche 32)
      */
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<StatutAssignation> statuts = statutAssignationRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<StatutAssignation> statuts = lastPushDate == null
+            ? statutAssignationRepository.findAll()
+            : statutAssignationRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("statut_assignation");
         for (StatutAssignation statut : statuts) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", statut.getIdStatutAssignation());
             data.put("libelle", statut.getLibelle());
             data.put("last_update", statut.getLastUpdate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
-            firestore.collection("statut_assignation")
-                .document(String.valueOf(statut.getIdStatutAssignation()))
-                .set(data).get();
+            lot.set(String.valueOf(statut.getIdStatutAssignation()), data);
         }
-        log.info("{} statuts d'assignation recréés", statuts.size());
+        lot.terminer();
+        log.info("{} statuts d'assignation envoyés vers Firebase", statuts.size());
         return statuts.size();
     }
 }
@@ -0,0 +1,123 @@
+package com.signalement.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Exécution des étapes de synchronisation (une par table) selon le graphe des dépendances FK.
+ * Une étape démarre dès que toutes les tables dont elle dépend sont terminées ;
+ * les étapes indépendantes s'exécutent en parallèle sur un pool borné (firebase.sync.threads).
+ * La durée totale est celle du chemin critique au lieu de la somme des étapes.
+ */
+@Service
+@Slf4j
+public class SyncDependencyScheduler {
+
+    @FunctionalInterface
+    public interface EtapeSync {
+        int executer() throws ExecutionException, InterruptedException;
+    }
+
+    /**
+     * Étape de synchronisation d'une table
+     * @param dependances tables qui doivent être synchronisées avant celle-ci
+     */
+    public record Etape(String table, Set<String> dependances, EtapeSync action) {
+    }
+
+    /**
+     * Résultat d'une étape : nombre d'éléments synchronisés et durée d'exécution (ms)
+     */
+    public record ResultatEtape(String table, int count, long dureeMs) {
+    }
+
+    private final ExecutorService executor;
+
+    public SyncDependencyScheduler(@Value("${firebase.sync.threads:4}") int threads) {
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "firebase-sync-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Exécuter les étapes en respectant leurs dépendances
+     * @param etapes étapes dans un ordre topologique (une dépendance doit être déclarée avant l'étape qui l'utilise)
+     * @param etapeTerminee appelé (depuis le thread de l'étape) après chaque étape réussie
+     * @return résultats par table, dans l'ordre des étapes
+     * @throws ExecutionException si une étape échoue (les étapes qui en dépendent ne sont pas exécutées)
+     */
+    public Map<String, ResultatEtape> executer(List<Etape> etapes, Consumer<ResultatEtape> etapeTerminee)
+            throws ExecutionException, InterruptedException {
+        Map<String, CompletableFuture<ResultatEtape>> futures = new LinkedHashMap<>();
+        for (Etape etape : etapes) {
+            List<CompletableFuture<ResultatEtape>> parents = new ArrayList<>();
+            for (String dependance : etape.dependances()) {
+                CompletableFuture<ResultatEtape> parent = futures.get(dependance);
+                if (parent == null) {
+                    throw new IllegalArgumentException("Dépendance " + dependance + " inconnue ou déclarée après " + etape.table());
+                }
+                parents.add(parent);
+            }
+            futures.put(etape.table(), CompletableFuture.allOf(parents.toArray(new CompletableFuture[0]))
+                    .thenApplyAsync(ignored -> executerEtape(etape), executor)
+                    .thenApply(resultat -> {
+                        etapeTerminee.accept(resultat);
+                        return resultat;
+                    }));
+        }
+
+        // allOf se termine quand toutes les étapes sont terminées, y compris en erreur :
+        // aucune transaction d'étape ne reste en cours après le retour
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException ignored) {
+            // L'erreur est relancée par get() ci-dessous
+        }
+
+        Map<String, ResultatEtape> resultats = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<ResultatEtape>> entry : futures.entrySet()) {
+            // get() relance l'erreur de la première étape en échec (dans l'ordre des étapes)
+            resultats.put(entry.getKey(), entry.getValue().get());
+        }
+        return resultats;
+    }
+
+    private ResultatEtape executerEtape(Etape etape) {
+        long debut = System.nanoTime();
+        try {
+            int count = etape.action().executer();
+            long dureeMs = (System.nanoTime() - debut) / 1_000_000;
+            log.info("Table {}: {} élément(s) synchronisé(s) en {} ms", etape.table(), count, dureeMs);
+            return new ResultatEtape(etape.table(), count, dureeMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (Exception e) {
+            log.error("Échec de la synchronisation de la table {}: {}", etape.table(), e.getMessage());
+            throw new CompletionException(e);
+        }
+    }
+
+    @PreDestroy
+    public void arreter() {
+        executor.shutdownNow();
+    }
+}
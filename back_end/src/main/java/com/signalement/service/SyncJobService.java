@@ -0,0 +1,183 @@
+package com.signalement.service;
+
+import com.signalement.dto.SyncJobDTO;
+import com.signalement.dto.SyncResultDTO;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Synchronisations Firebase lancées en arrière-plan.
+ * La requête HTTP reçoit immédiatement l'identifiant du job ; l'avancement (lignes par table)
+ * est consultable pendant l'exécution.
+ * Une seule synchronisation à la fois : une demande reçue pendant un job en cours
+ * retourne ce job au lieu d'en lancer un nouveau.
+ */
+@Service
+@Slf4j
+public class SyncJobService {
+
+    public static final String FROM_FIREBASE = "from_firebase";
+    public static final String TO_FIREBASE = "to_firebase";
+
+    public enum TypeSync {
+        FROM_FIREBASE, TO_FIREBASE, FULL
+    }
+
+    /**
+     * Résultat d'une demande de synchronisation
+     * @param nouveau false si un job était déjà en cours (c'est lui qui est retourné)
+     */
+    public record Soumission(SyncJobDTO job, boolean nouveau) {
+    }
+
+    private final FirebaseSyncService syncService;
+    private final ExecutorService executor;
+    private final AtomicReference<SyncJob> enCours = new AtomicReference<>();
+    private final Map<String, SyncJob> jobs;
+
+    public SyncJobService(FirebaseSyncService syncService,
+                          @Value("${sync.jobs.history.size:20}") int tailleHistorique) {
+        this.syncService = syncService;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sync-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Derniers jobs conservés pour la consultation de leur statut
+        this.jobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SyncJob> eldest) {
+                return size() > Math.max(1, tailleHistorique);
+            }
+        });
+    }
+
+    /**
+     * Lancer une synchronisation en arrière-plan, ou retourner celle déjà en cours
+     */
+    public Soumission soumettre(TypeSync type) {
+        SyncJob job = new SyncJob(type);
+        SyncJob existant = enCours.compareAndExchange(null, job);
+        if (existant != null) {
+            log.info("Synchronisation {} demandée pendant le job {} : demande ignorée", type, existant.id);
+            return new Soumission(existant.toDTO(), false);
+        }
+        jobs.put(job.id, job);
+        executor.execute(() -> executer(job));
+        log.info("Job de synchronisation {} ({}) soumis", job.id, type);
+        return new Soumission(job.toDTO(), true);
+    }
+
+    public Optional<SyncJobDTO> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(SyncJob::toDTO);
+    }
+
+    @PreDestroy
+    public void arreter() {
+        executor.shutdownNow();
+    }
+
+    private void executer(SyncJob job) {
+        job.statut = "EN_COURS";
+        try {
+            if (job.type != TypeSync.TO_FIREBASE) {
+                job.fromFirebase = syncService.syncFromFirebase(job.phase(FROM_FIREBASE));
+                if (!job.fromFirebase.isSuccess()) {
+                    job.terminer("Erreur lors de la sync depuis Firebase: " + job.fromFirebase.getError());
+                    return;
+                }
+            }
+            if (job.type != TypeSync.FROM_FIREBASE) {
+                job.toFirebase = syncService.syncToFirebase(job.phase(TO_FIREBASE));
+                if (!job.toFirebase.isSuccess()) {
+                    job.terminer("Erreur lors de la sync vers Firebase: " + job.toFirebase.getError());
+                    return;
+                }
+            }
+            job.terminer(null);
+        } catch (RuntimeException e) {
+            log.error("Erreur dans le job de synchronisation {}", job.id, e);
+            job.terminer(e.getMessage());
+        } finally {
+            enCours.compareAndSet(job, null);
+        }
+    }
+
+    /**
+     * État d'un job, mis à jour par le thread de synchronisation et lu par les requêtes de statut
+     */
+    private static final class SyncJob {
+
+        // Nombre d'étapes (tables) par sens de synchronisation
+        private static final int TABLES_PAR_SENS = 14;
+
+        private final String id = UUID.randomUUID().toString();
+        private final TypeSync type;
+        private final LocalDateTime dateDebut = LocalDateTime.now();
+        private final Map<String, Map<String, Integer>> progression = new ConcurrentHashMap<>();
+        private final AtomicInteger tablesTerminees = new AtomicInteger();
+        private volatile String statut = "EN_ATTENTE";
+        private volatile LocalDateTime dateFin;
+        private volatile SyncResultDTO fromFirebase;
+        private volatile SyncResultDTO toFirebase;
+        private volatile String error;
+
+        private SyncJob(TypeSync type) {
+            this.type = type;
+        }
+
+        private SyncProgression phase(String sens) {
+            Map<String, Integer> lignes = progression.computeIfAbsent(sens, s -> new ConcurrentHashMap<>());
+            return new SyncProgression() {
+                @Override
+                public void lignesTraitees(String table, int count) {
+                    lignes.merge(table, count, Integer::sum);
+                }
+
+                @Override
+                public void tableTerminee(String table) {
+                    lignes.putIfAbsent(table, 0);
+                    tablesTerminees.incrementAndGet();
+                }
+            };
+        }
+
+        private void terminer(String erreur) {
+            this.error = erreur;
+            this.dateFin = LocalDateTime.now();
+            this.statut = erreur == null ? "TERMINE" : "ECHEC";
+        }
+
+        private SyncJobDTO toDTO() {
+            Map<String, Map<String, Integer>> copie = new LinkedHashMap<>();
+            progression.forEach((sens, lignes) -> copie.put(sens, new LinkedHashMap<>(lignes)));
+            return new SyncJobDTO(
+                id,
+                type.name(),
+                statut,
+                dateDebut,
+                dateFin,
+                tablesTerminees.get(),
+                type == TypeSync.FULL ? 2 * TABLES_PAR_SENS : TABLES_PAR_SENS,
+                copie,
+                fromFirebase,
+                toFirebase,
+                error
+            );
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.signalement.service;
+
+/**
+ * Suivi de l'avancement d'une synchronisation, table par table.
+ * Les méthodes sont appelées depuis les threads de synchronisation (implémentation thread-safe).
+ */
+public interface SyncProgression {
+
+    /**
+     * Un lot de lignes d'une table a été validé
+     */
+    void lignesTraitees(String table, int count);
+
+    /**
+     * Toutes les lignes d'une table ont été traitées
+     */
+    void tableTerminee(String table);
+}
@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.*;
 import com.signalement.repository.*;
@@ -23,15 +22,30 @@ import java.util.concurrent.ExecutionException;
 public class TentativeConnexionService {
 
     private final TentativeConnexionRepository tentativeRepository;
-    private final UtilisateurRepository utilisateurRepository;    private final FirebaseConversionService firebaseConversionService;    private final Firestore firestore;
+    private final UtilisateurRepository utilisateurRepository;    private final FirebaseConversionService firebaseConversionService;
+    private final FirebaseIdentityResolver identityResolver;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
 
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<TentativeConnexion> UPSERT =
+            FirebaseUpsertWriter.<TentativeConnexion>table("tentative_connexion")
+            .id("id_tentative", TentativeConnexion::getIdTentative)
+            .colonneFacultative("date_tentative", TentativeConnexion::getDateTentative)
+            .colonneFacultative("success", TentativeConnexion::getSuccess)
+            .colonne("id_utilisateur", t -> t.getUtilisateur().getIdUtilisateur())
+            .lastUpdate("last_update", TentativeConnexion::getLastUpdate);
+
+    /**
+     * Appliquer des documents Firebase, lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
+     */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("tentative_connexion");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        // Références chargées en bloc pour vérifier les clés étrangères ; le Last-Write-Wins est décidé par l'upsert
+        Map<Integer, Utilisateur> utilisateurs = identityResolver.prefetch(documents, "id_utilisateur", utilisateurRepository, Utilisateur::getIdUtilisateur);
 
-        int synced = 0;
+        FirebaseUpsertWriter.Lot<TentativeConnexion> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -41,40 +55,42 @@ public class TentativeConnexionService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = tentativeRepository.findById(id);
+                TentativeConnexion tentative = new TentativeConnexion();
+                tentative.setIdTentative(id);
+                
+                Long dateTentativeMs = firebaseConversionService.getLongValue(doc, "date_tentative");
+                if (dateTentativeMs != null) {
+                    tentative.setDateTentative(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(dateTentativeMs), ZoneId.systemDefault()));
+                }
+                
+                Boolean success = doc.getBoolean("success");
+                if (success != null) {
+                    tentative.setSuccess(success);
+                }
+                
+                Integer utilisateurId = firebaseConversionService.getLongAsInteger(doc, "id_utilisateur");
+                Utilisateur utilisateur = utilisateurs.get(utilisateurId);
                 
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    TentativeConnexion tentative = existing.orElse(new TentativeConnexion());
-                    tentative.setIdTentative(id);
-                    
-                    Long dateTentativeMs = firebaseConversionService.getLongValue(doc, "date_tentative");
-                    if (dateTentativeMs != null) {
-                        tentative.setDateTentative(LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(dateTentativeMs), ZoneId.systemDefault()));
-                    }
-                    
-                    Boolean success = doc.getBoolean("success");
-                    if (success != null) {
-                        tentative.setSuccess(success);
-                    }
-                    
-                    Integer utilisateurId = firebaseConversionService.getLongAsInteger(doc, "id_utilisateur");
-                    Utilisateur utilisateur = utilisateurRepository.findById(utilisateurId).orElse(null);
-                    
-                    if (utilisateur != null) {
-                        tentative.setUtilisateur(utilisateur);
-                        tentativeRepository.save(tentative);
-                        synced++;
-                    }
+                if (utilisateur != null) {
+                    tentative.setUtilisateur(utilisateur);
+                    tentative.setLastUpdate(firebaseLastUpdate);
+                    lot.ajouter(tentative);
+                } else {
+                    lot.ignorer(doc);
                 }
             }
         }
-        return synced;
+        return lot.resultat();
     }
 
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<TentativeConnexion> tentatives = tentativeRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<TentativeConnexion> tentatives = lastPushDate == null
+            ? tentativeRepository.findAll()
+            : tentativeRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("tentative_connexion");
         for (TentativeConnexion tentative : tentatives) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", tentative.getIdTentative());
@@ -89,11 +105,10 @@ public class TentativeConnexionService {
                 .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
             data.put("id_utilisateur", tentative.getUtilisateur().getIdUtilisateur());
             
-            firestore.collection("tentative_connexion")
-                .document(String.valueOf(tentative.getIdTentative()))
-                .set(data).get();
+            lot.set(String.valueOf(tentative.getIdTentative()), data);
         }
-        log.info("{} tentatives de connexion recréées", tentatives.size());
+        lot.terminer();
+        log.info("{} tentatives de connexion envoyées vers Firebase", tentatives.size());
         return tentatives.size();
     }
 }
@@ -0,0 +1,111 @@
+package com.signalement.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.signalement.entity.DomainEvent;
+import com.signalement.repository.SignalementRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tuiles vectorielles (MVT) des signalements générées par PostGIS, avec un cache mémoire.
+ * - Clé de cache préfixée par une génération : invalider() passe à la génération suivante,
+ *   les tuiles en cours de calcul avec les anciennes données ne sont jamais servies ensuite
+ * - Invalidation à la création, au changement d'état, à la modification ou à la suppression d'un signalement
+ *   (événements métier) et après un import Firebase
+ * - ETag calculé sur le contenu : une tuile inchangée après invalidation garde le même ETag
+ */
+@Service
+@Slf4j
+public class TuileSignalementService implements DomainEventConsumer {
+
+    private static final Set<String> EVENEMENTS_CARTE = Set.of(
+            DomainEvent.SIGNALEMENT_CREE, DomainEvent.ETAT_CHANGE,
+            DomainEvent.SIGNALEMENT_MODIFIE, DomainEvent.SIGNALEMENT_SUPPRIME);
+
+    private static final int ZOOM_MAX = 22;
+
+    /**
+     * Tuile encodée et son ETag
+     */
+    public record Tuile(byte[] contenu, String etag) {
+    }
+
+    private final SignalementRepository signalementRepository;
+    private final Cache<String, Tuile> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    public TuileSignalementService(SignalementRepository signalementRepository,
+                                   @Value("${map.tiles.cache.max-size:5000}") long maxSize,
+                                   @Value("${map.tiles.cache.ttl.seconds:600}") long ttlSeconds) {
+        this.signalementRepository = signalementRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    public Tuile getTuile(int z, int x, int y) {
+        if (z < 0 || z > ZOOM_MAX) {
+            throw new IllegalArgumentException("Zoom invalide : " + z);
+        }
+        int nombre = 1 << z;
+        if (x < 0 || x >= nombre || y < 0 || y >= nombre) {
+            throw new IllegalArgumentException("Tuile hors limites : " + z + "/" + x + "/" + y);
+        }
+        return cache.get(generation.get() + ":" + z + "/" + x + "/" + y, cle -> calculer(z, x, y));
+    }
+
+    /**
+     * Signaler que les signalements ont changé (après le commit si appelé dans une transaction)
+     */
+    public void invalider() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    nouvelleGeneration();
+                }
+            });
+        } else {
+            nouvelleGeneration();
+        }
+    }
+
+    @Override
+    public String nom() {
+        return "tuiles";
+    }
+
+    @Override
+    public boolean traiter(List<DomainEvent> evenements) {
+        if (evenements.stream().anyMatch(e -> EVENEMENTS_CARTE.contains(e.getType()))) {
+            nouvelleGeneration();
+        }
+        return true;
+    }
+
+    private void nouvelleGeneration() {
+        generation.incrementAndGet();
+        // Les entrées des générations précédentes ne seront plus lues
+        cache.invalidateAll();
+    }
+
+    private Tuile calculer(int z, int x, int y) {
+        byte[] contenu = signalementRepository.tuileMvt(z, x, y);
+        if (contenu == null) {
+            contenu = new byte[0];
+        }
+        log.debug("Tuile {}/{}/{} calculée: {} octet(s)", z, x, y, contenu.length);
+        return new Tuile(contenu, "\"" + DigestUtils.md5DigestAsHex(contenu) + "\"");
+    }
+}
@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.TypeTravail;
 import com.signalement.repository.TypeTravailRepository;
@@ -24,18 +23,24 @@ public class TypeTravailService {
 
     private final TypeTravailRepository typeTravailRepository;
     private final FirebaseConversionService firebaseConversionService;
-    private final Firestore firestore;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
+
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<TypeTravail> UPSERT =
+            FirebaseUpsertWriter.<TypeTravail>table("type_travail")
+            .id("id_type_travail", TypeTravail::getIdTypeTravail)
+            .colonne("libelle", TypeTravail::getLibelle)
+            .lastUpdate("last_update", TypeTravail::getLastUpdate);
 
     /**
      * Synchroniser les types de travail depuis Firebase (Tâche 31)
+     * Documents lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
      */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("type_travail");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-        int synced = 0;
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        FirebaseUpsertWriter.Lot<TypeTravail> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -45,36 +50,35 @@ public class TypeTravailService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = typeTravailRepository.findById(id);
-                
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    TypeTravail type = existing.orElse(new TypeTravail());
-                    type.setIdTypeTravail(id);
-                    type.setLibelle(doc.getString("libelle"));
-                    typeTravailRepository.save(type);
-                    synced++;
-                }
+                TypeTravail type = new TypeTravail();
+                type.setIdTypeTravail(id);
+                type.setLibelle(doc.getString("libelle"));
+                type.setLastUpdate(firebaseLastUpdate);
+                lot.ajouter(type);
             }
         }
-        return synced;
+        return lot.resultat();
     }
 
     /**
      * Synchroniser tous les types de travail vers Firebase (Tâche 32)
      */
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<TypeTravail> types = typeTravailRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<TypeTravail> types = lastPushDate == null
+            ? typeTravailRepository.findAll()
+            : typeTravailRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("type_travail");
         for (TypeTravail type : types) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", type.getIdTypeTravail());
             data.put("libelle", type.getLibelle());
             data.put("last_update", type.getLastUpdate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
-            firestore.collection("type_travail")
-                .document(String.valueOf(type.getIdTypeTravail()))
-                .set(data).get();
+            lot.set(String.valueOf(type.getIdTypeTravail()), data);
         }
-        log.info("{} types de travail recréés", types.size());
+        lot.terminer();
+        log.info("{} types de travail envoyés vers Firebase", types.size());
         return types.size();
     }
 }
@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.TypeUtilisateur;
 import com.signalement.repository.TypeUtilisateurRepository;
@@ -24,18 +23,24 @@ public class TypeUtilisateurService {
 
     private final TypeUtilisateurRepository typeUtilisateurRepository;
     private final FirebaseConversionService firebaseConversionService;
-    private final Firestore firestore;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
+
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<TypeUtilisateur> UPSERT =
+            FirebaseUpsertWriter.<TypeUtilisateur>table("type_utilisateur")
+            .id("id_type_utilisateur", TypeUtilisateur::getIdTypeUtilisateur)
+            .colonne("libelle", TypeUtilisateur::getLibelle)
+            .lastUpdate("last_update", TypeUtilisateur::getLastUpdate);
 
     /**
      * Synchroniser les types d'utilisateur depuis Firebase (Tâche 31)
+     * Documents lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
      */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("type_utilisateur");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-        int synced = 0;
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        FirebaseUpsertWriter.Lot<TypeUtilisateur> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -45,36 +50,35 @@ public class TypeUtilisateurService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = typeUtilisateurRepository.findById(id);
-                
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    TypeUtilisateur type = existing.orElse(new TypeUtilisateur());
-                    type.setIdTypeUtilisateur(id);
-                    type.setLibelle(doc.getString("libelle"));
-                    typeUtilisateurRepository.save(type);
-                    synced++;
-                }
+                TypeUtilisateur type = new TypeUtilisateur();
+                type.setIdTypeUtilisateur(id);
+                type.setLibelle(doc.getString("libelle"));
+                type.setLastUpdate(firebaseLastUpdate);
+                lot.ajouter(type);
             }
         }
-        return synced;
+        return lot.resultat();
     }
 
     /**
      * Synchroniser tous les types d'utilisateur vers Firebase (Tâche 32)
      */
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<TypeUtilisateur> types = typeUtilisateurRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<TypeUtilisateur> types = lastPushDate == null
+            ? typeUtilisateurRepository.findAll()
+            : typeUtilisateurRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("type_utilisateur");
         for (TypeUtilisateur type : types) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", type.getIdTypeUtilisateur());
             data.put("libelle", type.getLibelle());
             data.put("last_update", type.getLastUpdate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
-            firestore.collection("type_utilisateur")
-                .document(String.valueOf(type.getIdTypeUtilisateur()))
-                .set(data).get();
+            lot.set(String.valueOf(type.getIdTypeUtilisateur()), data);
         }
-        log.info("{} types d'utilisateur recréés", types.size());
+        lot.terminer();
+        log.info("{} types d'utilisateur envoyés vers Firebase", types.size());
         return types.size();
     }
 }
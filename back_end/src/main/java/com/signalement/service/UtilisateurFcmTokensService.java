@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.Utilisateur;
 import com.signalement.entity.UtilisateurFcmTokens;
@@ -28,19 +27,32 @@ public class UtilisateurFcmTokensService {
     private final UtilisateurFcmTokensRepository utilisateurFcmTokensRepository;
     private final UtilisateurRepository utilisateurRepository;
     private final FirebaseConversionService firebaseConversionService;
-    private final Firestore firestore;
+    private final FirebaseIdentityResolver identityResolver;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
+
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<UtilisateurFcmTokens> UPSERT =
+            FirebaseUpsertWriter.<UtilisateurFcmTokens>table("utilisateur_fcm_tokens")
+            .cle("fcm_token", UtilisateurFcmTokens::getFcmToken)
+            .colonne("device_name", UtilisateurFcmTokens::getDeviceName)
+            .colonneFacultative("date_creation", UtilisateurFcmTokens::getDateCreation, "CURRENT_DATE")
+            .colonne("enable", UtilisateurFcmTokens::getEnable)
+            .colonne("id_utilisateur", t -> t.getUtilisateur().getIdUtilisateur())
+            .lastUpdate("last_update", UtilisateurFcmTokens::getLastUpdate);
 
     /**
      * Synchroniser les tokens FCM depuis Firebase (Tâche 31)
      * Récupère les tokens modifiés après la date lastSyncDate et les met à jour en BD
+     * Documents lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
      */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("utilisateur_fcm_tokens");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        // Références chargées en bloc pour vérifier les clés étrangères ; le Last-Write-Wins est décidé par l'upsert
+        Map<Integer, Utilisateur> utilisateurs = identityResolver.prefetch(documents, "id_utilisateur", utilisateurRepository, Utilisateur::getIdUtilisateur);
 
-        int synced = 0;
+        FirebaseUpsertWriter.Lot<UtilisateurFcmTokens> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -50,41 +62,37 @@ public class UtilisateurFcmTokensService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 String fcmToken = doc.getString("fcm_token");
-                var existing = utilisateurFcmTokensRepository.findByFcmToken(fcmToken);
+                UtilisateurFcmTokens token = new UtilisateurFcmTokens();
+                token.setFcmToken(fcmToken);
+                token.setDeviceName(doc.getString("device_name"));
                 
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    UtilisateurFcmTokens token = existing.orElse(new UtilisateurFcmTokens());
-                    token.setFcmToken(fcmToken);
-                    token.setDeviceName(doc.getString("device_name"));
-                    
-                    // Récupérer la date de création depuis Firebase (en millisecondes)
-                    Long dateCreationMs = firebaseConversionService.getLongValue(doc, "date_creation");
-                    if (dateCreationMs != null) {
-                        LocalDate dateCreation = LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(dateCreationMs), ZoneId.systemDefault()).toLocalDate();
-                        token.setDateCreation(dateCreation);
-                    }
-                    
-                    // Récupérer le champ enable
-                    Boolean enable = (Boolean) doc.get("enable");
-                    token.setEnable(enable != null ? enable : true);
-                    
-                    // Récupérer l'utilisateur associé
-                    Integer utilisateurId = firebaseConversionService.getLongAsInteger(doc, "id_utilisateur");
-                    if (utilisateurId != null) {
-                        Utilisateur utilisateur = utilisateurRepository.findById(utilisateurId).orElse(null);
-                        if (utilisateur != null) {
-                            token.setUtilisateur(utilisateur);
-                            token.setLastUpdate(firebaseLastUpdate);
-                            utilisateurFcmTokensRepository.save(token);
-                            synced++;
-                        }
-                    }
+                // Récupérer la date de création depuis Firebase (en millisecondes)
+                Long dateCreationMs = firebaseConversionService.getLongValue(doc, "date_creation");
+                if (dateCreationMs != null) {
+                    LocalDate dateCreation = LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(dateCreationMs), ZoneId.systemDefault()).toLocalDate();
+                    token.setDateCreation(dateCreation);
+                }
+                
+                // Récupérer le champ enable
+                Boolean enable = (Boolean) doc.get("enable");
+                token.setEnable(enable != null ? enable : true);
+                
+                // Récupérer l'utilisateur associé
+                Integer utilisateurId = firebaseConversionService.getLongAsInteger(doc, "id_utilisateur");
+                Utilisateur utilisateur = utilisateurId != null ? utilisateurs.get(utilisateurId) : null;
+                if (utilisateur != null) {
+                    token.setUtilisateur(utilisateur);
+                    token.setLastUpdate(firebaseLastUpdate);
+                    lot.ajouter(token);
+                } else {
+                    lot.ignorer(doc);
                 }
             }
         }
-        log.info("{} tokens FCM synchronisés depuis Firebase", synced);
-        return synced;
+        FirebaseUpsertWriter.Resultat resultat = lot.resultat();
+        log.info("{} tokens FCM synchronisés depuis Firebase", resultat.lignes());
+        return resultat;
     }
 
     /**
@@ -92,8 +100,12 @@ public class UtilisateurFcmTokensService {
      * Envoie tous les tokens de la BD vers Firebase
      */
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<UtilisateurFcmTokens> tokens = utilisateurFcmTokensRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<UtilisateurFcmTokens> tokens = lastPushDate == null
+            ? utilisateurFcmTokensRepository.findAll()
+            : utilisateurFcmTokensRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("utilisateur_fcm_tokens");
         for (UtilisateurFcmTokens token : tokens) {
             Map<String, Object> data = new HashMap<>();
             data.put("fcm_token", token.getFcmToken());
@@ -112,11 +124,10 @@ public class UtilisateurFcmTokensService {
                 data.put("id_utilisateur", token.getUtilisateur().getIdUtilisateur());
             }
             
-            firestore.collection("utilisateur_fcm_tokens")
-                .document(String.valueOf(token.getIdUtilisateurFcmTokens()))  // Utiliser le token comme document ID
-                .set(data).get();
+            lot.set(String.valueOf(token.getIdUtilisateurFcmTokens()), data);
         }
-        log.info("{} tokens FCM recréés dans Firebase", tokens.size());
+        lot.terminer();
+        log.info("{} tokens FCM envoyés vers Firebase", tokens.size());
         return tokens.size();
     }
 
@@ -1,6 +1,5 @@
 package com.signalement.service;
 
-import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.signalement.entity.Utilisateur;
 import com.signalement.entity.TypeUtilisateur;
@@ -28,7 +27,10 @@ public class UtilisateurService {
     private final UtilisateurRepository utilisateurRepository;
     private final TypeUtilisateurRepository typeUtilisateurRepository;
     private final FirebaseConversionService firebaseConversionService;
-    private final Firestore firestore;
+    private final FirebaseIdentityResolver identityResolver;
+    private final FirebaseUpsertWriter upsertWriter;
+    private final FirestoreBulkWriter firestoreBulkWriter;
+    private final SessionService sessionService;
 
     @Transactional(readOnly = true)
     public List<Utilisateur> getAllUtilisateurs() {
@@ -61,6 +63,7 @@ public class UtilisateurService {
                     existing.setPrenom(utilisateur.getPrenom());
                     existing.setEmail(utilisateur.getEmail());
                     existing.setIsBlocked(utilisateur.getIsBlocked());
+                    sessionService.evictUtilisateur(id);
                     return utilisateurRepository.save(existing);
                 })
                 .orElseThrow(() -> new IllegalArgumentException("Utilisateur non trouvé avec l'ID: " + id));
@@ -69,17 +72,34 @@ public class UtilisateurService {
     @Transactional
     public void deleteUtilisateur(Integer id) {
         utilisateurRepository.deleteById(id);
+        sessionService.evictUtilisateur(id);
     }
 
+    // Upsert Last-Write-Wins de l'import Firebase -> PostgreSQL
+    private static final FirebaseUpsertWriter.Table<Utilisateur> UPSERT =
+            FirebaseUpsertWriter.<Utilisateur>table("utilisateur")
+            .id("id_utilisateur", Utilisateur::getIdUtilisateur)
+            .colonne("nom", Utilisateur::getNom)
+            .colonne("prenom", Utilisateur::getPrenom)
+            .colonne("email", Utilisateur::getEmail)
+            .colonne("mot_de_passe", Utilisateur::getMotDePasse)
+            .colonne("firebase_uid", Utilisateur::getFirebaseUid)
+            .colonne("is_blocked", Utilisateur::getIsBlocked)
+            .colonne("id_type_utilisateur", u -> u.getTypeUtilisateur().getIdTypeUtilisateur())
+            .lastUpdate("last_update", Utilisateur::getLastUpdate);
+
     // ======== FIREBASE SYNC METHODS (Tâches 31 & 32) ========
     
+    /**
+     * Appliquer des documents Firebase, lus par FirebaseSyncService (par lots) ou reçus par le listener temps réel
+     * @param lastSyncDate seuls les documents modifiés après cette date sont appliqués
+     */
     @Transactional
-    public int syncFromFirebase(LocalDateTime lastSyncDate) throws ExecutionException, InterruptedException {
-        CollectionReference collection = firestore.collection("utilisateurs");
-        ApiFuture<QuerySnapshot> future = collection.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+    public FirebaseUpsertWriter.Resultat importerDocuments(List<QueryDocumentSnapshot> documents, LocalDateTime lastSyncDate) {
+        // Références chargées en bloc pour vérifier les clés étrangères ; le Last-Write-Wins est décidé par l'upsert
+        Map<Integer, TypeUtilisateur> types = identityResolver.prefetch(documents, "id_type_utilisateur", typeUtilisateurRepository, TypeUtilisateur::getIdTypeUtilisateur);
 
-        int synced = 0;
+        FirebaseUpsertWriter.Lot<Utilisateur> lot = upsertWriter.ouvrir(UPSERT);
         for (QueryDocumentSnapshot doc : documents) {
             Long lastUpdateMs = doc.getLong("last_update");
             if (lastUpdateMs == null) continue;
@@ -89,38 +109,41 @@ public class UtilisateurService {
 
             if (firebaseLastUpdate.isAfter(lastSyncDate)) {
                 Integer id = firebaseConversionService.getLongAsInteger(doc, "id");
-                var existing = utilisateurRepository.findById(id);
+                Utilisateur utilisateur = new Utilisateur();
+                utilisateur.setIdUtilisateur(id);
+                utilisateur.setNom(doc.getString("nom"));
+                utilisateur.setPrenom(doc.getString("prenom"));
+                utilisateur.setEmail(doc.getString("email"));
+                utilisateur.setMotDePasse(doc.getString("mot_de_passe_hash"));
+                // Synchronisation du firebase UID
+                utilisateur.setFirebaseUid(doc.getString("firebase_uid"));
+                
+                Boolean isBlocked = doc.getBoolean("is_blocked");
+                utilisateur.setIsBlocked(isBlocked != null ? isBlocked : false);
+                
+                Integer typeId = firebaseConversionService.getLongAsInteger(doc, "id_type_utilisateur");
+                TypeUtilisateur type = types.get(typeId);
                 
-                if (existing.isEmpty() || firebaseLastUpdate.isAfter(existing.get().getLastUpdate())) {
-                    Utilisateur utilisateur = existing.orElse(new Utilisateur());
-                    utilisateur.setIdUtilisateur(id);
-                    utilisateur.setNom(doc.getString("nom"));
-                    utilisateur.setPrenom(doc.getString("prenom"));
-                    utilisateur.setEmail(doc.getString("email"));
-                    utilisateur.setMotDePasse(doc.getString("mot_de_passe_hash"));
-                    // Synchronisation du firebase UID
-                    utilisateur.setFirebaseUid(doc.getString("firebase_uid"));
-                    
-                    Boolean isBlocked = doc.getBoolean("is_blocked");
-                    utilisateur.setIsBlocked(isBlocked != null ? isBlocked : false);
-                    
-                    Integer typeId = firebaseConversionService.getLongAsInteger(doc, "id_type_utilisateur");
-                    TypeUtilisateur type = typeUtilisateurRepository.findById(typeId).orElse(null);
-                    
-                    if (type != null) {
-                        utilisateur.setTypeUtilisateur(type);
-                        utilisateurRepository.save(utilisateur);
-                        synced++;
-                    }
+                if (type != null) {
+                    utilisateur.setTypeUtilisateur(type);
+                    utilisateur.setLastUpdate(firebaseLastUpdate);
+                    lot.ajouter(utilisateur);
+                    sessionService.evictUtilisateur(id);
+                } else {
+                    lot.ignorer(doc);
                 }
             }
         }
-        return synced;
+        return lot.resultat();
     }
 
     @Transactional(readOnly = true)
-    public int syncAllToFirebase() throws ExecutionException, InterruptedException {
-        List<Utilisateur> utilisateurs = utilisateurRepository.findAll();
+    public int syncToFirebase(LocalDateTime lastPushDate) throws ExecutionException, InterruptedException {
+        // lastPushDate null : tout envoyer, sinon seulement les lignes modifiées depuis le dernier envoi
+        List<Utilisateur> utilisateurs = lastPushDate == null
+            ? utilisateurRepository.findAll()
+            : utilisateurRepository.findByLastUpdateAfter(lastPushDate);
+        FirestoreBulkWriter.Lot lot = firestoreBulkWriter.ouvrir("utilisateurs");
         for (Utilisateur utilisateur : utilisateurs) {
             Map<String, Object> data = new HashMap<>();
             data.put("id", utilisateur.getIdUtilisateur());
@@ -136,11 +159,10 @@ public class UtilisateurService {
             data.put("last_update", utilisateur.getLastUpdate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
             data.put("id_type_utilisateur", utilisateur.getTypeUtilisateur().getIdTypeUtilisateur());
             
-            firestore.collection("utilisateurs")
-                .document(String.valueOf(utilisateur.getIdUtilisateur()))
-                .set(data).get();
+            lot.set(String.valueOf(utilisateur.getIdUtilisateur()), data);
         }
-        log.info("{} utilisateurs recréés", utilisateurs.size());
+        lot.terminer();
+        log.info("{} utilisateurs envoyés vers Firebase", utilisateurs.size());
         return utilisateurs.size();
     }
 }
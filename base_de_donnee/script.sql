@@ -109,6 +109,24 @@ CREATE TABLE session(
    FOREIGN KEY(Id_utilisateur) REFERENCES utilisateur(Id_utilisateur)
 );
 
+-- Jetons de session signés révoqués à la déconnexion (session.mode=signed), purgés à expiration
+CREATE TABLE jeton_revoque(
+   signature VARCHAR(64),
+   date_expiration TIMESTAMP NOT NULL,
+   date_revocation TIMESTAMP NOT NULL,
+   PRIMARY KEY(signature)
+);
+
+CREATE INDEX idx_jeton_revoque_date_revocation ON jeton_revoque(date_revocation);
+
+-- Utilisateurs bloqués (session.mode=signed) : jetons émis avant date_revocation refusés, purgés après la durée de session
+CREATE TABLE utilisateur_revoque(
+   Id_utilisateur INTEGER,
+   date_revocation TIMESTAMP NOT NULL,
+   PRIMARY KEY(Id_utilisateur),
+   FOREIGN KEY(Id_utilisateur) REFERENCES utilisateur(Id_utilisateur) ON DELETE CASCADE
+);
+
 CREATE TABLE tentative_connexion(
    Id_tentative SERIAL,
    date_tentative TIMESTAMP NOT NULL,
@@ -164,3 +182,78 @@ CREATE TABLE utilisateur_fcm_tokens(
    FOREIGN KEY(Id_utilisateur) REFERENCES utilisateur(Id_utilisateur)
 );
 
+-- Projection de l'état courant (dernier historique_etat_signalement par signalement)
+CREATE TABLE etat_courant_signalement(
+   Id_signalement INTEGER,
+   Id_etat_signalement INTEGER NOT NULL,
+   date_changement_etat TIMESTAMP NOT NULL,
+   last_update TIMESTAMP NOT NULL,
+   PRIMARY KEY(Id_signalement),
+   FOREIGN KEY(Id_signalement) REFERENCES signalement(Id_signalement) ON DELETE CASCADE,
+   FOREIGN KEY(Id_etat_signalement) REFERENCES etat_signalement(Id_etat_signalement)
+);
+
+CREATE INDEX idx_etat_courant_signalement_etat ON etat_courant_signalement(Id_etat_signalement);
+
+-- Pagination / filtres des listes de signalements (tri plus récents d'abord)
+CREATE INDEX idx_signalement_date_creation ON signalement(date_creation DESC, Id_signalement DESC);
+CREATE INDEX idx_signalement_type_travail ON signalement(Id_type_travail);
+
+-- Recherche spatiale (emprise, rayon, plus proches voisins) et tuiles de la carte
+CREATE INDEX idx_signalement_geom ON signalement USING GIST (geom);
+-- Emprises et tuiles comparées en geometry (plan lon/lat) : valables pour les emprises larges des zooms faibles
+CREATE INDEX idx_signalement_geom_geometry ON signalement USING GIST ((geom::geometry));
+
+-- État à une date (avancement, relecture de la carte) : dernier changement antérieur à la date par signalement
+CREATE INDEX idx_historique_etat_signalement_date ON historique_etat_signalement(Id_signalement, date_changement_etat DESC, Id_historique DESC);
+
+-- Pierres tombales : documents Firebase à supprimer au prochain envoi PostgreSQL -> Firebase
+CREATE TABLE suppression_firebase(
+   Id_suppression_firebase BIGSERIAL,
+   collection VARCHAR(50) NOT NULL,
+   document_id VARCHAR(50) NOT NULL,
+   date_suppression TIMESTAMP NOT NULL,
+   PRIMARY KEY(Id_suppression_firebase)
+);
+
+-- Filigrane du mode temps réel (listeners Firestore) : dernier last_update appliqué par collection
+CREATE TABLE curseur_firebase(
+   collection VARCHAR(50),
+   last_update TIMESTAMP NOT NULL,
+   PRIMARY KEY(collection)
+);
+
+-- Notifications FCM en attente d'envoi (une ligne par device), écrites avec le changement d'état
+CREATE TABLE notification_fcm(
+   Id_notification_fcm BIGSERIAL,
+   Id_utilisateur_fcm_tokens INTEGER NOT NULL,
+   titre VARCHAR(255) NOT NULL,
+   corps VARCHAR(500) NOT NULL,
+   statut VARCHAR(20) NOT NULL,
+   tentatives INTEGER NOT NULL,
+   prochaine_tentative TIMESTAMP NOT NULL,
+   date_creation TIMESTAMP NOT NULL,
+   derniere_erreur VARCHAR(500),
+   PRIMARY KEY(Id_notification_fcm),
+   FOREIGN KEY(Id_utilisateur_fcm_tokens) REFERENCES utilisateur_fcm_tokens(Id_utilisateur_fcm_tokens) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_notification_fcm_a_envoyer ON notification_fcm(statut, prochaine_tentative);
+
+-- Événements métier (outbox) écrits dans la transaction de la modification, relayés aux consommateurs
+CREATE TABLE domain_event(
+   Id_domain_event BIGSERIAL,
+   type VARCHAR(50) NOT NULL,
+   Id_signalement INTEGER NOT NULL,
+   Id_reference INTEGER,
+   libelle VARCHAR(100),
+   date_evenement TIMESTAMP NOT NULL,
+   PRIMARY KEY(Id_domain_event)
+);
+
+-- Position de chaque consommateur d'événements métier
+CREATE TABLE curseur_domain_event(
+   consommateur VARCHAR(50),
+   dernier_id BIGINT NOT NULL,
+   PRIMARY KEY(consommateur)
+);
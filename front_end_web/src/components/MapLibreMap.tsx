@@ -15,19 +15,32 @@ interface Signalement {
   etatActuelId?: number
 }
 
+interface Cluster {
+  latitude: number
+  longitude: number
+  total: number
+  parEtat?: Record<string, number>
+  idSignalement?: number
+}
+
 interface Props {
   signalements?: Signalement[]
   selectedId?: number | null
   onMarkerClick?: (id: number) => void
+  // Regroupement côté serveur : les points sont chargés pour l'emprise affichée (signalements ignoré)
+  clustered?: boolean
 }
 
-export default function MapLibreMap({ signalements = [], selectedId = null, onMarkerClick }: Props) {
+export default function MapLibreMap({ signalements = [], selectedId = null, onMarkerClick, clustered = false }: Props) {
   const mapContainer = useRef<HTMLDivElement>(null)
   const map = useRef<maplibregl.Map | null>(null)
   const markersRef = useRef<maplibregl.Marker[]>([])
   const popupRef = useRef<maplibregl.Popup | null>(null)
   const [status, setStatus] = useState<'loading' | 'local' | 'fallback'>('loading')
   const [etatOptions, setEtatOptions] = useState<{idEtatSignalement: number, libelle: string}[]>([])
+  const [mapReady, setMapReady] = useState(false)
+  // Détails préchargés pour les points de l'emprise affichée (id -> détails)
+  const detailsCache = useRef<Map<number, any>>(new Map())
 
   const CENTER: [number, number] = [47.5079, -18.8792] // [lng, lat] Antananarivo
   const ZOOM = 13
@@ -132,6 +145,165 @@ export default function MapLibreMap({ signalements = [], selectedId = null, onMa
     return '❓'
   }
 
+  // Nombre maximal d'ids par préchargement (limite du serveur : 200)
+  const PREFETCH_MAX = 100
+
+  // Précharger en une requête les détails des signalements affichés, pour ouvrir les popups sans attente
+  const prefetchDetails = async (ids: number[], signal?: AbortSignal) => {
+    if (ids.length === 0) return
+    try {
+      const params = new URLSearchParams({ ids: ids.slice(0, PREFETCH_MAX).join(',') })
+      const res = await fetch(`/api/signalements/details?${params}`, { signal })
+      if (!res.ok) throw new Error('Network response not ok')
+      const api = await res.json()
+      const cache = new Map<number, any>()
+      ;(api?.data || []).forEach((d: any) => cache.set(d.idSignalement, d))
+      detailsCache.current = cache
+    } catch (e: any) {
+      if (e?.name !== 'AbortError') console.warn('Erreur préchargement des détails', e)
+    }
+  }
+
+  // Charger les détails d'un signalement (préchargés ou à la demande) et les afficher dans un popup
+  const openDetailsPopup = async (id: number, lngLat: [number, number], sig?: Signalement) => {
+    if (!map.current) return
+
+    // remove previous popup if any
+    try { popupRef.current?.remove() } catch(e) {}
+
+    // create loading popup
+    const loadingPopup = new maplibregl.Popup({ 
+      offset: 12, 
+      closeOnClick: false,
+      className: 'map-popup map-detail-popup',
+      maxWidth: '400px'
+    })
+      .setLngLat(lngLat)
+      .setHTML(`
+        <div class="popup-loading">
+          <div class="loading-spinner-small"></div>
+          <div>Chargement des détails...</div>
+        </div>
+      `)
+      .addTo(map.current!)
+    popupRef.current = loadingPopup
+
+    try {
+      let data = detailsCache.current.get(id)
+      if (!data) {
+        const res = await fetch(`/api/signalements/${id}/details`)
+        if (!res.ok) throw new Error('Network response not ok')
+        const api = await res.json()
+        data = api?.data || api
+      }
+
+      // format creation date
+      let createdAt = ''
+      try { 
+        createdAt = data.dateCreation ? new Date(data.dateCreation).toLocaleDateString('fr-FR', {
+          day: '2-digit',
+          month: '2-digit',
+          year: 'numeric',
+          hour: '2-digit',
+          minute: '2-digit'
+        }) : '' 
+      } catch(e) { createdAt = data.dateCreation || '' }
+
+      // Assignations
+      const assignationsHtml = (data.assignations || []).map((a: any) => `
+        <div class="assignation-item">
+          <div class="assignation-title">${a.nomEntreprise || 'Entreprise'}</div>
+          <div class="assignation-details">
+            <span>Statut: ${a.statutLibelle || '-'}</span>
+            <span>Période: ${a.dateDebut || '-'} → ${a.dateFin || '-'}</span>
+            <span>Montant: ${a.montant != null ? `${a.montant}€` : '-'}</span>
+          </div>
+        </div>
+      `).join('') || '<div class="no-data">Aucune assignation</div>'
+
+      // Historique
+      const historyHtml = (data.historiqueEtat || []).slice(0,5).map((h: any) => {
+        let dateStr = ''
+        try { 
+          dateStr = h.dateChangement ? new Date(h.dateChangement).toLocaleDateString('fr-FR', {
+            day: '2-digit',
+            month: '2-digit',
+            hour: '2-digit',
+            minute: '2-digit'
+          }) : '' 
+        } catch(e) { dateStr = h.dateChangement || '' }
+        return `
+          <div class="history-item">
+            <div class="history-status">${h.libelle || '-'}</div>
+            <div class="history-date">${dateStr}</div>
+          </div>
+        `
+      }).join('') || '<div class="no-data">Aucun historique</div>'
+
+      const html = `
+        <div class="popup-detail">
+          <div class="popup-header">
+            <div class="popup-id">Signalement #${id}</div>
+            <h3 class="popup-title-large">${data.titre || sig?.titre || 'Sans titre'}</h3>
+            <div class="popup-meta-large">
+              <span class="popup-date">Créé le ${createdAt}</span>
+              <span class="popup-progress">Progression: ${data.progressionPercent ?? '-'}%</span>
+            </div>
+          </div>
+          
+          <div class="popup-content">
+            <div class="popup-section">
+              <div class="section-title">Description</div>
+              <div class="section-content">${data.description || sig?.description || 'Aucune description'}</div>
+            </div>
+            
+            <div class="popup-section">
+              <div class="section-title">État actuel</div>
+              <div class="status-badge ${getStatusBadgeClass(data.currentEtatLibelle || sig?.etatLibelle)}">
+                ${getStatusIcon(data.currentEtatLibelle || sig?.etatLibelle)} 
+                ${data.currentEtatLibelle || sig?.etatLibelle || '-'}
+              </div>
+            </div>
+            
+            <div class="popup-section">
+              <div class="section-title">Type de travaux</div>
+              <div class="section-content">
+                <span class="type-tag">${data.typeTravauxLibelle || sig?.typeTravauxLibelle || '-'}</span>
+              </div>
+            </div>
+            
+            <div class="popup-section">
+              <div class="section-title">Assignations</div>
+              <div class="section-content assignations-list">
+                ${assignationsHtml}
+              </div>
+            </div>
+            
+            <div class="popup-section">
+              <div class="section-title">Historique récent</div>
+              <div class="section-content history-list">
+                ${historyHtml}
+              </div>
+            </div>
+          </div>
+        </div>
+      `
+
+      loadingPopup.setHTML(html)
+      popupRef.current = loadingPopup
+    } catch (err) {
+      try { 
+        loadingPopup.setHTML(`
+          <div class="popup-error">
+            <div class="error-icon">⚠️</div>
+            <div class="error-text">Erreur lors du chargement des détails</div>
+            <div class="error-hint">Veuillez réessayer plus tard</div>
+          </div>
+        `) 
+      } catch(e){}
+    }
+  }
+
   // Init map
   useEffect(() => {
     if (map.current || !mapContainer.current) return
@@ -182,6 +354,7 @@ export default function MapLibreMap({ signalements = [], selectedId = null, onMa
             customAttribution: '© Signalement ROUE'
           })
           map.current.addControl(attributionControl, 'bottom-right')
+          setMapReady(true)
         }
       })
 
@@ -197,7 +370,7 @@ export default function MapLibreMap({ signalements = [], selectedId = null, onMa
 
   // Update markers when signalements change
   useEffect(() => {
-    if (!map.current) return
+    if (!map.current || clustered) return
 
     // remove existing markers
     markersRef.current.forEach(m => m.remove())
@@ -269,140 +442,9 @@ export default function MapLibreMap({ signalements = [], selectedId = null, onMa
         })
 
         // on click fetch detailed info lazily and show in popup
-        el.addEventListener('click', async () => {
+        el.addEventListener('click', () => {
           onMarkerClick?.(sig.idSignalement)
-
-          // remove previous popup if any
-          try { popupRef.current?.remove() } catch(e) {}
-
-          // create loading popup
-          const loadingPopup = new maplibregl.Popup({ 
-            offset: 12, 
-            closeOnClick: false,
-            className: 'map-popup map-detail-popup',
-            maxWidth: '400px'
-          })
-            .setLngLat([sig.longitude, sig.latitude])
-            .setHTML(`
-              <div class="popup-loading">
-                <div class="loading-spinner-small"></div>
-                <div>Chargement des détails...</div>
-              </div>
-            `)
-            .addTo(map.current!)
-          popupRef.current = loadingPopup
-
-          try {
-            const res = await fetch(`/api/signalements/${sig.idSignalement}/details`)
-            if (!res.ok) throw new Error('Network response not ok')
-            const api = await res.json()
-            const data = api?.data || api
-
-            // format creation date
-            let createdAt = ''
-            try { 
-              createdAt = data.dateCreation ? new Date(data.dateCreation).toLocaleDateString('fr-FR', {
-                day: '2-digit',
-                month: '2-digit',
-                year: 'numeric',
-                hour: '2-digit',
-                minute: '2-digit'
-              }) : '' 
-            } catch(e) { createdAt = data.dateCreation || '' }
-
-            // Assignations
-            const assignationsHtml = (data.assignations || []).map((a: any) => `
-              <div class="assignation-item">
-                <div class="assignation-title">${a.nomEntreprise || 'Entreprise'}</div>
-                <div class="assignation-details">
-                  <span>Statut: ${a.statutLibelle || '-'}</span>
-                  <span>Période: ${a.dateDebut || '-'} → ${a.dateFin || '-'}</span>
-                  <span>Montant: ${a.montant != null ? `${a.montant}€` : '-'}</span>
-                </div>
-              </div>
-            `).join('') || '<div class="no-data">Aucune assignation</div>'
-
-            // Historique
-            const historyHtml = (data.historiqueEtat || []).slice(0,5).map((h: any) => {
-              let dateStr = ''
-              try { 
-                dateStr = h.dateChangement ? new Date(h.dateChangement).toLocaleDateString('fr-FR', {
-                  day: '2-digit',
-                  month: '2-digit',
-                  hour: '2-digit',
-                  minute: '2-digit'
-                }) : '' 
-              } catch(e) { dateStr = h.dateChangement || '' }
-              return `
-                <div class="history-item">
-                  <div class="history-status">${h.libelle || '-'}</div>
-                  <div class="history-date">${dateStr}</div>
-                </div>
-              `
-            }).join('') || '<div class="no-data">Aucun historique</div>'
-
-            const html = `
-              <div class="popup-detail">
-                <div class="popup-header">
-                  <div class="popup-id">Signalement #${sig.idSignalement}</div>
-                  <h3 class="popup-title-large">${data.titre || sig.titre || 'Sans titre'}</h3>
-                  <div class="popup-meta-large">
-                    <span class="popup-date">Créé le ${createdAt}</span>
-                    <span class="popup-progress">Progression: ${data.progressionPercent ?? '-'}%</span>
-                  </div>
-                </div>
-                
-                <div class="popup-content">
-                  <div class="popup-section">
-                    <div class="section-title">Description</div>
-                    <div class="section-content">${data.description || sig.description || 'Aucune description'}</div>
-                  </div>
-                  
-                  <div class="popup-section">
-                    <div class="section-title">État actuel</div>
-                    <div class="status-badge ${getStatusBadgeClass(data.currentEtatLibelle || sig.etatLibelle)}">
-                      ${getStatusIcon(data.currentEtatLibelle || sig.etatLibelle)} 
-                      ${data.currentEtatLibelle || sig.etatLibelle || '-'}
-                    </div>
-                  </div>
-                  
-                  <div class="popup-section">
-                    <div class="section-title">Type de travaux</div>
-                    <div class="section-content">
-                      <span class="type-tag">${data.typeTravauxLibelle || sig.typeTravauxLibelle || '-'}</span>
-                    </div>
-                  </div>
-                  
-                  <div class="popup-section">
-                    <div class="section-title">Assignations</div>
-                    <div class="section-content assignations-list">
-                      ${assignationsHtml}
-                    </div>
-                  </div>
-                  
-                  <div class="popup-section">
-                    <div class="section-title">Historique récent</div>
-                    <div class="section-content history-list">
-                      ${historyHtml}
-                    </div>
-                  </div>
-                </div>
-              </div>
-            `
-
-            loadingPopup.setHTML(html)
-            popupRef.current = loadingPopup
-          } catch (err) {
-            try { 
-              loadingPopup.setHTML(`
-                <div class="popup-error">
-                  <div class="error-icon">⚠️</div>
-                  <div class="error-text">Erreur lors du chargement des détails</div>
-                  <div class="error-hint">Veuillez réessayer plus tard</div>
-                </div>
-              `) 
-            } catch(e){}
-          }
+          openDetailsPopup(sig.idSignalement, [sig.longitude, sig.latitude], sig)
         })
 
         markersRef.current.push(marker)
@@ -410,7 +452,127 @@ export default function MapLibreMap({ signalements = [], selectedId = null, onMa
         console.warn('Erreur ajout marker', e)
       }
     })
-  }, [signalements, onMarkerClick, selectedId])
+  }, [signalements, onMarkerClick, selectedId, clustered])
+
+  // Afficher les groupes retournés par le serveur (un marqueur par groupe)
+  const renderClusters = (clusters: Cluster[]) => {
+    markersRef.current.forEach(m => m.remove())
+    markersRef.current = []
+
+    clusters.forEach(cluster => {
+      const etats = Object.entries(cluster.parEtat || {})
+      // Couleur de l'état le plus représenté dans le groupe
+      const dominant = etats.sort((a, b) => b[1] - a[1])[0]?.[0]
+      const lngLat: [number, number] = [cluster.longitude, cluster.latitude]
+      const el = document.createElement('div')
+      el.className = 'map-marker'
+      el.title = etats.map(([libelle, total]) => `${libelle}: ${total}`).join('\n')
+
+      if (cluster.idSignalement != null) {
+        el.innerHTML = `
+          <div class="marker-content" style="
+            width: 24px; 
+            height: 24px;
+            background: ${getMarkerColor(dominant)};
+            border: 2px solid white;
+          ">
+            <span class="marker-icon">${getStatusIcon(dominant)}</span>
+          </div>
+        `
+        el.addEventListener('click', () => {
+          onMarkerClick?.(cluster.idSignalement!)
+          openDetailsPopup(cluster.idSignalement!, lngLat)
+        })
+      } else {
+        const size = Math.min(64, 28 + Math.round(Math.log10(cluster.total) * 12))
+        el.innerHTML = `
+          <div class="marker-content" style="
+            width: ${size}px; 
+            height: ${size}px;
+            background: ${getMarkerColor(dominant)};
+            border: 3px solid white;
+          ">
+            <span class="marker-number">${cluster.total}</span>
+          </div>
+        `
+        // Zoomer sur le groupe pour le détailler
+        el.addEventListener('click', () => {
+          const m = map.current
+          if (m) m.flyTo({ center: lngLat, zoom: Math.min(m.getZoom() + 2, 19) })
+        })
+      }
+
+      const marker = new maplibregl.Marker({ element: el, anchor: cluster.idSignalement != null ? 'bottom' : 'center' })
+        .setLngLat(lngLat)
+        .addTo(map.current!)
+      markersRef.current.push(marker)
+    })
+  }
+
+  // Regroupement côté serveur : recharger les groupes de l'emprise affichée après chaque déplacement
+  useEffect(() => {
+    const m = map.current
+    if (!clustered || !mapReady || !m) return
+    let controller: AbortController | null = null
+
+    const loadClusters = async () => {
+      controller?.abort()
+      controller = new AbortController()
+      const bounds = m.getBounds()
+      const params = new URLSearchParams({
+        minLon: String(bounds.getWest()),
+        minLat: String(bounds.getSouth()),
+        maxLon: String(bounds.getEast()),
+        maxLat: String(bounds.getNorth()),
+        zoom: String(Math.round(m.getZoom()))
+      })
+      try {
+        const res = await fetch(`/api/signalements/clusters?${params}`, { signal: controller.signal })
+        if (!res.ok) throw new Error('Network response not ok')
+        const api = await res.json()
+        const clusters: Cluster[] = api?.data || []
+        renderClusters(clusters)
+        // Points isolés de l'emprise : détails préchargés en une requête
+        await prefetchDetails(
+          clusters.filter(c => c.idSignalement != null).map(c => c.idSignalement!),
+          controller.signal
+        )
+      } catch (e: any) {
+        if (e?.name !== 'AbortError') console.warn('Erreur chargement des groupes', e)
+      }
+    }
+
+    loadClusters()
+    m.on('moveend', loadClusters)
+    return () => {
+      m.off('moveend', loadClusters)
+      controller?.abort()
+    }
+  }, [clustered, mapReady])
+
+  // Sans regroupement : précharger les détails des marqueurs visibles après chaque déplacement
+  useEffect(() => {
+    const m = map.current
+    if (clustered || !mapReady || !m) return
+    let controller: AbortController | null = null
+
+    const loadVisibleDetails = () => {
+      controller?.abort()
+      controller = new AbortController()
+      const bounds = m.getBounds()
+      const ids = signalements
+        .filter(sig => bounds.contains([sig.longitude, sig.latitude]))
+        .map(sig => sig.idSignalement)
+      prefetchDetails(ids, controller.signal)
+    }
+
+    loadVisibleDetails()
+    m.on('moveend', loadVisibleDetails)
+    return () => {
+      m.off('moveend', loadVisibleDetails)
+      controller?.abort()
+    }
+  }, [signalements, clustered, mapReady])
 
   // Center on selected marker
   useEffect(() => {
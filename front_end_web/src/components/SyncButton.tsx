@@ -1,11 +1,38 @@
 import { useState } from 'react'
 
+const POLL_INTERVAL_MS = 2000
+
+function sleep(ms: number) {
+  return new Promise(resolve => setTimeout(resolve, ms))
+}
+
 export default function SyncButton() {
   const [loading, setLoading] = useState(false)
+  const [progress, setProgress] = useState<string | null>(null)
+
+  async function waitForJob(id: string, token: string | null): Promise<any> {
+    while (true) {
+      await sleep(POLL_INTERVAL_MS)
+      const res = await fetch(`/api/sync/jobs/${id}`, {
+        headers: { 'Authorization': `Bearer ${token}` }
+      })
+      let body: any = {}
+      try { body = await res.json() } catch (e) { /* ignore parse errors */ }
+      if (!res.ok || !body.success) {
+        throw new Error(body.message || String(res.status))
+      }
+      const job = body.data
+      setProgress(`${job.tablesTerminees}/${job.tablesTotal}`)
+      if (job.statut === 'TERMINE' || job.statut === 'ECHEC') {
+        return job
+      }
+    }
+  }
 
   async function runSync() {
     if (!confirm('Lancer la synchronisation complète (Firebase ⇄ PostgreSQL) ?')) return
     setLoading(true)
+    setProgress(null)
     try {
       const token = localStorage.getItem('token')
       const res = await fetch('/api/sync/full', {
@@ -20,7 +47,12 @@ export default function SyncButton() {
       try { body = await res.json() } catch (e) { /* ignore parse errors */ }
 
       if (res.ok && body.success) {
-        alert('Synchronisation réussie:\n' + (body.message || 'OK'))
+        const job = await waitForJob(body.data.id, token)
+        if (job.statut === 'TERMINE') {
+          alert('Synchronisation réussie')
+        } else {
+          alert('Erreur de synchronisation:\n' + (job.error || 'Échec'))
+        }
       } else if (res.status === 403) {
         alert('Accès refusé: vous devez être Manager pour effectuer cette action.')
       } else if (res.status === 401) {
@@ -33,6 +65,7 @@ export default function SyncButton() {
       alert('Erreur réseau lors de la synchronisation')
     } finally {
       setLoading(false)
+      setProgress(null)
     }
   }
 
@@ -43,7 +76,7 @@ export default function SyncButton() {
       disabled={loading}
       title="Synchroniser avec Firebase"
     >
-      {loading ? 'Synchronisation...' : 'Synchroniser (Firebase)'}
+      {loading ? `Synchronisation...${progress ? ` (${progress})` : ''}` : 'Synchroniser (Firebase)'}
     </button>
   )
 }